@@ -1,67 +1,618 @@
 package com.vizor.unreal;
 
+import com.vizor.unreal.metrics.PakMetrics;
+import com.vizor.unreal.metrics.PakMetrics.Counter;
+import com.vizor.unreal.metrics.PakMetrics.Stage;
+import com.vizor.unreal.metrics.PakMetricsSnapshot;
 import com.vizor.unreal.packer.Packer;
+import com.vizor.unreal.packer.PackerSetup;
 import com.vizor.unreal.packer.PakEntryParameters;
+import com.vizor.unreal.pak.EntryVerification;
 import com.vizor.unreal.pak.FPakFile;
+import com.vizor.unreal.pak.FPakInfo;
+import com.vizor.unreal.pak.PakGlob;
 import com.vizor.unreal.pak.PakIteratorEntry;
+import com.vizor.unreal.pak.PakSignature;
+import com.vizor.unreal.pak.PakStats;
 import com.vizor.unreal.ue4.FCoreDelegates;
+import com.vizor.unreal.ue4.FString;
+import com.vizor.unreal.util.BatchExtractor;
+import com.vizor.unreal.util.PathUtils;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-public class Main
+/**
+ * Command line interface.
+ *
+ * <pre>
+ * juepak list    [options] &lt;pak&gt;
+ * juepak info    [options] &lt;pak&gt;
+ * juepak extract [options] &lt;pak&gt; &lt;directory&gt;
+ * juepak verify  [options] &lt;pak&gt;
+ * juepak pack    [options] &lt;pak&gt; &lt;directory&gt;
+ * </pre>
+ *
+ * Every command ends with a single timing line on stderr ("timing key=value ..."), so scripts can log performance
+ * without parsing the rest of the output.
+ */
+public final class Main
 {
-    private static final String extractDirectory = "/Users/netherwire/Desktop/Extract";
-    private static final String packingDirectory = "/Volumes/Samsung/Projects/UnrealEngine/Engine/Build";
-    private static final Path archiveFile = Paths.get("/Users/netherwire/Desktop/Archive.pak");
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: juepak <command> [options] <arguments>",
+            "",
+            "Commands:",
+            "  list    <pak>              List entries: size, uncompressed size, flags and filename",
+            "  info    <pak>              Print the pak trailer and totals",
+            "  extract <pak> <directory>  Extract entries",
+            "  verify  <pak>              Check the index, entry headers and decode every entry",
+            "  pack    <pak> <directory>  Pack all files of the directory (\"-\" as the pak writes it to stdout)",
+            "",
+            "Options:",
+            "  --threads <n>              Entries extracted or verified at once",
+            "  --key-file <file>          AES-256 key: 32 raw bytes or Base64 text",
+            "  --filter <glob>            Only entries (files when packing) matching the glob, e.g. **/*.uasset",
+            "  --mmap                     Map the index from a .pakidx sidecar, write the sidecar if it is missing",
+            "  --signature                Check chunks against the .sig file (all of them on verify), write it on pack",
+            "  --compress                 Pack: compress entries",
+            "  --encrypt                  Pack: encrypt entries",
+            "  --encrypt-index            Pack: encrypt the index",
+            "  --mount-point <path>       Pack: mount point, ../../../ by default",
+            "  --engine-version <version> Pack: engine version to pick the pak version for, e.g. 4.20",
+            "",
+            "Timings are printed to stderr as a single line: timing command=... elapsed_ms=... entries_per_s=...");
 
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
 
-    public static void main(String[] args) throws Exception
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Thrown if the command line is invalid.
+     */
+    private static final class UsageException extends RuntimeException
+    {
+        UsageException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * Parsed command line.
+     */
+    private static final class Options
     {
-        FCoreDelegates.GetPakEncryptionKeyDelegate().BindLambda(bytes -> {
-            final byte[] decode = Base64.getDecoder().decode("55K1xvTGDiR9Sz1lQtY/eCDOIIHvsVyIg1WGXRvUh58=");
-            System.arraycopy(decode, 0, bytes, 0, bytes.length);
-        });
+        String command;
+        final List<String> arguments = new ArrayList<>();
 
-        compressDecompress();
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path keyFile = null;
+        PakGlob filter = null;
+        boolean mmap = false;
+        boolean signature = false;
+
+        boolean compress = false;
+        boolean encrypt = false;
+        boolean encryptIndex = false;
+        String mountPoint = "../../../";
+        String engineVersion = null;
+
+        String argument(int index)
+        {
+            if (index >= arguments.size())
+                throw new UsageException("Missing arguments for '" + command + "'");
+
+            return arguments.get(index);
+        }
+
+    }
+
+    /**
+     * Totals of a command, printed as the timing line.
+     */
+    private static final class Totals
+    {
+        long entries = 0;
+        long bytes = 0;
+    }
+
+    private Main()
+    {
+        throw new AssertionError("No " + getClass() + " instances for you");
+    }
+
+    public static void main(String[] args)
+    {
+        System.exit(run(args, System.out, System.err));
     }
 
-    private static void compressDecompress() throws IOException
+    /**
+     * Runs a command.
+     *
+     * @param args Command line arguments.
+     * @param out Output of the command.
+     * @param err Errors and the timing line.
+     * @return Exit code: 0 on success, 1 if the command failed, 2 if the command line is invalid.
+     */
+    static int run(String[] args, PrintStream out, PrintStream err)
     {
-        // Prepare packer
-        final Packer packer = Packer.builder()
-                .encryptIndex(false)
-                .engineVersion("4.20")
-                .customMountPoint("../../../")
-                .archiveFile(archiveFile)
-                .build();
+        final Options options;
+        try {
+            options = parse(args);
+        }
+        catch (UsageException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
 
-        // Packing
-        final Path folder = Paths.get(packingDirectory);
+        if (options.command == null || options.command.equals("help"))
+        {
+            out.println(USAGE);
+            return (options.command == null) ? EXIT_USAGE : EXIT_OK;
+        }
 
-        final List<Path> pathsToPack = Files.walk(folder)
-                .filter(Files::isRegularFile)
-                .collect(Collectors.toList());
+        PakMetrics.setEnabled(true);
+        final long startTime = System.nanoTime();
+        final Totals totals = new Totals();
 
-        // Add files to pack
-        for (Path path : pathsToPack)
-            packer.add(path, new PakEntryParameters().compress().encrypt());
+        int exitCode;
+        try {
+            if (options.keyFile != null)
+                bindKey(options.keyFile);
 
+            switch (options.command)
+            {
+                case "list":
+                    exitCode = list(options, totals, out);
+                    break;
+                case "info":
+                    exitCode = info(options, totals, out);
+                    break;
+                case "extract":
+                    exitCode = extract(options, totals, out);
+                    break;
+                case "verify":
+                    exitCode = verify(options, totals, out, err);
+                    break;
+                case "pack":
+                    exitCode = pack(options, totals, out, err);
+                    break;
+                default:
+                    err.println("Unknown command '" + options.command + "'");
+                    err.println(USAGE);
+                    exitCode = EXIT_USAGE;
+                    break;
+            }
+        }
+        catch (UsageException e) {
+            // Still a command, so it ends with the timing line too
+            err.println(e.getMessage());
+            exitCode = EXIT_USAGE;
+        }
+        catch (Exception e) {
+            err.println(options.command + " failed: " + e);
+            exitCode = EXIT_FAILED;
+        }
 
-        packer.addProgressListener(p -> System.out.println("Packing: " + p * 100.0f + "%"));
-        packer.close();
+        err.println(timingLine(options.command, exitCode, System.nanoTime() - startTime, totals,
+                PakMetrics.snapshot()));
+
+        return exitCode;
+    }
+
+    private static Options parse(String[] args)
+    {
+        final Options options = new Options();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            final String arg = args[i];
+
+            switch (arg)
+            {
+                case "--threads":
+                    options.threads = parseThreads(value(args, ++i, arg));
+                    break;
+                case "--key-file":
+                    options.keyFile = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--filter":
+                    options.filter = compileGlob(value(args, ++i, arg));
+                    break;
+                case "--mmap":
+                    options.mmap = true;
+                    break;
+                case "--signature":
+                    options.signature = true;
+                    break;
+                case "--compress":
+                    options.compress = true;
+                    break;
+                case "--encrypt":
+                    options.encrypt = true;
+                    break;
+                case "--encrypt-index":
+                    options.encryptIndex = true;
+                    break;
+                case "--mount-point":
+                    options.mountPoint = value(args, ++i, arg);
+                    break;
+                case "--engine-version":
+                    options.engineVersion = value(args, ++i, arg);
+                    break;
+                default:
+                    if (arg.startsWith("--"))
+                        throw new UsageException("Unknown option '" + arg + "'");
+
+                    if (options.command == null)
+                        options.command = arg;
+                    else
+                        options.arguments.add(arg);
+            }
+        }
+
+        return options;
+    }
+
+    private static String value(String[] args, int index, String option)
+    {
+        if (index >= args.length)
+            throw new UsageException("Option '" + option + "' requires a value");
+
+        return args[index];
+    }
+
+    private static PakGlob compileGlob(String value)
+    {
+        try {
+            return PakGlob.compile(value);
+        }
+        catch (IllegalArgumentException e) {
+            throw new UsageException(e.getMessage());
+        }
+    }
+
+    private static int parseThreads(String value)
+    {
+        final int threads;
+        try {
+            threads = Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            throw new UsageException("Number of threads must be a number, given: " + value);
+        }
+
+        if (threads <= 0)
+            throw new UsageException("Number of threads must be positive, given: " + value);
+
+        return threads;
+    }
+
+    /**
+     * Binds the pak encryption key, the key file holds either 32 raw bytes or a Base64 encoded key.
+     */
+    private static void bindKey(Path keyFile) throws IOException
+    {
+        final byte[] content = Files.readAllBytes(keyFile);
+
+        final byte[] key;
+        if (content.length == 32)
+        {
+            key = content;
+        }
+        else
+        {
+            try {
+                key = Base64.getDecoder().decode(new String(content, StandardCharsets.US_ASCII).trim());
+            }
+            catch (IllegalArgumentException e) {
+                throw new UsageException("Key file " + keyFile + " is neither 32 raw bytes nor Base64");
+            }
+
+            Arrays.fill(content, (byte) 0);
+        }
+
+        if (key.length != 32)
+            throw new UsageException("Key in " + keyFile + " must be 32 bytes long, given: " + key.length);
+
+        FCoreDelegates.GetPakEncryptionKeyDelegate().BindLambda(bytes -> System.arraycopy(key, 0, bytes, 0, bytes.length));
+    }
+
+    private static FPakFile open(Options options) throws IOException
+    {
+        final Path path = Paths.get(options.argument(0));
+
+        final FPakFile pakFile = new FPakFile(path, options.mmap);
+        if (!pakFile.isValid())
+        {
+            throw new IllegalStateException("Unable to open " + path + " (missing, corrupted or encrypted without " +
+                    "a key)");
+        }
+
+        if (options.signature)
+        {
+            try {
+                pakFile.setSignature(PakSignature.read(PakSignature.getPath(path)));
+            }
+            catch (IOException | RuntimeException e) {
+                pakFile.close();
+                throw e;
+            }
+        }
+
+        return pakFile;
+    }
 
-        // Read (unpack)
-        try (final FPakFile fPakFile = new FPakFile(archiveFile))
+    private static List<PakIteratorEntry> select(FPakFile pakFile, Options options)
+    {
+        if (options.filter == null)
+            return pakFile.stream().collect(Collectors.toList());
+
+        // Directories not matching the filter are skipped as a whole
+        return pakFile.findEntries(options.filter);
+    }
+
+    private static int list(Options options, Totals totals, PrintStream out) throws IOException
+    {
+        try (final FPakFile pakFile = open(options))
         {
-            for (PakIteratorEntry entry : fPakFile) {
-                entry.extractMixed(extractDirectory, x -> System.out.println("Extracting: " + x * 100.0f + "%"));
+            for (final PakIteratorEntry entry : select(pakFile, options))
+            {
+                out.printf(Locale.ROOT, "%12d %12d %s%s %s%n", entry.Entry.Size, entry.Entry.UncompressedSize,
+                        entry.Entry.CompressionBlocks.length > 0 ? "C" : "-", entry.Entry.IsEncrypted() ? "E" : "-",
+                        entry.Filename);
+
+                totals.entries++;
+                totals.bytes += entry.Entry.UncompressedSize;
             }
         }
+
+        return EXIT_OK;
+    }
+
+    private static int info(Options options, Totals totals, PrintStream out) throws IOException
+    {
+        try (final FPakFile pakFile = open(options))
+        {
+            final FPakInfo info = pakFile.getInfo();
+            final PakStats stats = pakFile.getStats();
+
+            out.println("file=" + pakFile.getFilename());
+            out.println("size=" + pakFile.totalSize());
+            out.println("version=" + info.Version + " (" + FPakInfo.pakFileVersionToString(info.Version) + ")");
+            out.println("mount_point=" + pakFile.getMountPoint());
+            out.println("entries=" + pakFile.getNumFiles());
+            out.println("payload_size=" + stats.getTotalSize());
+            out.println("payload_uncompressed_size=" + stats.getTotalUncompressedSize());
+            out.println("entries_encrypted=" + stats.getNumEncrypted());
+            out.println("entries_compressed=" + stats.getNumCompressed());
+            out.println("entries_deleted=" + stats.getNumDeleted());
+            out.println("block_count_histogram=" + Arrays.toString(stats.getBlockCountHistogram()));
+
+            for (final PakStats.LargeEntry entry : stats.getLargestEntries())
+                out.println("largest_entry=" + entry.getUncompressedSize() + " " + entry.getFilename());
+            out.println("index_offset=" + info.IndexOffset);
+            out.println("index_size=" + info.IndexSize);
+            out.println("index_hash=" + FString.BytesToHex(info.IndexHash));
+            out.println("index_encrypted=" + (info.bEncryptedIndex != 0));
+
+            totals.entries = stats.getNumEntries();
+            totals.bytes = stats.getTotalUncompressedSize();
+        }
+
+        return EXIT_OK;
+    }
+
+    private static int extract(Options options, Totals totals, PrintStream out) throws IOException
+    {
+        final Path rootPath = Paths.get(options.argument(1));
+
+        try (final FPakFile pakFile = open(options))
+        {
+            final List<PakIteratorEntry> entries = select(pakFile, options);
+            BatchExtractor.extract(entries, rootPath, options.threads);
+
+            for (final PakIteratorEntry entry : entries)
+                totals.bytes += entry.Entry.UncompressedSize;
+
+            totals.entries = entries.size();
+            out.println("Extracted " + entries.size() + " entries to " + rootPath);
+        }
+
+        return EXIT_OK;
+    }
+
+    private static int verify(Options options, Totals totals, PrintStream out, PrintStream err) throws Exception
+    {
+        // The index hash is checked when the pak file is opened
+        try (final FPakFile pakFile = open(options))
+        {
+            pakFile.setEntryVerification(EntryVerification.ALWAYS);
+
+            if (options.signature)
+            {
+                final int[] corruptChunks = pakFile.verifyChunks();
+                for (final int chunk : corruptChunks)
+                    err.println("FAILED chunk " + chunk + " at " + (long) chunk * PakSignature.CHUNK_SIZE);
+
+                out.println("Verified " + pakFile.getSignature().getNumChunks() + " chunks, " + corruptChunks.length +
+                        " failed");
+
+                if (corruptChunks.length > 0)
+                    return EXIT_FAILED;
+            }
+
+            final List<PakIteratorEntry> entries = select(pakFile, options);
+            final AtomicInteger numFailed = new AtomicInteger();
+
+            // A buffer per thread, grown to the largest entry seen
+            final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(0));
+
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(options.threads,
+                    Math.max(1, entries.size())));
+
+            try {
+                final List<Future<?>> futures = new ArrayList<>(entries.size());
+                for (final PakIteratorEntry entry : entries)
+                {
+                    futures.add(executor.submit(() -> {
+                        try {
+                            if (entry.Entry.UncompressedSize > Integer.MAX_VALUE)
+                                throw new IOException("too large to be verified in memory");
+
+                            ByteBuffer buffer = buffers.get();
+                            if (buffer.capacity() < entry.Entry.UncompressedSize)
+                            {
+                                buffer = ByteBuffer.allocate((int) entry.Entry.UncompressedSize);
+                                buffers.set(buffer);
+                            }
+
+                            buffer.clear();
+                            entry.extractTo(buffer, null);
+                        }
+                        catch (Exception e) {
+                            numFailed.incrementAndGet();
+                            err.println("FAILED " + entry.Filename + ": " + e);
+                        }
+                    }));
+                }
+
+                for (final Future<?> future : futures)
+                    future.get();
+            }
+            finally {
+                executor.shutdownNow();
+            }
+
+            for (final PakIteratorEntry entry : entries)
+                totals.bytes += entry.Entry.UncompressedSize;
+
+            totals.entries = entries.size();
+            out.println("Verified " + entries.size() + " entries, " + numFailed.get() + " failed");
+
+            return (numFailed.get() == 0) ? EXIT_OK : EXIT_FAILED;
+        }
+    }
+
+    private static int pack(Options options, Totals totals, PrintStream out, PrintStream err) throws IOException
+    {
+        // The archive is streamed to stdout, so messages go to stderr
+        final boolean toStdout = options.argument(0).equals("-");
+        final Path archivePath = toStdout ? null : Paths.get(options.argument(0));
+        final Path directory = Paths.get(options.argument(1)).toAbsolutePath();
+
+        final List<Path> paths;
+        try (final Stream<Path> files = Files.walk(directory))
+        {
+            paths = files.filter(Files::isRegularFile)
+                    .filter(p -> (options.filter == null) ||
+                            options.filter.test(PathUtils.pathToPortableUE4String(directory.relativize(p))))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        if (paths.isEmpty())
+            throw new UsageException("No files to pack in " + directory);
+
+        final PackerSetup setup = Packer.builder()
+                .encryptIndex(options.encryptIndex)
+                .writeSignature(options.signature)
+                .customMountPoint(options.mountPoint);
+
+        if (toStdout)
+        {
+            if (options.signature)
+                throw new UsageException("A signature can not be written for a pak written to stdout");
+
+            setup.outputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1024 * 1024));
+        }
+        else
+        {
+            setup.archiveFile(archivePath);
+        }
+
+        if (options.engineVersion != null)
+        {
+            setup.engineVersion(options.engineVersion);
+
+            if (setup.getPakVersion() == FPakInfo.PakFile_Version_Invalid)
+                throw new UsageException("Unsupported engine version: " + options.engineVersion);
+        }
+
+        final Packer packer = setup.build();
+
+        final PakEntryParameters params = new PakEntryParameters();
+        if (options.compress)
+            params.compress();
+
+        if (options.encrypt)
+            params.encrypt();
+
+        for (final Path path : paths)
+        {
+            packer.add(path, params);
+            totals.bytes += Files.size(path);
+        }
+
+        packer.close();
+
+        totals.entries = paths.size();
+        (toStdout ? err : out).println("Packed " + paths.size() + " files into " + (toStdout ? "stdout" : archivePath));
+
+        return EXIT_OK;
+    }
+
+    /**
+     * Formats the timing line: totals, throughput and the total time of each stage, which was timed.
+     */
+    private static String timingLine(String command, int exitCode, long elapsedNanos, Totals totals,
+                                     PakMetricsSnapshot metrics)
+    {
+        final double seconds = Math.max(elapsedNanos, 1) / 1e9;
+
+        final StringBuilder sb = new StringBuilder("timing");
+        sb.append(" command=").append(command);
+        sb.append(" exit_code=").append(exitCode);
+        sb.append(" entries=").append(totals.entries);
+        sb.append(" bytes=").append(totals.bytes);
+        sb.append(String.format(Locale.ROOT, " elapsed_ms=%.3f", elapsedNanos / 1e6));
+        sb.append(String.format(Locale.ROOT, " entries_per_s=%.1f", totals.entries / seconds));
+        sb.append(String.format(Locale.ROOT, " mb_per_s=%.2f", totals.bytes / MB / seconds));
+        sb.append(" bytes_read=").append(metrics.get(Counter.BYTES_READ));
+        sb.append(" bytes_written=").append(metrics.get(Counter.BYTES_WRITTEN));
+
+        for (final Stage stage : Stage.values())
+        {
+            final PakMetricsSnapshot.Latency latency = metrics.get(stage);
+            if (latency.getCount() == 0)
+                continue;
+
+            sb.append(String.format(Locale.ROOT, " %s_ms=%.3f", stage.name().toLowerCase(Locale.ROOT),
+                    latency.getTotalNanos() / 1e6));
+        }
+
+        return sb.toString();
     }
 }
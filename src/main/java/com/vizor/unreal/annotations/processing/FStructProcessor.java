@@ -0,0 +1,453 @@
+package com.vizor.unreal.annotations.processing;
+
+import com.vizor.unreal.annotations.FStruct;
+import com.vizor.unreal.annotations.StaticSize;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@code <Name>Serializer} class for every {@link FStruct} type, containing:
+ * <ul>
+ *     <li>{@code SIZE} - serialized size, if all fields have static sizes (like {@code Sizeof.sizeof(Class)});</li>
+ *     <li>{@code Read}/{@code ReadArray} - if the type is {@code UE4Deserializable};</li>
+ *     <li>{@code Write}/{@code WriteArray} - if the type is {@code UE4Serializable}.</li>
+ * </ul>
+ *
+ * Fields are read and written in order of their declaration (the contract of both interfaces), in straight-line
+ * code, without any reflection. If some field can not be accessed from the generated code (private or a reference),
+ * the struct's own Serialize/Deserialize method is called instead.
+ *
+ * This processor is run by the second compilation pass (see pom.xml), the first one compiles the processor itself.
+ */
+@SupportedAnnotationTypes("com.vizor.unreal.annotations.FStruct")
+public class FStructProcessor extends AbstractProcessor
+{
+    private static final String SERIALIZABLE = "com.vizor.unreal.util.UE4Serializable";
+    private static final String DESERIALIZABLE = "com.vizor.unreal.util.UE4Deserializable";
+
+    private static final String SUFFIX = "Serializer";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        for (final Element element : roundEnv.getElementsAnnotatedWith(FStruct.class))
+        {
+            if (element.getKind() != ElementKind.CLASS)
+            {
+                error(element, "@FStruct is only applicable to classes");
+                continue;
+            }
+
+            try {
+                generate((TypeElement) element);
+            }
+            catch (IOException e) {
+                error(element, "Unable to generate a serializer: " + e);
+            }
+        }
+
+        return false;
+    }
+
+    private void generate(TypeElement type) throws IOException
+    {
+        final boolean bDeserializable = isSubtype(type, DESERIALIZABLE);
+        final boolean bSerializable = isSubtype(type, SERIALIZABLE);
+        final int size = getStaticSize(type);
+
+        // Nothing to generate
+        if (!bDeserializable && !bSerializable && size < 0)
+            return;
+
+        if (bDeserializable && !hasAccessibleNoArgConstructor(type))
+        {
+            error(type, "UE4Deserializable @FStruct must have a public no-argument constructor");
+            return;
+        }
+
+        final String packageName = ((PackageElement) type.getEnclosingElement()).getQualifiedName().toString();
+        final String typeName = type.getSimpleName().toString();
+        final String serializerName = typeName + SUFFIX;
+
+        final List<VariableElement> fields = getInstanceFields(type);
+        final boolean bFieldAccess = isFieldAccessible(fields);
+
+        try (final PrintWriter w = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(packageName + "." + serializerName, type).openWriter()))
+        {
+            w.println("package " + packageName + ";");
+            w.println();
+
+            if (bDeserializable || bSerializable)
+            {
+                if (bDeserializable && size > 0)
+                    w.println("import java.nio.BufferUnderflowException;");
+
+                w.println("import java.nio.ByteBuffer;");
+                w.println("import java.nio.ByteOrder;");
+                w.println();
+            }
+
+            w.println("/**");
+            w.println(" * Serializer of {@link " + typeName + "}, generated by " + getClass().getName() + ".");
+            w.println(" */");
+            w.println("public final class " + serializerName);
+            w.println("{");
+
+            if (size >= 0)
+            {
+                w.println("    /**");
+                w.println("     * Serialized size of " + typeName + ".");
+                w.println("     */");
+                w.println("    public static final int SIZE = " + size + ";");
+                w.println();
+            }
+
+            w.println("    private " + serializerName + "()");
+            w.println("    {");
+            w.println("        throw new AssertionError(\"No \" + getClass() + \" instances for you\");");
+            w.println("    }");
+
+            if (bDeserializable)
+            {
+                w.println();
+                w.println("    public static " + typeName + " Read(ByteBuffer b)");
+                w.println("    {");
+                w.println("        b.order(ByteOrder.LITTLE_ENDIAN);");
+                w.println();
+                w.println("        final " + typeName + " v = new " + typeName + "();");
+                if (bFieldAccess)
+                {
+                    for (final VariableElement field : fields)
+                        writeFieldRead(w, field);
+                }
+                else
+                {
+                    w.println("        v.Deserialize(b);");
+                }
+                w.println();
+                w.println("        return v;");
+                w.println("    }");
+
+                w.println();
+                w.println("    public static " + typeName + "[] ReadArray(ByteBuffer b)");
+                w.println("    {");
+                w.println("        b.order(ByteOrder.LITTLE_ENDIAN);");
+                w.println();
+                w.println("        final int NumElements = b.getInt();");
+                w.println("        if (NumElements < 0)");
+                w.println("        {");
+                w.println("            throw new NegativeArraySizeException(\"Array size must be within [0, \" + Integer.MAX_VALUE + \"), given: \" + NumElements);");
+                w.println("        }");
+                if (size > 0)
+                {
+                    w.println();
+                    w.println("        // Do not allocate a huge array for a corrupted size");
+                    w.println("        if (NumElements > b.remaining() / SIZE)");
+                    w.println("        {");
+                    w.println("            throw new BufferUnderflowException();");
+                    w.println("        }");
+                }
+                w.println();
+                w.println("        final " + typeName + "[] array = new " + typeName + "[NumElements];");
+                w.println("        for (int i = 0; i < NumElements; i++)");
+                w.println("        {");
+                w.println("            array[i] = Read(b);");
+                w.println("        }");
+                w.println();
+                w.println("        return array;");
+                w.println("    }");
+            }
+
+            if (bSerializable)
+            {
+                w.println();
+                w.println("    public static void Write(ByteBuffer b, " + typeName + " v)");
+                w.println("    {");
+                w.println("        b.order(ByteOrder.LITTLE_ENDIAN);");
+                w.println();
+                if (bFieldAccess)
+                {
+                    for (final VariableElement field : fields)
+                        writeFieldWrite(w, field);
+                }
+                else
+                {
+                    w.println("        v.Serialize(b);");
+                }
+                w.println("    }");
+
+                w.println();
+                w.println("    public static void WriteArray(ByteBuffer b, " + typeName + "[] array)");
+                w.println("    {");
+                w.println("        b.order(ByteOrder.LITTLE_ENDIAN);");
+                w.println();
+                w.println("        b.putInt(array.length);");
+                w.println("        for (final " + typeName + " v : array)");
+                w.println("        {");
+                w.println("            Write(b, v);");
+                w.println("        }");
+                w.println("    }");
+            }
+
+            w.println("}");
+        }
+    }
+
+    private void writeFieldRead(PrintWriter w, VariableElement field)
+    {
+        final String name = "v." + field.getSimpleName();
+        final TypeMirror t = field.asType();
+
+        if (t.getKind() == TypeKind.ARRAY)
+        {
+            final TypeKind componentKind = ((ArrayType) t).getComponentType().getKind();
+            final int length = field.getAnnotation(StaticSize.class).value();
+
+            if (componentKind == TypeKind.BYTE)
+            {
+                w.println("        b.get(" + name + ", 0, " + length + ");");
+            }
+            else
+            {
+                w.println("        for (int i = 0; i < " + length + "; i++)");
+                w.println("            " + name + "[i] = " + readExpression(componentKind) + ";");
+            }
+        }
+        else
+        {
+            w.println("        " + name + " = " + readExpression(t.getKind()) + ";");
+        }
+    }
+
+    private void writeFieldWrite(PrintWriter w, VariableElement field)
+    {
+        final String name = "v." + field.getSimpleName();
+        final TypeMirror t = field.asType();
+
+        if (t.getKind() == TypeKind.ARRAY)
+        {
+            final TypeKind componentKind = ((ArrayType) t).getComponentType().getKind();
+            final int length = field.getAnnotation(StaticSize.class).value();
+
+            if (componentKind == TypeKind.BYTE)
+            {
+                w.println("        b.put(" + name + ", 0, " + length + ");");
+            }
+            else
+            {
+                w.println("        for (int i = 0; i < " + length + "; i++)");
+                w.println("            " + writeStatement(componentKind, name + "[i]"));
+            }
+        }
+        else
+        {
+            w.println("        " + writeStatement(t.getKind(), name));
+        }
+    }
+
+    private static String readExpression(TypeKind kind)
+    {
+        switch (kind)
+        {
+            case BOOLEAN: return "b.get() != 0";
+            case BYTE:    return "b.get()";
+            case SHORT:   return "b.getShort()";
+            case CHAR:    return "b.getChar()";
+            case INT:     return "b.getInt()";
+            case LONG:    return "b.getLong()";
+            case FLOAT:   return "b.getFloat()";
+            case DOUBLE:  return "b.getDouble()";
+        }
+
+        throw new IllegalArgumentException("Not a primitive: " + kind);
+    }
+
+    private static String writeStatement(TypeKind kind, String value)
+    {
+        switch (kind)
+        {
+            case BOOLEAN: return "b.put((byte) (" + value + " ? 1 : 0));";
+            case BYTE:    return "b.put(" + value + ");";
+            case SHORT:   return "b.putShort(" + value + ");";
+            case CHAR:    return "b.putChar(" + value + ");";
+            case INT:     return "b.putInt(" + value + ");";
+            case LONG:    return "b.putLong(" + value + ");";
+            case FLOAT:   return "b.putFloat(" + value + ");";
+            case DOUBLE:  return "b.putDouble(" + value + ");";
+        }
+
+        throw new IllegalArgumentException("Not a primitive: " + kind);
+    }
+
+    /**
+     * Computes a static size the same way {@code Sizeof.sizeof(Class)} does.
+     *
+     * @return Size in bytes or -1 if the struct has no static size.
+     */
+    private int getStaticSize(TypeElement type)
+    {
+        // Mustn't have any superclasses
+        if (!isObject(type.getSuperclass()))
+            return -1;
+
+        int size = 0;
+        for (final VariableElement field : getInstanceFields(type))
+        {
+            final TypeMirror t = field.asType();
+            final int fieldSize;
+
+            if (t.getKind().isPrimitive())
+            {
+                fieldSize = primitiveSize(t.getKind());
+            }
+            else if (t.getKind() == TypeKind.ARRAY)
+            {
+                final TypeMirror componentType = ((ArrayType) t).getComponentType();
+                final StaticSize staticSize = field.getAnnotation(StaticSize.class);
+
+                if (staticSize == null || !componentType.getKind().isPrimitive())
+                    return -1;
+
+                fieldSize = primitiveSize(componentType.getKind()) * staticSize.value();
+            }
+            else if (t.getKind() == TypeKind.DECLARED)
+            {
+                final TypeElement fieldType = (TypeElement) ((DeclaredType) t).asElement();
+                if (fieldType.getAnnotation(FStruct.class) == null)
+                    return -1;
+
+                fieldSize = getStaticSize(fieldType);
+            }
+            else
+            {
+                return -1;
+            }
+
+            if (fieldSize < 0)
+                return -1;
+
+            size += fieldSize;
+        }
+
+        return size;
+    }
+
+    private static int primitiveSize(TypeKind kind)
+    {
+        switch (kind)
+        {
+            case BOOLEAN:
+            case BYTE:    return Byte.BYTES;
+            case SHORT:   return Short.BYTES;
+            case CHAR:    return Character.BYTES;
+            case INT:     return Integer.BYTES;
+            case LONG:    return Long.BYTES;
+            case FLOAT:   return Float.BYTES;
+            case DOUBLE:  return Double.BYTES;
+        }
+
+        throw new IllegalArgumentException("Not a primitive: " + kind);
+    }
+
+    /**
+     * Checks whether the generated code may read and write all the fields directly.
+     */
+    private static boolean isFieldAccessible(List<VariableElement> fields)
+    {
+        for (final VariableElement field : fields)
+        {
+            final Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE))
+                return false;
+
+            final TypeMirror t = field.asType();
+            if (t.getKind().isPrimitive())
+            {
+                if (modifiers.contains(Modifier.FINAL))
+                    return false;
+            }
+            else if (t.getKind() == TypeKind.ARRAY)
+            {
+                // Static size arrays are filled in place
+                if (field.getAnnotation(StaticSize.class) == null || !((ArrayType) t).getComponentType().getKind().isPrimitive())
+                    return false;
+            }
+            else
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static List<VariableElement> getInstanceFields(TypeElement type)
+    {
+        final List<VariableElement> fields = new ArrayList<>();
+
+        // In order of declaration
+        for (final VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements()))
+        {
+            if (!field.getModifiers().contains(Modifier.STATIC))
+                fields.add(field);
+        }
+
+        return fields;
+    }
+
+    private static boolean hasAccessibleNoArgConstructor(TypeElement type)
+    {
+        for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements()))
+        {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC))
+                return true;
+        }
+
+        return false;
+    }
+
+    private boolean isSubtype(TypeElement type, String interfaceName)
+    {
+        final TypeElement iface = processingEnv.getElementUtils().getTypeElement(interfaceName);
+        return iface != null && processingEnv.getTypeUtils().isAssignable(type.asType(), iface.asType());
+    }
+
+    private boolean isObject(TypeMirror t)
+    {
+        return t.getKind() == TypeKind.DECLARED &&
+                ((TypeElement) ((DeclaredType) t).asElement()).getQualifiedName().contentEquals("java.lang.Object");
+    }
+
+    private void error(Element element, String message)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,56 @@
+package com.vizor.unreal.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with power-of-two buckets: bucket i counts durations in [2^i, 2^(i+1)) nanoseconds
+ * (bucket zero counts zero durations too). Recording is lock-free and never allocates.
+ */
+final class LatencyHistogram
+{
+    static final int NUM_BUCKETS = Long.SIZE;
+
+    private final LongAdder[] buckets = new LongAdder[NUM_BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    LatencyHistogram()
+    {
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    void record(long nanos)
+    {
+        // nanoTime is monotonic, but be tolerant to callers
+        final long value = Math.max(nanos, 0L);
+
+        buckets[bucketOf(value)].increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    PakMetricsSnapshot.Latency snapshot()
+    {
+        final long[] counts = new long[NUM_BUCKETS];
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = buckets[i].sum();
+
+        return new PakMetricsSnapshot.Latency(counts, totalNanos.sum(), maxNanos.get());
+    }
+
+    void reset()
+    {
+        for (final LongAdder bucket : buckets)
+            bucket.reset();
+
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    static int bucketOf(long nanos)
+    {
+        return (nanos == 0L) ? 0 : (Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos));
+    }
+}
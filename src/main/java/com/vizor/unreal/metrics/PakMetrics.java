@@ -0,0 +1,279 @@
+package com.vizor.unreal.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide pak I/O metrics: counters and latency histograms of extraction, packing and index loading.
+ *
+ * Disabled by default (enable with {@link #setEnabled(boolean)} or with the {@code juepak.metrics} system property).
+ * Instrumented code calls the static methods unconditionally: while disabled each call is a single field read,
+ * while enabled counters are striped ({@link LongAdder}), so neither of them allocates nor contends.
+ *
+ * Metrics are read with {@link #snapshot()} or over JMX once {@link #registerMBean()} is called.
+ */
+public final class PakMetrics
+{
+    /**
+     * Name the MXBean is registered with.
+     */
+    public static final String OBJECT_NAME = "com.vizor.unreal:type=PakMetrics";
+
+    public enum Counter
+    {
+        /**
+         * Bytes read from pak files (payload, headers and indexes).
+         */
+        BYTES_READ,
+
+        /**
+         * Bytes decrypted (payload and indexes).
+         */
+        BYTES_DECRYPTED,
+
+        /**
+         * Bytes produced by inflating compressed blocks.
+         */
+        BYTES_INFLATED,
+
+        /**
+         * Bytes produced by deflating blocks when packing.
+         */
+        BYTES_DEFLATED,
+
+        /**
+         * Bytes encrypted when packing (payload and indexes).
+         */
+        BYTES_ENCRYPTED,
+
+        /**
+         * Bytes written: extracted entries and packed archives.
+         */
+        BYTES_WRITTEN,
+
+        /**
+         * Compressed blocks inflated or deflated, uncompressed chunks read.
+         */
+        BLOCKS_PROCESSED,
+
+        /**
+         * Entries, which extraction was started.
+         */
+        ENTRIES_OPENED,
+
+        /**
+         * Entries extracted successfully.
+         */
+        ENTRIES_EXTRACTED,
+
+        /**
+         * Entries packed into archives.
+         */
+        ENTRIES_PACKED,
+
+        /**
+         * Pak indexes loaded.
+         */
+        INDEXES_LOADED,
+
+        /**
+         * Pak indexes mapped from sidecars, instead of being parsed (also counted as loaded).
+         */
+        INDEX_SIDECARS_MAPPED,
+
+        /**
+         * Pak file chunks checked against signatures successfully.
+         */
+        CHUNKS_VERIFIED
+    }
+
+    public enum Stage
+    {
+        /**
+         * Reading, decrypting, checking and parsing an index of a pak file.
+         */
+        INDEX_LOAD,
+
+        /**
+         * Extracting a single entry, from the beginning to the end.
+         */
+        EXTRACT_ENTRY,
+        EXTRACT_READ,
+        EXTRACT_DECRYPT,
+        EXTRACT_INFLATE,
+        EXTRACT_WRITE,
+
+        /**
+         * Packing a single entry, from the beginning to the end.
+         */
+        PACK_ENTRY,
+        PACK_DEFLATE,
+        PACK_ENCRYPT,
+        PACK_WRITE,
+
+        /**
+         * Writing an index of an archive.
+         */
+        PACK_INDEX
+    }
+
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Stage[] STAGES = Stage.values();
+
+    private static final LongAdder[] counters = new LongAdder[COUNTERS.length];
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+    static {
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = new LongAdder();
+
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean("juepak.metrics");
+
+    private PakMetrics()
+    {
+        throw new AssertionError("No " + getClass() + " instances for you");
+    }
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables metrics collection. Collected values are kept when disabled.
+     *
+     * @param value Whether metrics should be collected.
+     */
+    public static void setEnabled(boolean value)
+    {
+        enabled = value;
+    }
+
+    /**
+     * Adds a value to a counter, does nothing if metrics are disabled.
+     *
+     * @param counter A counter.
+     * @param value A value to add.
+     */
+    public static void add(Counter counter, long value)
+    {
+        if (enabled)
+            counters[counter.ordinal()].add(value);
+    }
+
+    /**
+     * Increments a counter, does nothing if metrics are disabled.
+     *
+     * @param counter A counter.
+     */
+    public static void increment(Counter counter)
+    {
+        if (enabled)
+            counters[counter.ordinal()].increment();
+    }
+
+    /**
+     * Starts timing a stage, should be paired with {@link #stopTimer(Stage, long)}.
+     *
+     * @return Start time in nanoseconds, or zero if metrics are disabled.
+     */
+    public static long startTimer()
+    {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records the time elapsed since {@link #startTimer()}, does nothing if the timer was not started.
+     *
+     * @param stage A stage being timed.
+     * @param startTime A value returned by {@link #startTimer()}.
+     */
+    public static void stopTimer(Stage stage, long startTime)
+    {
+        if (startTime != 0L)
+            histograms[stage.ordinal()].record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Takes a snapshot of all metrics. Values are read one by one, so concurrent updates might be partially seen.
+     *
+     * @return A snapshot.
+     */
+    public static PakMetricsSnapshot snapshot()
+    {
+        final long[] counterValues = new long[COUNTERS.length];
+        for (int i = 0; i < counterValues.length; i++)
+            counterValues[i] = counters[i].sum();
+
+        final PakMetricsSnapshot.Latency[] latencies = new PakMetricsSnapshot.Latency[STAGES.length];
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = histograms[i].snapshot();
+
+        return new PakMetricsSnapshot(counterValues, latencies);
+    }
+
+    /**
+     * Resets all metrics to zero.
+     */
+    public static void reset()
+    {
+        for (final LongAdder counter : counters)
+            counter.reset();
+
+        for (final LatencyHistogram histogram : histograms)
+            histogram.reset();
+    }
+
+    /**
+     * Registers the {@link PakMetricsMXBean} on the platform MBean server as {@link #OBJECT_NAME},
+     * does nothing if it is already registered.
+     */
+    public static synchronized void registerMBean()
+    {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            server.registerMBean(new StandardMBean(new PakMetricsBean(), PakMetricsMXBean.class, true), objectName());
+        }
+        catch (InstanceAlreadyExistsException ignore) {
+            // Already registered
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Unable to register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Unregisters the {@link PakMetricsMXBean}, does nothing if it is not registered.
+     */
+    public static synchronized void unregisterMBean()
+    {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            server.unregisterMBean(objectName());
+        }
+        catch (InstanceNotFoundException ignore) {
+            // Not registered
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Unable to unregister " + OBJECT_NAME, e);
+        }
+    }
+
+    private static ObjectName objectName() throws MalformedObjectNameException
+    {
+        return new ObjectName(OBJECT_NAME);
+    }
+}
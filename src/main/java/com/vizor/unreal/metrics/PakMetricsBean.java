@@ -0,0 +1,133 @@
+package com.vizor.unreal.metrics;
+
+import com.vizor.unreal.metrics.PakMetrics.Counter;
+import com.vizor.unreal.metrics.PakMetrics.Stage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Implementation of the {@link PakMetricsMXBean}, every attribute is read from a fresh snapshot.
+ */
+final class PakMetricsBean implements PakMetricsMXBean
+{
+    @Override
+    public boolean isEnabled()
+    {
+        return PakMetrics.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled)
+    {
+        PakMetrics.setEnabled(enabled);
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return PakMetrics.snapshot().get(Counter.BYTES_READ);
+    }
+
+    @Override
+    public long getBytesDecrypted()
+    {
+        return PakMetrics.snapshot().get(Counter.BYTES_DECRYPTED);
+    }
+
+    @Override
+    public long getBytesInflated()
+    {
+        return PakMetrics.snapshot().get(Counter.BYTES_INFLATED);
+    }
+
+    @Override
+    public long getBytesWritten()
+    {
+        return PakMetrics.snapshot().get(Counter.BYTES_WRITTEN);
+    }
+
+    @Override
+    public long getBlocksProcessed()
+    {
+        return PakMetrics.snapshot().get(Counter.BLOCKS_PROCESSED);
+    }
+
+    @Override
+    public long getEntriesOpened()
+    {
+        return PakMetrics.snapshot().get(Counter.ENTRIES_OPENED);
+    }
+
+    @Override
+    public long getEntriesExtracted()
+    {
+        return PakMetrics.snapshot().get(Counter.ENTRIES_EXTRACTED);
+    }
+
+    @Override
+    public double getMeanIndexLoadMillis()
+    {
+        return PakMetrics.snapshot().get(Stage.INDEX_LOAD).getMeanNanos() / 1_000_000.0;
+    }
+
+    @Override
+    public Map<String, Long> getCounters()
+    {
+        final PakMetricsSnapshot snapshot = PakMetrics.snapshot();
+
+        final Map<String, Long> values = new LinkedHashMap<>();
+        for (final Counter counter : Counter.values())
+            values.put(counter.name(), snapshot.get(counter));
+
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts()
+    {
+        return perStage(PakMetricsSnapshot.Latency::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getStageTotalNanos()
+    {
+        return perStage(PakMetricsSnapshot.Latency::getTotalNanos);
+    }
+
+    @Override
+    public Map<String, Long> getStageMaxNanos()
+    {
+        return perStage(PakMetricsSnapshot.Latency::getMaxNanos);
+    }
+
+    @Override
+    public Map<String, Long> getStageP50Nanos()
+    {
+        return perStage(l -> l.getPercentileNanos(50));
+    }
+
+    @Override
+    public Map<String, Long> getStageP99Nanos()
+    {
+        return perStage(l -> l.getPercentileNanos(99));
+    }
+
+    @Override
+    public void reset()
+    {
+        PakMetrics.reset();
+    }
+
+    private static Map<String, Long> perStage(ToLongFunction<PakMetricsSnapshot.Latency> value)
+    {
+        final PakMetricsSnapshot snapshot = PakMetrics.snapshot();
+
+        final Map<String, Long> values = new LinkedHashMap<>();
+        for (final Stage stage : Stage.values())
+            values.put(stage.name(), value.applyAsLong(snapshot.get(stage)));
+
+        return values;
+    }
+}
@@ -0,0 +1,49 @@
+package com.vizor.unreal.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link PakMetrics}, registered with {@link PakMetrics#registerMBean()}.
+ * Maps are keyed by {@link PakMetrics.Counter} and {@link PakMetrics.Stage} names.
+ */
+public interface PakMetricsMXBean
+{
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getBytesRead();
+
+    long getBytesDecrypted();
+
+    long getBytesInflated();
+
+    long getBytesWritten();
+
+    long getBlocksProcessed();
+
+    long getEntriesOpened();
+
+    long getEntriesExtracted();
+
+    /**
+     * Gets the mean time of loading an index.
+     *
+     * @return Mean index load time in milliseconds.
+     */
+    double getMeanIndexLoadMillis();
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getStageCounts();
+
+    Map<String, Long> getStageTotalNanos();
+
+    Map<String, Long> getStageMaxNanos();
+
+    Map<String, Long> getStageP50Nanos();
+
+    Map<String, Long> getStageP99Nanos();
+
+    void reset();
+}
@@ -0,0 +1,159 @@
+package com.vizor.unreal.metrics;
+
+import com.vizor.unreal.metrics.PakMetrics.Counter;
+import com.vizor.unreal.metrics.PakMetrics.Stage;
+
+import java.util.Arrays;
+
+/**
+ * Immutable values of all {@link PakMetrics} at some moment.
+ */
+public final class PakMetricsSnapshot
+{
+    /**
+     * Immutable state of a latency histogram.
+     */
+    public static final class Latency
+    {
+        private final long[] buckets;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Latency(long[] buckets, long totalNanos, long maxNanos)
+        {
+            this.buckets = buckets;
+            this.count = Arrays.stream(buckets).sum();
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * Gets the number of recorded durations.
+         *
+         * @return Number of durations.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        public long getTotalNanos()
+        {
+            return totalNanos;
+        }
+
+        public long getMaxNanos()
+        {
+            return maxNanos;
+        }
+
+        /**
+         * Gets the mean duration.
+         *
+         * @return Mean duration in nanoseconds, zero if nothing was recorded.
+         */
+        public double getMeanNanos()
+        {
+            return (count > 0) ? ((double) totalNanos / count) : 0.0;
+        }
+
+        /**
+         * Estimates a percentile by the upper bound of the bucket it falls into, so the estimation is
+         * at most twice as large as the real value (and never larger than the maximum).
+         *
+         * @param percentile A percentile in range [0, 100].
+         * @return Estimated duration in nanoseconds, zero if nothing was recorded.
+         */
+        public long getPercentileNanos(double percentile)
+        {
+            if (percentile < 0.0 || percentile > 100.0)
+                throw new IllegalArgumentException("Percentile must be within 0..100, given: " + percentile);
+
+            if (count == 0)
+                return 0L;
+
+            final long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100.0));
+
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++)
+            {
+                seen += buckets[i];
+                if (seen >= rank)
+                {
+                    final long upperBound = (i == buckets.length - 1) ? Long.MAX_VALUE : ((2L << i) - 1);
+                    return Math.min(upperBound, maxNanos);
+                }
+            }
+
+            return maxNanos;
+        }
+
+        /**
+         * Gets counts of durations per bucket, bucket i counts durations in [2^i, 2^(i+1)) nanoseconds.
+         *
+         * @return A copy of bucket counts.
+         */
+        public long[] getBuckets()
+        {
+            return buckets.clone();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "count " + count +
+                    ", mean " + formatNanos((long) getMeanNanos()) +
+                    ", p50 " + formatNanos(getPercentileNanos(50)) +
+                    ", p99 " + formatNanos(getPercentileNanos(99)) +
+                    ", max " + formatNanos(maxNanos);
+        }
+    }
+
+    private final long[] counters;
+    private final Latency[] latencies;
+
+    PakMetricsSnapshot(long[] counters, Latency[] latencies)
+    {
+        this.counters = counters;
+        this.latencies = latencies;
+    }
+
+    public long get(Counter counter)
+    {
+        return counters[counter.ordinal()];
+    }
+
+    public Latency get(Stage stage)
+    {
+        return latencies[stage.ordinal()];
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder("PakMetrics:");
+
+        for (final Counter counter : Counter.values())
+            sb.append(System.lineSeparator()).append(" > ").append(counter).append(": ").append(get(counter));
+
+        for (final Stage stage : Stage.values())
+        {
+            final Latency latency = get(stage);
+            if (latency.getCount() > 0)
+                sb.append(System.lineSeparator()).append(" > ").append(stage).append(": ").append(latency);
+        }
+
+        return sb.toString();
+    }
+
+    private static String formatNanos(long nanos)
+    {
+        if (nanos < 10_000L)
+            return nanos + "ns";
+        else if (nanos < 10_000_000L)
+            return (nanos / 1_000L) + "us";
+        else
+            return (nanos / 1_000_000L) + "ms";
+    }
+}
@@ -0,0 +1,124 @@
+package com.vizor.unreal.packer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An archive output, which counts its position itself, so the archive can be written to any channel: a file,
+ * a pipe, a socket or an {@link java.io.OutputStream}. Only archive files, opened by the packer, may be seeked.
+ */
+final class CountingChannel implements WritableByteChannel
+{
+    private final WritableByteChannel channel;
+
+    /**
+     * The same channel if it is an archive file, null otherwise.
+     */
+    private final FileChannel file;
+
+    private long position = 0;
+
+    private CountingChannel(WritableByteChannel channel, FileChannel file)
+    {
+        this.channel = channel;
+        this.file = file;
+    }
+
+    /**
+     * Wraps an archive file, opened (and truncated) by the packer. The file is closed with this channel.
+     *
+     * @param file Archive file.
+     * @return A seekable channel.
+     */
+    static CountingChannel ofFile(FileChannel file)
+    {
+        return new CountingChannel(file, file);
+    }
+
+    /**
+     * Wraps an output given by the user, the output is never closed (nor seeked, even if it is a file channel).
+     *
+     * @param channel Output channel.
+     * @return A channel, which can not be seeked.
+     */
+    static CountingChannel ofStream(WritableByteChannel channel)
+    {
+        return new CountingChannel(channel, null);
+    }
+
+    boolean isSeekable()
+    {
+        return file != null;
+    }
+
+    /**
+     * Gets the current position, which is the number of bytes written unless the channel was seeked back.
+     *
+     * @return Position in the archive.
+     */
+    long position()
+    {
+        return position;
+    }
+
+    /**
+     * Moves to a position in the archive file.
+     *
+     * @param newPosition New position.
+     * @throws IOException If an I/O error occurs.
+     * @throws UnsupportedOperationException If the channel is not seekable.
+     */
+    void position(long newPosition) throws IOException
+    {
+        if (file == null)
+            throw new UnsupportedOperationException("Unable to seek, the archive is written to a stream");
+
+        file.position(newPosition);
+        position = newPosition;
+    }
+
+    /**
+     * Gets the size of the archive file.
+     *
+     * @return Number of bytes.
+     * @throws IOException If an I/O error occurs.
+     * @throws UnsupportedOperationException If the channel is not seekable.
+     */
+    long size() throws IOException
+    {
+        if (file == null)
+            throw new UnsupportedOperationException("Unable to get the size, the archive is written to a stream");
+
+        return file.size();
+    }
+
+    /**
+     * Writes all the remaining bytes of the buffer (unlike a channel, which might write only some of them).
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException
+    {
+        final int numBytes = src.remaining();
+
+        while (src.hasRemaining())
+            channel.write(src);
+
+        position += numBytes;
+        return numBytes;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (file != null)
+            file.close();
+    }
+}
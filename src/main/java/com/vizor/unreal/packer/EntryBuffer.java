@@ -0,0 +1,167 @@
+package com.vizor.unreal.packer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Look-ahead buffer of a single entry. The entry header precedes the data, but it is only known once all the data
+ * was produced, so the data is kept here until the header is written.
+ *
+ * The data is kept in memory up to the limit, the rest spills to a temporary file. The buffer is reused for all
+ * entries of an archive, see {@link #reset()}.
+ */
+final class EntryBuffer implements WritableByteChannel
+{
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final int memoryLimit;
+
+    private byte[] memory;
+    private int memorySize = 0;
+
+    /**
+     * Temporary file with the data beyond the memory limit, created on the first spill.
+     */
+    private Path spillPath = null;
+    private FileChannel spill = null;
+
+    private long size = 0;
+    private boolean open = true;
+
+    /**
+     * Constructor.
+     *
+     * @param memoryLimit Number of bytes kept in memory.
+     */
+    EntryBuffer(int memoryLimit)
+    {
+        this.memoryLimit = memoryLimit;
+        this.memory = new byte[Math.min(INITIAL_CAPACITY, memoryLimit)];
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException
+    {
+        if (!open)
+            throw new ClosedChannelException();
+
+        final int numBytes = src.remaining();
+
+        // Fill the memory first
+        final int toMemory = Math.min(numBytes, memoryLimit - memorySize);
+        if (toMemory > 0)
+        {
+            if (memorySize + toMemory > memory.length)
+            {
+                final long capacity = Math.max(memory.length * 2L, memorySize + toMemory);
+                memory = Arrays.copyOf(memory, (int) Math.min(capacity, memoryLimit));
+            }
+
+            src.get(memory, memorySize, toMemory);
+            memorySize += toMemory;
+        }
+
+        // Spill the rest
+        if (src.hasRemaining())
+        {
+            if (spill == null)
+            {
+                spillPath = Files.createTempFile("juepak_temp_", ".entry");
+                spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            // Bytes spilled by the previous writes
+            long spillPosition = size - (memorySize - toMemory);
+            while (src.hasRemaining())
+                spillPosition += spill.write(src, spillPosition);
+        }
+
+        size += numBytes;
+        return numBytes;
+    }
+
+    /**
+     * Gets the number of bytes buffered since the last {@link #reset()}.
+     *
+     * @return Number of bytes.
+     */
+    long size()
+    {
+        return size;
+    }
+
+    /**
+     * Gets the size of the spill file, which is truncated on {@link #reset()}.
+     *
+     * @return Number of bytes, zero if nothing was spilled yet.
+     * @throws IOException If an I/O error occurs.
+     */
+    long spillFileSize() throws IOException
+    {
+        return (spill != null) ? spill.size() : 0;
+    }
+
+    /**
+     * Writes all the buffered data to the channel, keeps the data buffered.
+     *
+     * @param target A channel to write the data to.
+     * @throws IOException If an I/O error occurs.
+     */
+    void transferTo(WritableByteChannel target) throws IOException
+    {
+        final ByteBuffer data = ByteBuffer.wrap(memory, 0, memorySize);
+        while (data.hasRemaining())
+            target.write(data);
+
+        final long spillSize = size - memorySize;
+        for (long position = 0; position < spillSize; )
+            position += spill.transferTo(position, spillSize - position, target);
+    }
+
+    /**
+     * Drops the buffered data, the spill file is kept for the next entry.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void reset() throws IOException
+    {
+        if (spill != null && size > memorySize)
+            spill.truncate(0);
+
+        memorySize = 0;
+        size = 0;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!open)
+            return;
+
+        open = false;
+        memory = null;
+
+        if (spill != null)
+        {
+            try {
+                spill.close();
+            }
+            finally {
+                Files.deleteIfExists(spillPath);
+            }
+        }
+    }
+}
@@ -1,30 +1,32 @@
 package com.vizor.unreal.packer;
 
+import com.vizor.unreal.metrics.PakMetrics;
+import com.vizor.unreal.metrics.PakMetrics.Counter;
+import com.vizor.unreal.metrics.PakMetrics.Stage;
 import com.vizor.unreal.pak.FPakCompressedBlock;
 import com.vizor.unreal.pak.FPakEntry;
 import com.vizor.unreal.pak.FPakInfo;
+import com.vizor.unreal.pak.PakSignature;
 import com.vizor.unreal.ue4.ECompressionFlags;
 import com.vizor.unreal.ue4.FAES;
 import com.vizor.unreal.ue4.FCoreDelegates;
-import com.vizor.unreal.ue4.FSHA1;
 import com.vizor.unreal.util.Misc;
 import com.vizor.unreal.util.PathUtils;
+import com.vizor.unreal.util.ProgressTracker;
 import com.vizor.unreal.util.Sizeof;
 import com.vizor.unreal.util.UE4Serializer;
 
 import java.io.Closeable;
-import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
-import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -35,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.DoubleConsumer;
 import java.util.zip.Deflater;
@@ -86,9 +89,9 @@ public class Packer implements Closeable
     private final Deflater sharedDeflater = new Deflater();
 
     /**
-     * List of all attached progress listeners.
+     * Progress of the whole archive, throttles events of all attached listeners.
      */
-    private final List<DoubleConsumer> progressListeners = new ArrayList<>();
+    private final ProgressTracker progress;
 
     /**
      * packer setup, initialized once
@@ -105,9 +108,6 @@ public class Packer implements Closeable
      */
     private boolean closed = false;
 
-    private long bytesTotal = 0;
-    private long bytesProcessed = 0;
-
     /**
      * A private constructor, used by a builder.
      *
@@ -116,6 +116,8 @@ public class Packer implements Closeable
     Packer(PackerSetup packerSetup)
     {
         this.setup = packerSetup;
+        this.progress = (packerSetup.getProgressTracker() != null) ?
+                packerSetup.getProgressTracker() : ProgressTracker.builder().build();
     }
 
     // ! Static builder !
@@ -167,10 +169,19 @@ public class Packer implements Closeable
     {
         ensureNotClosed();
 
-        final Path archivePath = setup.getArchivePath();
-        if (Files.isRegularFile(archivePath))
+        // An archive file is only written if there is no output channel
+        final Path archivePath = setup.hasOutputChannel() ? null : setup.getArchivePath();
+        final Path signaturePath = (archivePath != null) ? PakSignature.getPath(archivePath) : null;
+
+        if (archivePath != null)
         {
-            Files.delete(archivePath);
+            if (Files.isRegularFile(archivePath))
+            {
+                Files.delete(archivePath);
+            }
+
+            // A signature of the previous archive would not match
+            Files.deleteIfExists(signaturePath);
         }
 
         long bytesToBePacked = 0;
@@ -178,36 +189,46 @@ public class Packer implements Closeable
         {
             bytesToBePacked += Files.size(e.getKey());
         }
-        this.bytesTotal = bytesToBePacked;
+        progress.start(bytesToBePacked, paths.size());
 
         // Must keep user's order, so use linked map
         final Map<String, FPakEntry> nameEntryMap = new LinkedHashMap<>();
 
-        // Write everything into archive file
-        try (final FileOutputStream fos = new FileOutputStream(archivePath.toFile()))
+        // Write everything into archive file (or the output channel)
+        try (final CountingChannel c = openOutput(archivePath);
+             final EntryBuffer lookAhead = new EntryBuffer(setup.getEntryBufferSize()))
         {
             final Path commonPath = PathUtils.findCommonPath(false, paths.keySet());
-            final FileChannel c = fos.getChannel();
 
             for (final Entry<Path, PakEntryParameters> e : paths.entrySet())
             {
                 final Path path = Objects.requireNonNull(e.getKey());
                 final PakEntryParameters params = Objects.requireNonNull(e.getValue());
 
+                final long startTime = PakMetrics.startTimer();
+
+                final String filename = PathUtils.pathToPortableUE4String(commonPath.relativize(path));
+                progress.beginEntry(filename);
+
                 try (final InputStream fis = new FileInputStream(path.toFile()))
                 {
                     final FPakEntry entry;
                     if (params.entryShouldBeCompressed())
                     {
-                        entry = copyToPakCompressed(fis, c, params);
+                        entry = copyToPakCompressed(fis, c, lookAhead, params);
                     }
                     else
                     {
-                        entry = copyToPakUncompressed(fis, c, params);
+                        entry = copyToPakUncompressed(fis, c, lookAhead, params);
                     }
 
-                    nameEntryMap.put(PathUtils.pathToPortableUE4String(commonPath.relativize(path)), entry);
+                    nameEntryMap.put(filename, entry);
                 }
+
+                progress.endEntry();
+
+                PakMetrics.increment(Counter.ENTRIES_PACKED);
+                PakMetrics.stopTimer(Stage.PACK_ENTRY, startTime);
             }
 
             // Instantiate info (before index was written)
@@ -217,12 +238,10 @@ public class Packer implements Closeable
             pakInfo.Version = setup.getPakVersion();
             pakInfo.bEncryptedIndex = Misc.toByte(setup.pakIndexShouldBeEncrypted());
 
-            // Write index
-            final ByteBuffer entriesBuffer = serializeIndex(nameEntryMap, getMountPoint(), pakInfo.IndexHash);
-            c.write(entriesBuffer);
-
-            // Store index size (after index was written)
-            pakInfo.IndexSize = entriesBuffer.limit();
+            // Write index, store its size (after index was written)
+            final long indexStartTime = PakMetrics.startTimer();
+            pakInfo.IndexSize = writeIndex(c, nameEntryMap, getMountPoint(), pakInfo.IndexHash);
+            PakMetrics.stopTimer(Stage.PACK_INDEX, indexStartTime);
 
             // Finally, serialize index, may allocate direct buffer because we never need an array
             final ByteBuffer infoBuffer = ByteBuffer.allocateDirect(toInt(pakInfo.GetSerializedSize(setup.getPakVersion())));
@@ -230,11 +249,57 @@ public class Packer implements Closeable
 
             infoBuffer.flip();
             c.write(infoBuffer);
+
+            if (setup.getOutputStream() != null)
+            {
+                setup.getOutputStream().flush();
+            }
+
+            PakMetrics.add(Counter.BYTES_WRITTEN, c.position());
+        }
+        catch (CancellationException e)
+        {
+            // Never leave a partial archive
+            if (archivePath != null)
+            {
+                Files.deleteIfExists(archivePath);
+            }
+
+            throw e;
         }
         finally
         {
             closed = true;
         }
+
+        if (setup.signatureShouldBeWritten())
+        {
+            // Entry headers are written after their data, so chunks are hashed once the archive is complete
+            try (final FileChannel archive = FileChannel.open(archivePath, StandardOpenOption.READ))
+            {
+                PakSignature.compute(archive::read, archive.size()).write(signaturePath);
+            }
+        }
+
+        progress.finish();
+    }
+
+    /**
+     * Opens the archive file, or wraps the output channel if there is one.
+     *
+     * @param archivePath Path to the archive file, null if the output channel is used.
+     * @return Archive output.
+     * @throws IOException If the archive file can not be opened.
+     */
+    private CountingChannel openOutput(Path archivePath) throws IOException
+    {
+        if (archivePath == null)
+        {
+            return CountingChannel.ofStream(setup.getOutputChannel());
+        }
+
+        return CountingChannel.ofFile(FileChannel.open(archivePath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
     }
 
     /**
@@ -255,13 +320,26 @@ public class Packer implements Closeable
         }
     }
 
-    private FPakEntry copyToPakUncompressed(InputStream is, SeekableByteChannel os, PakEntryParameters params) throws IOException
+    private FPakEntry copyToPakUncompressed(InputStream is, CountingChannel os, EntryBuffer lookAhead,
+                                           PakEntryParameters params) throws IOException
     {
         final long entryOffset = os.position();
 
         // Since we won't add any compression blocks, the size is constant
         final FPakEntry entry = new FPakEntry();
-        os.position(entryOffset + entry.GetSerializedSize(setup.getPakVersion()));
+
+        // Data goes right to its place in a file, but has to wait for the header in a stream
+        final WritableByteChannel dataChannel;
+        if (os.isSeekable())
+        {
+            os.position(entryOffset + entry.GetSerializedSize(setup.getPakVersion()));
+            dataChannel = os;
+        }
+        else
+        {
+            lookAhead.reset();
+            dataChannel = lookAhead;
+        }
 
         sha1.reset();
 
@@ -288,13 +366,15 @@ public class Packer implements Closeable
                         Arrays.fill(sharedWriteBuffer, readPerTransmission, bytesToWrite, (byte) 0);
                     }
 
-                    FAES.EncryptData(sharedWriteBuffer, bytesToWrite, sharedKeyBytes);
+                    encryptData(sharedWriteBuffer, bytesToWrite);
                 }
 
                 sha1.update(sharedWriteBuffer, 0, readPerTransmission);
 
+                final long writeStartTime = PakMetrics.startTimer();
                 buffer.position(0).limit(bytesToWrite);
-                os.write(buffer);
+                dataChannel.write(buffer);
+                PakMetrics.stopTimer(Stage.PACK_WRITE, writeStartTime);
 
                 // Increment counters
                 readTotal += readPerTransmission;
@@ -333,79 +413,68 @@ public class Packer implements Closeable
         entry.Serialize(entryBuffer, setup.getPakVersion());
         entryBuffer.flip();
 
-        // Finally, write and restore a position
-        os.position(entryOffset).write(entryBuffer);
-        os.position(os.size());
-
-        return entry;
-    }
-
-    private ByteBuffer serializeIndex(Map<String, FPakEntry> nameEntryMap, String mountPoint, byte[] outIndexHash)
-    {
-        // 1'st pass - compute buffer size
-        int serializeSize = 0;
-        serializeSize += UE4Serializer.GetSerializeSize(mountPoint);
-        serializeSize += Sizeof.sizeof(nameEntryMap.size());
-
-        for (Entry<String, FPakEntry> entry : nameEntryMap.entrySet())
+        if (os.isSeekable())
         {
-            serializeSize += UE4Serializer.GetSerializeSize(entry.getKey());
-            serializeSize += entry.getValue().GetSerializedSize(setup.getPakVersion());
+            // Finally, write and restore a position
+            os.position(entryOffset);
+            os.write(entryBuffer);
+            os.position(os.size());
         }
-
-        // Compute buffer size (possible with serialization padding)
-        final int bufferSize = (setup.pakIndexShouldBeEncrypted()) ? Align(serializeSize, FAES.getBlockSize()) : serializeSize;
-
-        // 2'nd pass - actually serialize
-        final ByteBuffer entriesBuffer = ByteBuffer.allocate(bufferSize);
-
-        UE4Serializer.Write(entriesBuffer, mountPoint);
-        UE4Serializer.Write(entriesBuffer, nameEntryMap.size());
-
-        // Write entries
-        for (Entry<String, FPakEntry> entry : nameEntryMap.entrySet())
+        else
         {
-            UE4Serializer.Write(entriesBuffer, entry.getKey());
-            entry.getValue().Serialize(entriesBuffer, setup.getPakVersion());
+            os.write(entryBuffer);
+            writeLookAhead(lookAhead, os);
         }
 
-        // Flip and check whether the size is correct
-        entriesBuffer.flip();
+        return entry;
+    }
 
-        if (entriesBuffer.limit() != serializeSize)
-        {
-            throw new IllegalStateException("Invalid serialize size, possible algorithm error");
-        }
+    private long writeIndex(WritableByteChannel c, Map<String, FPakEntry> nameEntryMap, String mountPoint,
+                            byte[] outIndexHash) throws IOException
+    {
+        final int pakVersion = setup.getPakVersion();
 
-        // Compute hash
-        FSHA1.HashBuffer(entriesBuffer.array(), bufferSize, outIndexHash);
+        try {
+            final byte[] keyBytes;
+            if (setup.pakIndexShouldBeEncrypted())
+            {
+                FCoreDelegates.GetPakEncryptionKeyDelegate().Execute(sharedKeyBytes);
+                keyBytes = sharedKeyBytes;
+            }
+            else
+            {
+                keyBytes = null;
+            }
 
-        // Then encrypt if necessary
-        if (setup.pakIndexShouldBeEncrypted())
-        {
-            entriesBuffer.limit(bufferSize);
+            final PakIndexWriter writer = new PakIndexWriter(c, keyBytes);
 
-            try {
-                FCoreDelegates.GetPakEncryptionKeyDelegate().Execute(sharedKeyBytes);
+            // Header: mount point and number of entries
+            final ByteBuffer header = writer.beginRecord(toInt(UE4Serializer.GetSerializeSize(mountPoint) + Sizeof.sizeof(nameEntryMap.size())));
+            UE4Serializer.Write(header, mountPoint);
+            UE4Serializer.Write(header, nameEntryMap.size());
+            writer.endRecord();
 
-                // Add trailing zeroes if alignment has been applied
-                if (serializeSize != bufferSize)
-                {
-                    Arrays.fill(entriesBuffer.array(), serializeSize, bufferSize, (byte) 0);
-                }
+            // Write entries, one by one
+            for (Entry<String, FPakEntry> entry : nameEntryMap.entrySet())
+            {
+                final String filename = entry.getKey();
+                final FPakEntry pakEntry = entry.getValue();
 
-                FAES.EncryptData(entriesBuffer.array(), bufferSize, sharedKeyBytes);
-            }
-            finally {
-                Arrays.fill(sharedKeyBytes, (byte) 0);
+                final ByteBuffer record = writer.beginRecord(toInt(UE4Serializer.GetSerializeSize(filename) + pakEntry.GetSerializedSize(pakVersion)));
+                UE4Serializer.Write(record, filename);
+                pakEntry.Serialize(record, pakVersion);
+                writer.endRecord();
             }
-        }
 
-        return entriesBuffer;
+            return writer.finish(outIndexHash);
+        }
+        finally {
+            Arrays.fill(sharedKeyBytes, (byte) 0);
+        }
     }
 
-    private synchronized FPakEntry copyToPakCompressed(InputStream is, SeekableByteChannel os, PakEntryParameters params)
-            throws IOException
+    private synchronized FPakEntry copyToPakCompressed(InputStream is, CountingChannel os, EntryBuffer lookAhead,
+                                                       PakEntryParameters params) throws IOException
     {
         final long beginPosition = os.position();
 
@@ -415,15 +484,16 @@ public class Packer implements Closeable
 
         final FPakEntry entry = new FPakEntry();
 
-        // Split our data into compressed (and maybe encrypted) chunks
-        final List<File> compressedTempBlocks = deflateSplit(is, uncompressedSize, compressedSize, entry.Hash, params);
+        // Split our data into compressed (and maybe encrypted) blocks, kept until the header is written
+        lookAhead.reset();
+        final List<Long> blockSizes = deflateSplit(is, lookAhead, uncompressedSize, compressedSize, entry.Hash, params);
 
         // Setup an entry
         entry.Offset = beginPosition;
         entry.Size = compressedSize.longValue();
         entry.UncompressedSize = uncompressedSize.longValue();
         entry.CompressionMethod = ECompressionFlags.COMPRESS_ZLIB;
-        entry.CompressionBlocks = new FPakCompressedBlock[compressedTempBlocks.size()];
+        entry.CompressionBlocks = new FPakCompressedBlock[blockSizes.size()];
         entry.CompressionBlockSize = MAX_COMPRESSED_BUFFER_SIZE;
 
         entry.SetDeleteRecord(false); // No support yet
@@ -436,10 +506,8 @@ public class Packer implements Closeable
         long relativeChunkOffset = pakEntrySize;
         for (int i = 0; i < entry.CompressionBlocks.length; i++)
         {
-            final File tempFile = compressedTempBlocks.get(i);
-
             final long chunkStart = baseOffset + relativeChunkOffset;
-            final long chunkLength = tempFile.length();
+            final long chunkLength = blockSizes.get(i);
 
             // Store in array
             entry.CompressionBlocks[i] = new FPakCompressedBlock(chunkStart, chunkStart + chunkLength);
@@ -456,36 +524,30 @@ public class Packer implements Closeable
         os.write(entryBuffer);
 
         // 2. WRITE data connecting chunks
-        final ByteBuffer blockBuffer = ByteBuffer.wrap(sharedWriteBuffer).order(ByteOrder.LITTLE_ENDIAN);
-
-        for (final File blockFile : compressedTempBlocks)
-        {
-            try (final FileInputStream tis = new FileInputStream(blockFile))
-            {
-                int numBytesRead;
-                while ((numBytesRead = tis.read(blockBuffer.array())) > 0)
-                {
-                    os.write((ByteBuffer) blockBuffer.position(0).limit(numBytesRead));
-                }
-            }
-        }
-
-        // Delete temporary file(s)
-        Misc.deleteFiles(compressedTempBlocks);
-
-        compressedTempBlocks.clear();
+        writeLookAhead(lookAhead, os);
 
         return entry;
     }
 
-    private List<File> deflateSplit(InputStream is, final AtomicLong outUncompressedSize, final AtomicLong outCompressedSize,
-                                    byte[] outHash, PakEntryParameters params) throws IOException
+    /**
+     * Writes the buffered data of an entry, after its header.
+     */
+    private static void writeLookAhead(EntryBuffer lookAhead, CountingChannel os) throws IOException
+    {
+        final long writeStartTime = PakMetrics.startTimer();
+        lookAhead.transferTo(os);
+        PakMetrics.stopTimer(Stage.PACK_WRITE, writeStartTime);
+    }
+
+    private List<Long> deflateSplit(InputStream is, EntryBuffer out, final AtomicLong outUncompressedSize,
+                                    final AtomicLong outCompressedSize, byte[] outHash, PakEntryParameters params)
+            throws IOException
     {
         Objects.requireNonNull(outUncompressedSize);
         Objects.requireNonNull(outCompressedSize);
         Objects.requireNonNull(outHash);
 
-        final List<File> tempFiles = new ArrayList<>();
+        final List<Long> blockSizes = new ArrayList<>();
 
         final byte[] readBuffer = this.sharedWriteBuffer;
         final byte[] writeBuffer = this.sharedReadBuffer;
@@ -494,7 +556,6 @@ public class Packer implements Closeable
         Arrays.fill(outHash, (byte) 0);
         sha1.reset();
 
-        boolean caughtAnException = false;
         try
         {
             if (params.entryShouldBeEncrypted())
@@ -514,44 +575,46 @@ public class Packer implements Closeable
                 sharedDeflater.setInput(readBuffer, 0, bytesReadPerTransmission);
                 sharedDeflater.finish();
 
-                // Create and immediately put into the list of files
-                final File tempFile = File.createTempFile("juepak_temp_", ".cblock");
-                tempFiles.add(tempFile);
-
-                // Deflate and write the data
-                try (final OutputStream fis = new FileOutputStream(tempFile))
+                // Deflate and buffer the data
+                long blockSize = 0;
+                while (!sharedDeflater.finished())
                 {
-                    while (!sharedDeflater.finished())
+                    final long deflateStartTime = PakMetrics.startTimer();
+                    final int bytesDeflated = sharedDeflater.deflate(writeBuffer);
+                    PakMetrics.stopTimer(Stage.PACK_DEFLATE, deflateStartTime);
+                    PakMetrics.add(Counter.BYTES_DEFLATED, bytesDeflated);
+                    final int bytesToWrite;
+                    if (params.entryShouldBeEncrypted())
                     {
-                        final int bytesDeflated = sharedDeflater.deflate(writeBuffer);
-                        final int bytesToWrite;
-                        if (params.entryShouldBeEncrypted())
-                        {
-                            bytesToWrite = Align(bytesDeflated, FAES.getBlockSize());
+                        bytesToWrite = Align(bytesDeflated, FAES.getBlockSize());
 
-                            // Add trailing zeroes if alignment has been applied
-                            if (bytesDeflated != bytesToWrite)
-                            {
-                                Arrays.fill(writeBuffer, bytesDeflated, bytesToWrite, (byte) 0);
-                            }
-
-                            FAES.EncryptData(writeBuffer, bytesToWrite, sharedKeyBytes);
-                        }
-                        else
+                        // Add trailing zeroes if alignment has been applied
+                        if (bytesDeflated != bytesToWrite)
                         {
-                            bytesToWrite = bytesDeflated;
+                            Arrays.fill(writeBuffer, bytesDeflated, bytesToWrite, (byte) 0);
                         }
 
-                        // Compute hash
-                        sha1.update(writeBuffer, 0, bytesToWrite);
-                        fis.write(writeBuffer, 0, bytesToWrite);
-
-                        outCompressedSize.getAndAdd(bytesToWrite);
+                        encryptData(writeBuffer, bytesToWrite);
+                    }
+                    else
+                    {
+                        bytesToWrite = bytesDeflated;
                     }
+
+                    // Compute hash
+                    sha1.update(writeBuffer, 0, bytesToWrite);
+                    out.write(ByteBuffer.wrap(writeBuffer, 0, bytesToWrite));
+
+                    blockSize += bytesToWrite;
+                    outCompressedSize.getAndAdd(bytesToWrite);
                 }
 
+                blockSizes.add(blockSize);
+
                 outUncompressedSize.getAndAdd(bytesReadPerTransmission);
                 onBytesProcessed(bytesReadPerTransmission);
+
+                PakMetrics.increment(Counter.BLOCKS_PROCESSED);
             }
 
             if (sha1.digest(outHash, 0, outHash.length) != outHash.length)
@@ -559,14 +622,8 @@ public class Packer implements Closeable
                 throw new IOException("Invalid sha1 length: must be exactly " + outHash.length + " bytes");
             }
         }
-        catch (IOException | RuntimeException e)
-        {
-            caughtAnException = true;
-            throw e;
-        }
         catch (DigestException e)
         {
-            caughtAnException = true;
             throw new IOException(e);
         }
         finally
@@ -579,16 +636,21 @@ public class Packer implements Closeable
             {
                 Arrays.fill(sharedKeyBytes, (byte) 0);
             }
-
-            // Remove temporary files if there were exceptions
-            if (caughtAnException)
-            {
-                Misc.deleteFiles(tempFiles);
-                tempFiles.clear();
-            }
         }
 
-        return tempFiles;
+        return blockSizes;
+    }
+
+    /**
+     * Encrypts data with the shared key bytes, which must be already acquired.
+     */
+    private void encryptData(byte[] data, int size)
+    {
+        final long startTime = PakMetrics.startTimer();
+        FAES.EncryptData(data, size, sharedKeyBytes);
+        PakMetrics.stopTimer(Stage.PACK_ENCRYPT, startTime);
+
+        PakMetrics.add(Counter.BYTES_ENCRYPTED, size);
     }
 
     private void ensureNotClosed()
@@ -596,27 +658,19 @@ public class Packer implements Closeable
         assert !closed : "This packer is closed, create a new one";
     }
 
-    @SuppressWarnings("ForLoopReplaceableByForEach")
     private void onBytesProcessed(int numBytesProcessed)
     {
-        final int numProgressListeners = progressListeners.size();
-
-        // Compute clamped progress
-        bytesProcessed += numBytesProcessed;
-        final double clampedProgress = Math.min(Math.max((double) bytesProcessed / bytesTotal, 0.0), 1.0);
-
-        // Called very frequently, so use
-        for (int i = 0; i < numProgressListeners; i++)
-        {
-            final DoubleConsumer progressListener = progressListeners.get(i);
-
-            if (progressListener != null)
-                progressListener.accept(clampedProgress);
-        }
+        progress.addBytes(numBytesProcessed);
     }
 
+    /**
+     * Adds a listener of the overall progress in range [0, 1]. Calls are throttled, see {@link ProgressTracker}.
+     *
+     * @param progressListener Progress listener, null is ignored.
+     */
     public void addProgressListener(DoubleConsumer progressListener)
     {
-        progressListeners.add(progressListener);
+        if (progressListener != null)
+            progress.addListener(e -> progressListener.accept(e.getFraction()));
     }
 }
@@ -2,7 +2,11 @@ package com.vizor.unreal.packer;
 
 import com.vizor.unreal.pak.FPakInfo;
 import com.vizor.unreal.util.PakVersion;
+import com.vizor.unreal.util.ProgressTracker;
 
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 
 /**
@@ -11,10 +15,15 @@ import java.nio.file.Path;
 public final class PackerSetup
 {
     private boolean encryptIndex = false;
+    private boolean writeSignature = false;
 
     private int pakVersion = FPakInfo.PakFile_Version_Latest;
     private String customMountPoint = null;
     private Path archivePath = null;
+    private WritableByteChannel outputChannel = null;
+    private OutputStream outputStream = null;
+    private int entryBufferSize = 32 * 1024 * 1024;
+    private ProgressTracker progressTracker = null;
 
     public PackerSetup()
     {
@@ -26,6 +35,11 @@ public final class PackerSetup
         return encryptIndex;
     }
 
+    public boolean signatureShouldBeWritten()
+    {
+        return writeSignature;
+    }
+
     public int getPakVersion()
     {
         return pakVersion;
@@ -46,6 +60,31 @@ public final class PackerSetup
         return archivePath;
     }
 
+    public boolean hasOutputChannel()
+    {
+        return outputChannel != null;
+    }
+
+    public WritableByteChannel getOutputChannel()
+    {
+        return outputChannel;
+    }
+
+    public OutputStream getOutputStream()
+    {
+        return outputStream;
+    }
+
+    public int getEntryBufferSize()
+    {
+        return entryBufferSize;
+    }
+
+    public ProgressTracker getProgressTracker()
+    {
+        return progressTracker;
+    }
+
     // Builder methods
     public PackerSetup encryptIndex(boolean value)
     {
@@ -53,6 +92,18 @@ public final class PackerSetup
         return this;
     }
 
+    /**
+     * Write a chunk signature (".sig" file) next to the archive, see {@link com.vizor.unreal.pak.PakSignature}.
+     *
+     * @param value True if the signature should be written.
+     * @return This setup.
+     */
+    public PackerSetup writeSignature(boolean value)
+    {
+        writeSignature = value;
+        return this;
+    }
+
     public PackerSetup engineVersion(String value)
     {
         pakVersion = PakVersion.getByEngineVersion(value);
@@ -71,6 +122,56 @@ public final class PackerSetup
         return this;
     }
 
+    /**
+     * Write the archive to a channel (e.g. a pipe or a socket) instead of a file, in a single pass without seeking.
+     * The channel is not closed by the packer.
+     *
+     * @param value Output channel.
+     * @return This setup.
+     */
+    public PackerSetup outputChannel(WritableByteChannel value)
+    {
+        outputChannel = value;
+        outputStream = null;
+        return this;
+    }
+
+    /**
+     * Write the archive to a stream instead of a file, in a single pass without seeking.
+     * The stream is flushed, but not closed by the packer.
+     *
+     * @param value Output stream.
+     * @return This setup.
+     */
+    public PackerSetup outputStream(OutputStream value)
+    {
+        outputChannel = Channels.newChannel(value);
+        outputStream = value;
+        return this;
+    }
+
+    /**
+     * Sets how much data of a single entry is kept in memory, until its header is written. The rest of the entry
+     * is kept in a temporary file.
+     *
+     * @param value Number of bytes.
+     * @return This setup.
+     */
+    public PackerSetup entryBufferSize(int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("Entry buffer size must not be negative, given: " + value);
+
+        entryBufferSize = value;
+        return this;
+    }
+
+    public PackerSetup progressTracker(ProgressTracker value)
+    {
+        progressTracker = value;
+        return this;
+    }
+
     public Packer build()
     {
         // Check whether the user requested index encryption but the feature is not supported.
@@ -80,6 +181,16 @@ public final class PackerSetup
                     FPakInfo.pakFileVersionToString(pakVersion));
         }
 
+        if (outputChannel != null && writeSignature)
+        {
+            throw new IllegalStateException("Unable to write a signature, the archive is written to a stream");
+        }
+
+        if (outputChannel == null && archivePath == null)
+        {
+            throw new IllegalStateException("Neither an archive file nor an output is given");
+        }
+
         return new Packer(this);
     }
 }
@@ -0,0 +1,180 @@
+package com.vizor.unreal.packer;
+
+import com.vizor.unreal.metrics.PakMetrics;
+import com.vizor.unreal.metrics.PakMetrics.Counter;
+import com.vizor.unreal.metrics.PakMetrics.Stage;
+import com.vizor.unreal.ue4.FAES;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static com.vizor.unreal.ue4.AlignmentTemplates.Align;
+
+/**
+ * Writes a pak index to the channel in chunks, so the whole index is never held in memory.
+ *
+ * Records are serialized into a chunk buffer, which is hashed, encrypted (if necessary) and written once full.
+ * Only whole AES blocks are flushed, an unaligned tail stays in the buffer until the next flush. The last block
+ * is padded with zeroes, the hash covers the padding just like the whole-buffer variant does.
+ */
+final class PakIndexWriter
+{
+    /**
+     * Size of a chunk, must be a multiple of the AES block size.
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Size of a chunk of an encrypted index, large enough for {@link FAES} to encrypt it in parallel.
+     */
+    private static final int ENCRYPTED_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final WritableByteChannel channel;
+    private final byte[] keyBytes;
+    private final MessageDigest sha1;
+
+    private final int chunkSize;
+    private ByteBuffer buffer;
+
+    private long bytesWritten = 0;
+    private int recordStart = -1;
+    private int recordSize = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param channel A channel to write the index to.
+     * @param keyBytes Encryption key (the writer does not clear it), null if the index should not be encrypted.
+     */
+    PakIndexWriter(WritableByteChannel channel, byte[] keyBytes)
+    {
+        this.channel = channel;
+        this.keyBytes = keyBytes;
+
+        this.chunkSize = (keyBytes != null) ? ENCRYPTED_CHUNK_SIZE : CHUNK_SIZE;
+        this.buffer = ByteBuffer.allocate(chunkSize);
+
+        try {
+            this.sha1 = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Starts a new record of exactly the given size, flushes and grows the buffer if necessary.
+     * The record must be written into the returned buffer, then ended with {@link #endRecord()}.
+     *
+     * @param size Serialized size of the record.
+     * @return A buffer to serialize the record into.
+     * @throws IOException If an I/O error occurs while flushing.
+     */
+    ByteBuffer beginRecord(int size) throws IOException
+    {
+        if (buffer.remaining() < size)
+        {
+            flush();
+
+            // Still does not fit (a huge record, e.g. an entry with lots of compression blocks)
+            if (buffer.remaining() < size)
+            {
+                final ByteBuffer grown = ByteBuffer.allocate(Align(buffer.position() + size, chunkSize));
+
+                buffer.flip();
+                grown.put(buffer);
+
+                buffer = grown;
+            }
+        }
+
+        recordStart = buffer.position();
+        recordSize = size;
+
+        return buffer;
+    }
+
+    /**
+     * Ends the current record, checks whether its size is correct.
+     */
+    void endRecord()
+    {
+        if (buffer.position() - recordStart != recordSize)
+        {
+            throw new IllegalStateException("Invalid serialize size, possible algorithm error");
+        }
+
+        recordStart = -1;
+    }
+
+    /**
+     * Pads, writes the rest of the index and finishes the hash.
+     *
+     * @param outIndexHash Index hash.
+     * @return Total number of bytes written (including padding).
+     * @throws IOException If an I/O error occurs.
+     */
+    long finish(byte[] outIndexHash) throws IOException
+    {
+        if (keyBytes != null)
+        {
+            // Add trailing zeroes if alignment has to be applied
+            final int alignedPosition = Align(buffer.position(), FAES.getBlockSize());
+
+            Arrays.fill(buffer.array(), buffer.position(), alignedPosition, (byte) 0);
+            buffer.position(alignedPosition);
+        }
+
+        flush();
+
+        try {
+            sha1.digest(outIndexHash, 0, sha1.getDigestLength());
+        }
+        catch (DigestException e) {
+            throw new IOException(e);
+        }
+
+        return bytesWritten;
+    }
+
+    private void flush() throws IOException
+    {
+        final int bytesToFlush = (keyBytes != null) ? (buffer.position() & -FAES.getBlockSize()) : buffer.position();
+        if (bytesToFlush == 0)
+            return;
+
+        final byte[] array = buffer.array();
+
+        // Hash is computed before encryption
+        sha1.update(array, 0, bytesToFlush);
+
+        if (keyBytes != null)
+        {
+            final long startTime = PakMetrics.startTimer();
+            FAES.EncryptData(array, bytesToFlush, keyBytes);
+            PakMetrics.stopTimer(Stage.PACK_ENCRYPT, startTime);
+
+            PakMetrics.add(Counter.BYTES_ENCRYPTED, bytesToFlush);
+        }
+
+        final ByteBuffer data = ByteBuffer.wrap(array, 0, bytesToFlush);
+        while (data.hasRemaining())
+        {
+            channel.write(data);
+        }
+
+        bytesWritten += bytesToFlush;
+
+        // Keep the unaligned tail
+        final int tailSize = buffer.position() - bytesToFlush;
+        System.arraycopy(array, bytesToFlush, array, 0, tailSize);
+
+        buffer.clear();
+        buffer.position(tailSize);
+    }
+}
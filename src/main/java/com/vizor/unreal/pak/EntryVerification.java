@@ -0,0 +1,23 @@
+package com.vizor.unreal.pak;
+
+/**
+ * Determines how often entry headers, stored in front of the entry data, are checked against the index.
+ */
+public enum EntryVerification
+{
+    /**
+     * Never read headers, trust the index.
+     */
+    NONE,
+
+    /**
+     * Check the header when the entry is extracted for the first time, then remember it in
+     * {@link FPakEntry#Verified}.
+     */
+    ONCE,
+
+    /**
+     * Check the header every time the entry is extracted.
+     */
+    ALWAYS
+}
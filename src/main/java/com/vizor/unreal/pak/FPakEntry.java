@@ -43,8 +43,8 @@ public class FPakEntry
     public int CompressionBlockSize;
     /** Pak entry flags. */
     public byte Flags;
-//    /** Flag is set to true when FileHeader has been checked against PakHeader. It is not serialized. */
-//    public boolean Verified;
+    /** Flag is set to true when FileHeader has been checked against PakHeader. It is not serialized. */
+    public boolean Verified;
 
     /**
      * Constructor.
@@ -68,7 +68,7 @@ public class FPakEntry
             if (CompressionMethod != ECompressionFlags.COMPRESS_None)
             {
                 SerializedSize +=
-                    /* array items */ Sizeof.sizeof(FPakCompressedBlock.class) * CompressionBlocks.length +
+                    /* array items */ FPakCompressedBlockSerializer.SIZE * CompressionBlocks.length +
                     /* array size  */ Sizeof.sizeof(int.class);
             }
         }
@@ -101,7 +101,7 @@ public class FPakEntry
         {
             if (CompressionMethod != ECompressionFlags.COMPRESS_None)
             {
-                CompressionBlocks = UE4Deserializer.Read(Ar, FPakCompressedBlock[].class);
+                CompressionBlocks = FPakCompressedBlockSerializer.ReadArray(Ar);
             }
 
             Flags = Ar.get();
@@ -126,7 +126,7 @@ public class FPakEntry
         {
             if (CompressionMethod != ECompressionFlags.COMPRESS_None)
             {
-                UE4Serializer.Write(Ar, CompressionBlocks);
+                FPakCompressedBlockSerializer.WriteArray(Ar, CompressionBlocks);
             }
 
             UE4Serializer.Write(Ar, Flags);
@@ -178,7 +178,7 @@ public class FPakEntry
         CompressionBlocks = SharedDummyCompressionBlocks;
         CompressionBlockSize = 0;
         Flags = Flag_None;
-//        Verified = false;
+        Verified = false;
 
         Arrays.fill(Hash, (byte)0);
     }
@@ -1,36 +1,40 @@
 package com.vizor.unreal.pak;
 
 import com.vizor.unreal.annotations.APIBridgeMethod;
-import com.vizor.unreal.annotations.JavaDecoratorField;
+import com.vizor.unreal.metrics.PakMetrics;
+import com.vizor.unreal.metrics.PakMetrics.Counter;
+import com.vizor.unreal.metrics.PakMetrics.Stage;
 import com.vizor.unreal.ue4.FAES;
 import com.vizor.unreal.ue4.FCoreDelegates;
 import com.vizor.unreal.ue4.FSHA1;
 import com.vizor.unreal.ue4.FString;
+import com.vizor.unreal.util.BatchExtractor;
 import com.vizor.unreal.util.UE4Deserializer;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Random;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.vizor.unreal.util.Bool.BOOL;
 import static com.vizor.unreal.util.Misc.toInt;
 
 public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
 {
-    /**
-     * Random seed used in {@link FPakFile#briefChecksumOfContent()}
-     * Used to gain entropy in checksum computation.
-     */
-    private static final long INITIAL_RANDOM_SEED = System.nanoTime();
-
     /**
      * Pak filename.
      */
@@ -52,10 +56,20 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
     private long cachedTotalSize;
 
     /**
-     * Cached file input stream, closes in {@link #close()}
+     * Path to the pak file, used to reopen the channel.
+     */
+    private final Path path;
+
+    /**
+     * The only channel of the pak file, shared by all readers. Only positional reads are used, so the channel
+     * has no (shared) position to race on. Closes in {@link #close()}.
      */
-    @JavaDecoratorField
-    public FileInputStream inputStream;
+    private volatile FileChannel channel;
+
+    /**
+     * True once the pak file is closed on purpose.
+     */
+    private volatile boolean closed = false;
 
     /**
      * True if this pak file is valid and usable.
@@ -63,18 +77,59 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
     private boolean bIsValid = false;
 
     /**
-     * Map of entries.
+     * True if the index should be mapped from a sidecar (and the sidecar written if it is missing or stale).
+     */
+    private final boolean bUseIndexSidecar;
+
+    /**
+     * How often entry headers are checked when entries are extracted.
+     */
+    private volatile EntryVerification entryVerification = EntryVerification.ONCE;
+
+    /**
+     * Filenames and entries, in index order.
      */
-    final Map<String, FPakEntry> index = new LinkedHashMap<>();
+    PakFilenameIndex index = new PakFilenameIndex(0);
+
+    /**
+     * Statistics, computed when the index is loaded.
+     */
+    private PakStats stats = null;
+
+    /**
+     * Content fingerprint, computed on the first request.
+     */
+    private volatile PakFingerprint fingerprint = null;
+
+    /**
+     * Checks chunks against the signature, null if there is no signature.
+     */
+    private volatile PakChunkVerifier chunkVerifier = null;
 
 
     public FPakFile(final Path path)
     {
+        this(path, false);
+    }
+
+    /**
+     * Opens a pak file.
+     *
+     * @param path Path to the pak file.
+     * @param useIndexSidecar If true, the index is mapped from the ".pakidx" sidecar next to the pak file, if there is
+     *                        a valid one. Otherwise the index is loaded and the sidecar is written, unless the index
+     *                        is encrypted. Failures to write the sidecar are ignored.
+     */
+    public FPakFile(final Path path, final boolean useIndexSidecar)
+    {
+        this.path = path;
+        this.bUseIndexSidecar = useIndexSidecar;
+
         try {
             pakFilename = path.toString();
-            inputStream = new FileInputStream(path.toFile());
+            channel = FileChannel.open(path, StandardOpenOption.READ);
 
-            Initialize(inputStream.getChannel());
+            Initialize();
         }
         catch (IOException ignore) {
             // Throw (maybe) wrapped into a RuntimeException.
@@ -83,16 +138,116 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
 
     // === Constructor and destructor ===
 
+    /**
+     * Closes the pak file. Synchronized with reopening the channel, so a reader reopening it
+     * concurrently can not leak a channel opened after this call.
+     */
     @Override
-    public void close() throws IOException
+    public synchronized void close() throws IOException
+    {
+        closed = true;
+
+        final FileChannel c = channel;
+        if (c != null)
+        {
+            c.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Reads a sequence of bytes, starting at the given absolute position in the pak file. Never changes any
+     * shared position, so any number of threads may read at once (this method is a valid {@link PakSource}).
+     *
+     * If a signature is set, chunks touched by the read are checked against it, see
+     * {@link #setSignature(PakSignature)}.
+     *
+     * @param dst The buffer into which bytes are to be transferred.
+     * @param position Absolute position in the pak file.
+     * @return Number of bytes read (possibly zero), or -1 if the position is beyond the end of the file.
+     * @throws IOException If an I/O error occurs, the pak file is closed or the data does not match the signature.
+     */
+    public int read(ByteBuffer dst, long position) throws IOException
+    {
+        final int dstStart = dst.position();
+        final int bytesRead = readUnverified(dst, position);
+
+        final PakChunkVerifier verifier = chunkVerifier;
+        if (verifier != null && bytesRead > 0)
+            verifier.verifyRead(dst, dstStart, position, bytesRead);
+
+        return bytesRead;
+    }
+
+    private int readUnverified(ByteBuffer dst, long position) throws IOException
+    {
+        while (true)
+        {
+            final FileChannel c = channel;
+            if (c == null)
+            {
+                throw new ClosedChannelException();
+            }
+
+            try {
+                return c.read(dst, position);
+            }
+            catch (ClosedByInterruptException e) {
+                // Interrupting a single reader closes the channel for everyone, so reopen it for the rest of them
+                reopen(c);
+                throw e;
+            }
+            catch (ClosedChannelException e) {
+                // Closed by an interrupted reader, read once again unless the pak file is closed
+                if (!reopen(c))
+                    throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads exactly {@code dst.remaining()} bytes.
+     *
+     * @param dst The buffer into which bytes are to be transferred.
+     * @param position Absolute position in the pak file.
+     * @throws IOException If an I/O error occurs or the end of file is reached.
+     */
+    private void readFully(ByteBuffer dst, long position) throws IOException
     {
-        if (inputStream != null)
+        final long startPosition = position;
+
+        while (dst.hasRemaining())
         {
-            inputStream.close();
-            inputStream = null;
+            final int bytesRead = read(dst, position);
+            if (bytesRead < 0)
+            {
+                throw new IOException("Unexpected end of pak file " + pakFilename + " at " + position +
+                        " (reading from " + startPosition + ")");
+            }
+
+            position += bytesRead;
         }
     }
 
+    /**
+     * Reopens the channel closed by an interrupted reader, unless the pak file is closed.
+     *
+     * @param closedChannel The channel found closed.
+     * @return False if the pak file is closed.
+     * @throws IOException If the pak file can not be opened.
+     */
+    private synchronized boolean reopen(FileChannel closedChannel) throws IOException
+    {
+        if (closed)
+            return false;
+
+        // Some other reader might have already reopened it
+        if (channel == closedChannel)
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        return true;
+    }
+
     private static String makeDirectoryFromPath(final String path)
     {
         final int length = path.length();
@@ -122,7 +277,7 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
         Arrays.fill(keyBytes, (byte) 0);
     }
 
-    private void Initialize(SeekableByteChannel channel) throws IOException
+    private void Initialize() throws IOException
     {
         cachedTotalSize = channel.size();
         boolean bShouldLoad = true;
@@ -146,8 +301,7 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
                     .order(ByteOrder.LITTLE_ENDIAN);
 
             // Serialize trailer and check if everything is as expected.
-            channel.position(cachedTotalSize - info.GetSerializedSize(compatibleVersion));
-            channel.read(map);
+            readFully(map, cachedTotalSize - info.GetSerializedSize(compatibleVersion));
 
             info.Deserialize((ByteBuffer) map.flip(), compatibleVersion);
 
@@ -169,7 +323,13 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
 
             if (!info.EncryptionKeyGuid.IsValid() /* || GRegisteredEncryptionKeys.HasKey(Info.EncryptionKeyGuid) */)
             {
-                LoadIndex(channel);
+                if (!(bUseIndexSidecar && MapIndexSidecar()))
+                {
+                    LoadIndex();
+
+                    if (bUseIndexSidecar)
+                        WriteIndexSidecar();
+                }
 
                 // LoadIndex should crash in case of an error, so just assume everything is ok if we got here.
                 // Except that we won't crash.
@@ -178,7 +338,7 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
         }
     }
 
-    private void LoadIndex(SeekableByteChannel channel) throws IOException
+    private void LoadIndex() throws IOException
     {
         if (cachedTotalSize < (info.IndexOffset + info.IndexSize))
         {
@@ -186,26 +346,20 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
         }
         else
         {
+            final long startTime = PakMetrics.startTimer();
+
             final ByteBuffer indexData = ByteBuffer.allocate(toInt(info.IndexSize)).order(ByteOrder.LITTLE_ENDIAN);
 
-            final int actualReadBytes = channel.position(info.IndexOffset).read(indexData);
-            if (actualReadBytes != info.IndexSize)
-            {
-                throw new IOException(String.join(System.lineSeparator(),
-                        "Can not read that much index data from pak file channel",
-                        "   index offset: " + info.IndexOffset,
-                        "   index size  : " + info.IndexSize,
-                        "   total bytes : " + channel.size(),
-                        "   actual read : " + actualReadBytes
-                ));
-            }
+            readFully(indexData, info.IndexOffset);
 
             indexData.position(0);
+            PakMetrics.add(Counter.BYTES_READ, info.IndexSize);
 
             // Decrypt in-place if necessary
             if (BOOL(info.bEncryptedIndex))
             {
                 decryptData(indexData.array(), (int) info.IndexSize);
+                PakMetrics.add(Counter.BYTES_DECRYPTED, info.IndexSize);
             }
 
             // Check SHA1 value.
@@ -237,6 +391,9 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
 
             mountPoint = makeDirectoryFromPath(mountPoint);
 
+            // Never trust the number of entries, each entry takes more than a byte anyway
+            final PakFilenameIndex loadedIndex = new PakFilenameIndex(Math.max(0, Math.min(numEntries, indexData.remaining())));
+
             for (int entryIndex = 0; entryIndex < numEntries; entryIndex++)
             {
                 // Deserialize from memory.
@@ -248,8 +405,61 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
                 entry.Deserialize(indexData, info.Version);
 
                 // Put the entry
-                index.put(filename, entry);
+                loadedIndex.put(filename, entry);
             }
+
+            loadedIndex.compact();
+
+            stats = PakStats.of(loadedIndex);
+            index = loadedIndex;
+
+            PakMetrics.increment(Counter.INDEXES_LOADED);
+            PakMetrics.stopTimer(Stage.INDEX_LOAD, startTime);
+        }
+    }
+
+    /**
+     * Maps the index from the sidecar.
+     *
+     * @return True if the index was mapped, false if there is no valid sidecar.
+     */
+    private boolean MapIndexSidecar()
+    {
+        final long startTime = PakMetrics.startTimer();
+
+        final PakIndexSidecar.Contents contents;
+        try {
+            contents = PakIndexSidecar.read(path, info, cachedTotalSize);
+        }
+        catch (IOException | RuntimeException e) {
+            // Missing or broken, load the index as usual
+            return false;
+        }
+
+        if (contents == null)
+            return false;
+
+        mountPoint = contents.mountPoint;
+        stats = contents.stats;
+        index = contents.index;
+
+        PakMetrics.increment(Counter.INDEXES_LOADED);
+        PakMetrics.increment(Counter.INDEX_SIDECARS_MAPPED);
+        PakMetrics.stopTimer(Stage.INDEX_LOAD, startTime);
+
+        return true;
+    }
+
+    private void WriteIndexSidecar()
+    {
+        if (BOOL(info.bEncryptedIndex))
+            return;
+
+        try {
+            PakIndexSidecar.write(path, info, cachedTotalSize, mountPoint, stats, index);
+        }
+        catch (IOException ignore) {
+            // Next time the index is loaded as usual
         }
     }
 
@@ -261,6 +471,46 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
         return new FPakIterator(this);
     }
 
+    /**
+     * Creates a spliterator over all entries, in index order. It is sized and splits evenly.
+     *
+     * @return A new spliterator.
+     */
+    @Override
+    public Spliterator<PakIteratorEntry> spliterator()
+    {
+        assertValid();
+
+        return new FPakSpliterator(this);
+    }
+
+    /**
+     * Creates a sequential stream of all entries, in index order.
+     *
+     * @return A new stream.
+     */
+    public Stream<PakIteratorEntry> stream()
+    {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Creates a parallel stream of all entries, the index is split evenly between workers.
+     *
+     * @return A new stream.
+     */
+    public Stream<PakIteratorEntry> parallelStream()
+    {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Gets all entries, sorted. Nothing is cached, each call creates and sorts new iterator entries.
+     *
+     * @param comparator Entry comparator.
+     * @return A new array of new iterator entries. Their pak entries are shared with the index, so they should not
+     * be modified.
+     */
     public final PakIteratorEntry[] getSortedEntries(final Comparator<PakIteratorEntry> comparator)
     {
         assertValid();
@@ -268,95 +518,217 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
         final PakIteratorEntry[] entries = new PakIteratorEntry[index.size()];
 
         // Put into array
-        int n = 0;
-        for (final Map.Entry<String, FPakEntry> e : index.entrySet())
-            entries[n++] = new PakIteratorEntry(e, this);
-
-        Arrays.sort(entries, comparator);
+        for (int i = 0; i < entries.length; i++)
+            entries[i] = newIteratorEntry(i);
 
+        Arrays.parallelSort(entries, comparator);
         return entries;
     }
 
     /**
-     * Calculates a SHA1 checksum based on XORed checksum of each entry.
-     * This method is very fast and stable and it does not even tries to unpack any data.
-     * <p>
-     * This method is guaranteed to produce stable results every time it ran on identical files.
+     * Finds an entry by its filename (relative to the mount point).
      *
-     * @return 20 bytes of brief SHA1 checksum of the file.
+     * @param filename Filename, like the one of {@link PakIteratorEntry#Filename}.
+     * @return An entry or null if there is no such file in the pak file.
      */
-    @SuppressWarnings({"unused", "WeakerAccess"})
-    @APIBridgeMethod
-    public final byte[] briefChecksumOfContent()
+    public final PakIteratorEntry findEntry(final String filename)
     {
         assertValid();
 
-        // Perform direct allocation to speed-up bulk operations
-        // Otherwise, java will fall into byte-merging and will make our bulk operations senseless
-        final ByteBuffer itemBuffer = ByteBuffer.allocateDirect(FSHA1.GetDigestLength()).order(ByteOrder.LITTLE_ENDIAN);
-        final ByteBuffer mergeBuffer = ByteBuffer.allocateDirect(FSHA1.GetDigestLength()).order(ByteOrder.LITTLE_ENDIAN);
+        final int file = index.find(filename);
+        return (file >= 0) ? newIteratorEntry(file) : null;
+    }
 
-        // Salt generator, generating
-        final Random saltGenerator = new Random(INITIAL_RANDOM_SEED);
+    /**
+     * Lists all entries, which filenames start with the given prefix, in index order.
+     * Directories are matched as a whole, so listing a directory (like "Game/Content/") is cheap.
+     *
+     * @param prefix Filename prefix, an empty prefix lists all entries.
+     * @return A list of entries.
+     */
+    public final List<PakIteratorEntry> listEntries(final String prefix)
+    {
+        assertValid();
 
-        for (final Map.Entry<String, FPakEntry> entry : index.entrySet())
-        {
-            final FPakEntry pakEntry = entry.getValue();
+        final List<Integer> files = new ArrayList<>();
+        index.forEachWithPrefix(prefix, files::add);
+
+        // Restore index order
+        Collections.sort(files);
+
+        final List<PakIteratorEntry> entries = new ArrayList<>(files.size());
+        for (final int file : files)
+            entries.add(newIteratorEntry(file));
+
+        return entries;
+    }
+
+    /**
+     * Finds all entries, which filenames (relative to the mount point) match the filter, in index order.
+     * A {@link PakGlob} is matched against the directory structure, so directories which can not match are
+     * skipped as a whole. Any other filter is tested against every filename, e.g. a regular expression
+     * ({@code Pattern.compile(regex).asPredicate()}) or a path matcher ({@code f -> matcher.matches(Paths.get(f))}).
+     *
+     * @param filter Filename filter.
+     * @return A list of matching entries.
+     */
+    public final List<PakIteratorEntry> findEntries(final Predicate<String> filter)
+    {
+        assertValid();
 
-            // Put hash
-            itemBuffer.position(0);
-            itemBuffer.put(pakEntry.Hash);
+        final List<PakIteratorEntry> entries = new ArrayList<>();
 
-            // XOR data
-            itemBuffer.position(0);
-            mergeBuffer.position(0);
+        if (filter instanceof PakGlob)
+        {
+            final List<Integer> files = new ArrayList<>();
+            index.forEachMatching((PakGlob) filter, files::add);
 
-            // Perform 3 bulk operations to xor 8 + 8 + 4 = 20 bytes of SHA1
-            final long l0 = mergeBuffer.getLong() ^ itemBuffer.getLong() ^ saltGenerator.nextLong();
-            final long l1 = mergeBuffer.getLong() ^ itemBuffer.getLong() ^ saltGenerator.nextLong();
-            final int i0 = mergeBuffer.getInt() ^ itemBuffer.getInt() ^ saltGenerator.nextInt();
+            // Restore index order
+            Collections.sort(files);
 
-            // Put back into mergeBuffer
-            mergeBuffer.position(0);
-            mergeBuffer.putLong(l0).putLong(l1).putInt(i0);
+            for (final int file : files)
+                entries.add(newIteratorEntry(file));
+        }
+        else
+        {
+            // Entries are only created for matching filenames
+            for (int file = 0; file < index.size(); file++)
+            {
+                if (filter.test(index.getFilename(file)))
+                    entries.add(newIteratorEntry(file));
+            }
         }
 
-        // Get result bytes from our DirectByteBuffer
-        mergeBuffer.position(0);
-        final byte[] result = new byte[mergeBuffer.capacity()];
-        mergeBuffer.get(result);
+        return entries;
+    }
 
-        return result;
+    /**
+     * Extracts all entries, which filenames match the filter, see {@link #findEntries(Predicate)}.
+     * Entries are extracted by a {@link BatchExtractor}, in order of their offsets.
+     *
+     * @param filter Filename filter.
+     * @param rootPath Root directory to extract to.
+     * @return Number of extracted entries.
+     * @throws IOException If any of entries failed to extract, the first failure is thrown.
+     */
+    public final int extract(final Predicate<String> filter, final Path rootPath) throws IOException
+    {
+        final List<PakIteratorEntry> entries = findEntries(filter);
+        BatchExtractor.extract(entries, rootPath);
+
+        return entries.size();
     }
 
+    PakIteratorEntry newIteratorEntry(int file)
+    {
+        return new PakIteratorEntry(index.getFilename(file), index.getEntry(file), this);
+    }
+
+    /**
+     * Calculates a SHA1 checksum of the content, the root hash of {@link #getFingerprint()}.
+     * This method is fast and it does not even tries to unpack any data.
+     * <p>
+     * This method is guaranteed to produce stable results every time it ran on identical files.
+     *
+     * @return 20 bytes of brief SHA1 checksum of the file.
+     */
+    @SuppressWarnings({"unused", "WeakerAccess"})
     @APIBridgeMethod
-    public final long getPayloadSize()
+    public final byte[] briefChecksumOfContent()
+    {
+        return getFingerprint().getRootHash();
+    }
+
+    /**
+     * Gets a deterministic fingerprint of the content: a Merkle tree of entry hashes over the directory structure.
+     * It is computed (in parallel) on the first call, hashes of all directories are kept, so the fingerprints
+     * of two pak files are compared in O(changed directories), see {@link PakFingerprint#diff(PakFingerprint)}.
+     *
+     * @return Content fingerprint.
+     */
+    public final PakFingerprint getFingerprint()
     {
         assertValid();
 
-        long size = 0;
-        for (final PakIteratorEntry e : this)
+        PakFingerprint result = fingerprint;
+        if (result == null)
         {
-            final FPakEntry pakEntry = e.Entry;
-            size += pakEntry.Size;
+            synchronized (this)
+            {
+                result = fingerprint;
+                if (result == null)
+                {
+                    result = PakFingerprint.of(index);
+                    fingerprint = result;
+                }
+            }
         }
 
-        return size;
+        return result;
     }
 
-    @APIBridgeMethod
-    public final long getPayloadUncompressedSize()
+    /**
+     * Sets a signature of the pak file, see {@link PakSignature#read(Path)}. Once it is set, every chunk is checked
+     * the first time any read touches it, a read fails with an {@link IOException} if the chunk does not match.
+     *
+     * @param signature Signature of this pak file, null to stop checking.
+     * @throws IllegalArgumentException If the signature has a different number of chunks.
+     */
+    public final void setSignature(PakSignature signature)
     {
         assertValid();
+        chunkVerifier = (signature != null) ?
+                new PakChunkVerifier(signature, this::readUnverified, cachedTotalSize, pakFilename) : null;
+    }
 
-        long size = 0;
-        for (final PakIteratorEntry e : this)
-        {
-            final FPakEntry pakEntry = e.Entry;
-            size += pakEntry.UncompressedSize;
-        }
+    /**
+     * Gets the signature, which chunks are checked against.
+     *
+     * @return Signature or null if it is not set.
+     */
+    public final PakSignature getSignature()
+    {
+        final PakChunkVerifier verifier = chunkVerifier;
+        return (verifier != null) ? verifier.getSignature() : null;
+    }
+
+    /**
+     * Checks all chunks not checked yet against the signature, in parallel.
+     *
+     * @return Indices of chunks, which do not match the signature, in ascending order (empty if all do match).
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalStateException If there is no signature.
+     */
+    public final int[] verifyChunks() throws IOException
+    {
+        final PakChunkVerifier verifier = chunkVerifier;
+        if (verifier == null)
+            throw new IllegalStateException("No signature is set for " + pakFilename);
+
+        return verifier.verifyAll();
+    }
 
-        return size;
+    @APIBridgeMethod
+    public final long getPayloadSize()
+    {
+        return getStats().getTotalSize();
+    }
+
+    @APIBridgeMethod
+    public final long getPayloadUncompressedSize()
+    {
+        return getStats().getTotalUncompressedSize();
+    }
+
+    /**
+     * Gets statistics of the pak file, computed once when the index was loaded.
+     *
+     * @return Immutable statistics.
+     */
+    public final PakStats getStats()
+    {
+        assertValid();
+        return stats;
     }
 
     /**
@@ -382,6 +754,26 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
         return info;
     }
 
+    /**
+     * Gets how often entry headers are checked against the index when entries are extracted.
+     *
+     * @return Verification level, {@link EntryVerification#ONCE} by default.
+     */
+    public EntryVerification getEntryVerification()
+    {
+        return entryVerification;
+    }
+
+    /**
+     * Sets how often entry headers are checked against the index when entries are extracted.
+     *
+     * @param entryVerification Verification level.
+     */
+    public void setEntryVerification(EntryVerification entryVerification)
+    {
+        this.entryVerification = Objects.requireNonNull(entryVerification);
+    }
+
     public void setMountPoint(String mountPoint)
     {
         assertValid();
@@ -413,19 +805,23 @@ public class FPakFile implements Iterable<PakIteratorEntry>, AutoCloseable
 
     private void assertValid()
     {
-        if (isValid())
+        if (!isValid())
         {
             throw new UnsupportedOperationException("Unable to perform operation, file is not valid");
         }
     }
 
 
+    /**
+     * Hashes the index hash of the trailer, which is cheap. The content fingerprint is computed only on an explicit
+     * {@link #getFingerprint()} call.
+     */
     @Override
     public int hashCode()
     {
         if (isValid())
         {
-            return Arrays.hashCode(briefChecksumOfContent());
+            return Arrays.hashCode(info.IndexHash);
         }
 
         return 0;
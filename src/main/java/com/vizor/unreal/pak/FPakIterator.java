@@ -1,35 +1,34 @@
 package com.vizor.unreal.pak;
 
 import java.util.Iterator;
-import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
 public final class FPakIterator implements Iterator<PakIteratorEntry>
 {
-    private final Iterator<Map.Entry<String, FPakEntry>> iterator;
+    private final PakFilenameIndex index;
     private final FPakFile pakFile;
 
+    private int file = 0;
+
     FPakIterator(FPakFile pakFile)
     {
-        final Map<String, FPakEntry> entries = Objects.requireNonNull(pakFile.index, "Index must be initialized");
-
+        this.index = Objects.requireNonNull(pakFile.index, "Index must be initialized");
         this.pakFile = pakFile;
-        this.iterator = entries.entrySet().iterator();
     }
 
     @Override
     public boolean hasNext()
     {
-        Objects.requireNonNull(iterator, "Iterator is null, unable to proceed");
-
-        return iterator.hasNext();
+        return file < index.size();
     }
 
     @Override
     public final PakIteratorEntry next()
     {
-        Objects.requireNonNull(iterator, "Iterator is null, unable to proceed");
+        if (!hasNext())
+            throw new NoSuchElementException();
 
-        return new PakIteratorEntry(iterator.next(), pakFile);
+        return pakFile.newIteratorEntry(file++);
     }
 }
@@ -0,0 +1,71 @@
+package com.vizor.unreal.pak;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a range of file ordinals of a pak file, in index order. Splits in halves, so parallel streams
+ * over a pak file divide the work evenly.
+ */
+final class FPakSpliterator implements Spliterator<PakIteratorEntry>
+{
+    private final FPakFile pakFile;
+
+    private int file;
+    private final int end;
+
+    FPakSpliterator(FPakFile pakFile)
+    {
+        this(pakFile, 0, Objects.requireNonNull(pakFile.index, "Index must be initialized").size());
+    }
+
+    private FPakSpliterator(FPakFile pakFile, int file, int end)
+    {
+        this.pakFile = pakFile;
+        this.file = file;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super PakIteratorEntry> action)
+    {
+        if (file >= end)
+            return false;
+
+        action.accept(pakFile.newIteratorEntry(file++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super PakIteratorEntry> action)
+    {
+        for (; file < end; file++)
+            action.accept(pakFile.newIteratorEntry(file));
+    }
+
+    @Override
+    public Spliterator<PakIteratorEntry> trySplit()
+    {
+        final int mid = (file + end) >>> 1;
+        if (mid <= file)
+            return null;
+
+        final Spliterator<PakIteratorEntry> prefix = new FPakSpliterator(pakFile, file, mid);
+        file = mid;
+
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return end - file;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+}
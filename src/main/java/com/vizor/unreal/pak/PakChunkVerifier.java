@@ -0,0 +1,151 @@
+package com.vizor.unreal.pak;
+
+import com.vizor.unreal.metrics.PakMetrics;
+import com.vizor.unreal.metrics.PakMetrics.Counter;
+import com.vizor.unreal.util.PakSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+import static com.vizor.unreal.pak.PakSignature.CHUNK_SIZE;
+
+/**
+ * Checks chunks of a pak file against its signature. Each chunk is checked once, when it is touched by a read
+ * for the first time (or by {@link #verifyAll()}), chunks which match are remembered in a bit set.
+ */
+final class PakChunkVerifier
+{
+    private final PakSignature signature;
+
+    /**
+     * Reads bytes without verification.
+     */
+    private final PakSource source;
+
+    private final long pakSize;
+    private final String pakFilename;
+
+    /**
+     * Chunks already verified, a bit per chunk.
+     */
+    private final AtomicLongArray verified;
+
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(CHUNK_SIZE));
+
+    PakChunkVerifier(PakSignature signature, PakSource source, long pakSize, String pakFilename)
+    {
+        if (signature.getNumChunks() != PakSignature.getNumChunks(pakSize))
+        {
+            throw new IllegalArgumentException("Signature of " + signature.getNumChunks() + " chunks does not match " +
+                    pakFilename + " of " + pakSize + " bytes");
+        }
+
+        this.signature = signature;
+        this.source = source;
+        this.pakSize = pakSize;
+        this.pakFilename = pakFilename;
+        this.verified = new AtomicLongArray((signature.getNumChunks() + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    PakSignature getSignature()
+    {
+        return signature;
+    }
+
+    /**
+     * Verifies all chunks touched by a read. Chunks fully covered by the read are hashed right in the destination
+     * buffer, partially covered ones are read once again as a whole.
+     *
+     * @param dst Destination buffer of the read.
+     * @param dstStart Position of the destination buffer before the read.
+     * @param position Absolute position of the read in the pak file.
+     * @param length Number of bytes read.
+     * @throws IOException If a chunk does not match the signature.
+     */
+    void verifyRead(ByteBuffer dst, int dstStart, long position, int length) throws IOException
+    {
+        final long end = position + length;
+
+        for (int chunk = (int) (position / CHUNK_SIZE); (long) chunk * CHUNK_SIZE < end; chunk++)
+        {
+            if (isVerified(chunk))
+                continue;
+
+            final long chunkStart = (long) chunk * CHUNK_SIZE;
+            final long chunkEnd = Math.min(chunkStart + CHUNK_SIZE, pakSize);
+
+            final ByteBuffer data;
+            if (chunkStart >= position && chunkEnd <= end)
+            {
+                data = dst.duplicate();
+                data.limit(dstStart + (int) (chunkEnd - position));
+                data.position(dstStart + (int) (chunkStart - position));
+            }
+            else
+            {
+                data = PakSignature.readChunk(source, pakSize, chunk, buffers.get());
+            }
+
+            if (!check(chunk, data))
+            {
+                throw new IOException("Chunk " + chunk + " (at " + chunkStart + ") of pak file " + pakFilename +
+                        " does not match its signature");
+            }
+        }
+    }
+
+    /**
+     * Verifies all chunks not verified yet, in parallel (in the common fork-join pool).
+     *
+     * @return Indices of chunks, which do not match the signature, in ascending order.
+     * @throws IOException If an I/O error occurs.
+     */
+    int[] verifyAll() throws IOException
+    {
+        try {
+            return IntStream.range(0, signature.getNumChunks()).parallel().filter(chunk -> {
+                try {
+                    return !isVerified(chunk) &&
+                            !check(chunk, PakSignature.readChunk(source, pakSize, chunk, buffers.get()));
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toArray();
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private boolean check(int chunk, ByteBuffer data)
+    {
+        if (PakSignature.hashChunk(data) != signature.getChunkHash(chunk))
+            return false;
+
+        setVerified(chunk);
+        PakMetrics.increment(Counter.CHUNKS_VERIFIED);
+
+        return true;
+    }
+
+    private boolean isVerified(int chunk)
+    {
+        return (verified.get(chunk / Long.SIZE) & (1L << chunk)) != 0;
+    }
+
+    private void setVerified(int chunk)
+    {
+        final int word = chunk / Long.SIZE;
+        final long bit = 1L << chunk;
+
+        long bits;
+        while (((bits = verified.get(word)) & bit) == 0 && !verified.compareAndSet(word, bits, bits | bit))
+        {
+            // Some other chunk of the same word was verified concurrently, try again
+        }
+    }
+}
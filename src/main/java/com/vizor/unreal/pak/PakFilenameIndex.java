@@ -0,0 +1,937 @@
+package com.vizor.unreal.pak;
+
+import com.vizor.unreal.util.StringPool;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Filename dictionary of a pak file, stored as a directory trie.
+ *
+ * Every directory is stored once (as a name in its parent directory, names are deduplicated), every file is stored
+ * as a leaf name in its directory. Leaf names are packed into a single byte array (one byte per character, names
+ * with characters beyond Latin-1 are kept as strings). Full filenames are only built when asked for.
+ * Files are identified by ordinals, which follow the order they were added in (the index order).
+ *
+ * All data is kept in parallel arrays, lookups by name use open addressing hash tables of ordinals.
+ * The index is built by a single thread, after {@link #compact()} it is read-only and may be shared.
+ *
+ * A compacted index can be written in a fixed layout (see {@link #write(ByteBuffer)}) and read back without any
+ * parsing, arrays are bulk copied and entries are decoded on the first access.
+ */
+final class PakFilenameIndex
+{
+    private static final char SEPARATOR = '/';
+
+    static final int ROOT = 0;
+
+    /**
+     * Size of an entry in the fixed layout, see {@link #writeEntry(ByteBuffer, FPakEntry, int)}.
+     */
+    private static final int ENTRY_RECORD_SIZE = 64;
+
+    /**
+     * Size of a compression block in the fixed layout.
+     */
+    private static final int BLOCK_RECORD_SIZE = 16;
+
+    // Directories
+    private int numDirs = 0;
+    private int[] dirParent = new int[16];
+    private String[] dirName = new String[16];
+    private int[] dirFirstChild = new int[16];
+    private int[] dirLastChild = new int[16];
+    private int[] dirNextSibling = new int[16];
+    private int[] dirFirstFile = new int[16];
+    private int[] dirLastFile = new int[16];
+    private int[] dirTable = new int[32];
+
+    /**
+     * Full paths of directories (with a trailing separator), built lazily.
+     */
+    private String[] dirPath = new String[16];
+
+    // Files
+    private int numFiles = 0;
+    private int[] fileDir;
+    private int[] fileNameStart;
+    private int[] fileNameLength;
+    private FPakEntry[] fileEntry;
+    private int[] fileNextInDir;
+    private int[] fileTable;
+
+    /**
+     * Leaf names of files, one byte per character.
+     */
+    private byte[] names;
+    private int namesSize = 0;
+
+    /**
+     * Leaf names which do not fit a byte per character, referenced by negative starts (~index).
+     */
+    private String[] wideNames = new String[0];
+    private int numWideNames = 0;
+
+    /**
+     * Deduplicates directory names, only needed while the index is being built.
+     */
+    private StringPool namePool = new StringPool();
+
+    /**
+     * Entries of an index read from the fixed layout, decoded on the first access. Null for a built index.
+     */
+    private AtomicReferenceArray<FPakEntry> decodedEntries;
+    private ByteBuffer entryRecords;
+    private ByteBuffer blockRecords;
+
+    PakFilenameIndex(int expectedNumFiles)
+    {
+        final int capacity = Math.max(16, expectedNumFiles);
+
+        fileDir = new int[capacity];
+        fileNameStart = new int[capacity];
+        fileNameLength = new int[capacity];
+        names = new byte[capacity * 16];
+        fileEntry = new FPakEntry[capacity];
+        fileNextInDir = new int[capacity];
+        fileTable = new int[tableCapacity(capacity)];
+
+        addDir(-1, "");
+    }
+
+    /**
+     * Creates an empty index to be filled by {@link #read(ByteBuffer)}.
+     */
+    private PakFilenameIndex()
+    {
+        namePool = null;
+        dirLastChild = null;
+        dirLastFile = null;
+    }
+
+    /**
+     * Adds a file, if the file already exists its entry is replaced (the ordinal stays the same).
+     *
+     * @param filename Full filename.
+     * @param entry Pak entry.
+     */
+    void put(String filename, FPakEntry entry)
+    {
+        if (decodedEntries != null)
+            throw new IllegalStateException("Unable to modify an index read from the fixed layout");
+
+        final int separator = filename.lastIndexOf(SEPARATOR);
+
+        // Find or create all the directories
+        int dir = ROOT;
+        for (int start = 0; start <= separator; )
+        {
+            final int end = filename.indexOf(SEPARATOR, start);
+
+            int child = findDir(dir, filename, start, end);
+            if (child < 0)
+                child = addDir(dir, namePool.get(filename, start, end));
+
+            dir = child;
+            start = end + 1;
+        }
+
+        final int existing = findFile(dir, filename, separator + 1, filename.length());
+        if (existing >= 0)
+        {
+            fileEntry[existing] = entry;
+        }
+        else
+        {
+            addFile(dir, filename, separator + 1, filename.length(), entry);
+        }
+    }
+
+    /**
+     * Trims all the arrays and drops build-only data, no more files should be added.
+     */
+    void compact()
+    {
+        namePool = null;
+
+        dirParent = Arrays.copyOf(dirParent, numDirs);
+        dirName = Arrays.copyOf(dirName, numDirs);
+        dirFirstChild = Arrays.copyOf(dirFirstChild, numDirs);
+        dirLastChild = Arrays.copyOf(dirLastChild, numDirs);
+        dirNextSibling = Arrays.copyOf(dirNextSibling, numDirs);
+        dirFirstFile = Arrays.copyOf(dirFirstFile, numDirs);
+        dirLastFile = Arrays.copyOf(dirLastFile, numDirs);
+        dirPath = Arrays.copyOf(dirPath, numDirs);
+
+        fileDir = Arrays.copyOf(fileDir, numFiles);
+        fileNameStart = Arrays.copyOf(fileNameStart, numFiles);
+        fileNameLength = Arrays.copyOf(fileNameLength, numFiles);
+        fileEntry = Arrays.copyOf(fileEntry, numFiles);
+        fileNextInDir = Arrays.copyOf(fileNextInDir, numFiles);
+
+        names = Arrays.copyOf(names, namesSize);
+        wideNames = Arrays.copyOf(wideNames, numWideNames);
+    }
+
+    int size()
+    {
+        return numFiles;
+    }
+
+    int getNumDirectories()
+    {
+        return numDirs;
+    }
+
+    /**
+     * Builds a full filename of the file.
+     *
+     * @param file File ordinal.
+     * @return Full filename.
+     */
+    String getFilename(int file)
+    {
+        final String directory = getDirectoryPath(fileDir[file]);
+        final int start = fileNameStart[file];
+
+        if (start < 0)
+        {
+            return directory.concat(wideNames[~start]);
+        }
+
+        // Build at once, without an intermediate leaf name string
+        final char[] chars = new char[directory.length() + fileNameLength[file]];
+        directory.getChars(0, directory.length(), chars, 0);
+
+        for (int i = 0; i < fileNameLength[file]; i++)
+            chars[directory.length() + i] = (char) (names[start + i] & 0xFF);
+
+        return new String(chars);
+    }
+
+    FPakEntry getEntry(int file)
+    {
+        if (decodedEntries == null)
+            return fileEntry[file];
+
+        final FPakEntry entry = decodedEntries.get(file);
+        if (entry != null)
+            return entry;
+
+        // Concurrent readers might decode the same entry, only the first one is kept
+        decodedEntries.compareAndSet(file, null, readEntry(file));
+        return decodedEntries.get(file);
+    }
+
+    /**
+     * Finds a file by its full filename.
+     *
+     * @param filename Full filename.
+     * @return File ordinal or -1 if there is no such file.
+     */
+    int find(String filename)
+    {
+        final int separator = filename.lastIndexOf(SEPARATOR);
+
+        int dir = ROOT;
+        for (int start = 0; start <= separator; )
+        {
+            final int end = filename.indexOf(SEPARATOR, start);
+
+            dir = findDir(dir, filename, start, end);
+            if (dir < 0)
+                return -1;
+
+            start = end + 1;
+        }
+
+        return findFile(dir, filename, separator + 1, filename.length());
+    }
+
+    /**
+     * Visits all the files, which filenames start with the given prefix. Whole directories not matching the prefix
+     * are skipped, files are visited in no particular order.
+     *
+     * @param prefix Filename prefix (e.g. "Game/Content/" or "Game/Content/Ma").
+     * @param visitor File ordinal visitor.
+     */
+    void forEachWithPrefix(String prefix, IntConsumer visitor)
+    {
+        final int separator = prefix.lastIndexOf(SEPARATOR);
+
+        // Find the deepest directory, fully covered by the prefix
+        int dir = ROOT;
+        for (int start = 0; start <= separator; )
+        {
+            final int end = prefix.indexOf(SEPARATOR, start);
+
+            dir = findDir(dir, prefix, start, end);
+            if (dir < 0)
+                return;
+
+            start = end + 1;
+        }
+
+        // The rest of the prefix is a prefix of a child name
+        final String namePrefix = prefix.substring(separator + 1);
+
+        for (int file = dirFirstFile[dir]; file >= 0; file = fileNextInDir[file])
+        {
+            if (leafStartsWith(file, namePrefix))
+                visitor.accept(file);
+        }
+
+        for (int child = dirFirstChild[dir]; child >= 0; child = dirNextSibling[child])
+        {
+            if (dirName[child].startsWith(namePrefix))
+                forEachInDirectory(child, visitor);
+        }
+    }
+
+    /**
+     * Visits all the files, which filenames match the glob. Directories are matched segment by segment, so whole
+     * subtrees which can not match are skipped, files are visited in no particular order.
+     *
+     * @param glob Compiled glob.
+     * @param visitor File ordinal visitor.
+     */
+    void forEachMatching(PakGlob glob, IntConsumer visitor)
+    {
+        forEachMatching(ROOT, glob.initialStates(), glob, visitor);
+    }
+
+    private void forEachMatching(int dir, long states, PakGlob glob, IntConsumer visitor)
+    {
+        if (glob.mayMatchFiles(states))
+        {
+            for (int file = dirFirstFile[dir]; file >= 0; file = fileNextInDir[file])
+            {
+                if (glob.matchesFile(states, getLeafName(file)))
+                    visitor.accept(file);
+            }
+        }
+
+        // A literal segment is looked up, instead of checking every child
+        final String onlyChild = glob.getOnlyDirectory(states);
+        if (onlyChild != null)
+        {
+            final int child = findDir(dir, onlyChild, 0, onlyChild.length());
+            if (child >= 0)
+                forEachMatching(child, glob.enterDirectory(states, onlyChild), glob, visitor);
+
+            return;
+        }
+
+        for (int child = dirFirstChild[dir]; child >= 0; child = dirNextSibling[child])
+        {
+            final long childStates = glob.enterDirectory(states, dirName[child]);
+            if (childStates != 0)
+                forEachMatching(child, childStates, glob, visitor);
+        }
+    }
+
+    /**
+     * Finds a directory by its path.
+     *
+     * @param path Directory path, with or without a trailing separator (an empty path is the root).
+     * @return Directory ordinal or -1 if there is no such directory.
+     */
+    int findDirectory(String path)
+    {
+        int dir = ROOT;
+        for (int start = 0; start < path.length(); )
+        {
+            int end = path.indexOf(SEPARATOR, start);
+            if (end < 0)
+                end = path.length();
+
+            dir = findDir(dir, path, start, end);
+            if (dir < 0)
+                return -1;
+
+            start = end + 1;
+        }
+
+        return dir;
+    }
+
+    // === Directory tree, children are linked in no particular order, the end of a list is -1 ===
+
+    String getDirectoryName(int dir)
+    {
+        return dirName[dir];
+    }
+
+    int getFirstChildDirectory(int dir)
+    {
+        return dirFirstChild[dir];
+    }
+
+    int getNextSiblingDirectory(int dir)
+    {
+        return dirNextSibling[dir];
+    }
+
+    int getFirstFile(int dir)
+    {
+        return dirFirstFile[dir];
+    }
+
+    int getNextFile(int file)
+    {
+        return fileNextInDir[file];
+    }
+
+    /**
+     * Visits all the files of the directory and all its subdirectories.
+     */
+    private void forEachInDirectory(int dir, IntConsumer visitor)
+    {
+        for (int file = dirFirstFile[dir]; file >= 0; file = fileNextInDir[file])
+            visitor.accept(file);
+
+        for (int child = dirFirstChild[dir]; child >= 0; child = dirNextSibling[child])
+            forEachInDirectory(child, visitor);
+    }
+
+    /**
+     * Computes the size of the fixed layout of this (compacted) index.
+     *
+     * @return Size in bytes.
+     */
+    long getWrittenSize()
+    {
+        long numBlocks = 0;
+        for (int file = 0; file < numFiles; file++)
+            numBlocks += getEntry(file).CompressionBlocks.length;
+
+        long size = 8 * Integer.BYTES;
+
+        // Integer arrays
+        size += align(Integer.BYTES * (4L * numDirs + dirTable.length));
+        size += align(Integer.BYTES * (4L * numFiles + fileTable.length));
+
+        size += align(namesSize);
+        size += align(getStringsSize(dirName, numDirs) + getStringsSize(wideNames, numWideNames));
+
+        size += (long) ENTRY_RECORD_SIZE * numFiles;
+        size += BLOCK_RECORD_SIZE * numBlocks;
+
+        return size;
+    }
+
+    /**
+     * Writes this (compacted) index in the fixed layout. All the sections are aligned to 8 bytes.
+     *
+     * @param b Little endian buffer with at least {@link #getWrittenSize()} bytes remaining.
+     */
+    void write(ByteBuffer b)
+    {
+        int numBlocks = 0;
+        for (int file = 0; file < numFiles; file++)
+            numBlocks += getEntry(file).CompressionBlocks.length;
+
+        b.putInt(numDirs).putInt(numFiles).putInt(namesSize).putInt(numWideNames);
+        b.putInt(dirTable.length).putInt(fileTable.length).putInt(numBlocks).putInt(0);
+
+        writeInts(b, dirParent, numDirs);
+        writeInts(b, dirFirstChild, numDirs);
+        writeInts(b, dirNextSibling, numDirs);
+        writeInts(b, dirFirstFile, numDirs);
+        writeInts(b, dirTable, dirTable.length);
+        pad(b);
+
+        writeInts(b, fileDir, numFiles);
+        writeInts(b, fileNameStart, numFiles);
+        writeInts(b, fileNameLength, numFiles);
+        writeInts(b, fileNextInDir, numFiles);
+        writeInts(b, fileTable, fileTable.length);
+        pad(b);
+
+        b.put(names, 0, namesSize);
+        pad(b);
+
+        for (int dir = 0; dir < numDirs; dir++)
+            writeString(b, dirName[dir]);
+
+        for (int i = 0; i < numWideNames; i++)
+            writeString(b, wideNames[i]);
+
+        pad(b);
+
+        int firstBlock = 0;
+        for (int file = 0; file < numFiles; file++)
+        {
+            final FPakEntry entry = getEntry(file);
+
+            writeEntry(b, entry, firstBlock);
+            firstBlock += entry.CompressionBlocks.length;
+        }
+
+        for (int file = 0; file < numFiles; file++)
+        {
+            for (final FPakCompressedBlock block : getEntry(file).CompressionBlocks)
+                b.putLong(block.CompressedStart).putLong(block.CompressedEnd);
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(ByteBuffer)}. Entries are not decoded here, the buffer is kept
+     * and entries are decoded from it on the first access, so it must not be modified afterwards.
+     *
+     * @param b Little endian buffer, positioned at the beginning of the index.
+     * @return A compacted, read-only index.
+     */
+    static PakFilenameIndex read(ByteBuffer b)
+    {
+        final PakFilenameIndex index = new PakFilenameIndex();
+
+        index.numDirs = checkCount(b.getInt());
+        index.numFiles = checkCount(b.getInt());
+        index.namesSize = checkCount(b.getInt());
+        index.numWideNames = checkCount(b.getInt());
+
+        final int dirTableLength = checkCount(b.getInt());
+        final int fileTableLength = checkCount(b.getInt());
+        final int numBlocks = checkCount(b.getInt());
+        b.getInt();
+
+        index.dirParent = readInts(b, index.numDirs);
+        index.dirFirstChild = readInts(b, index.numDirs);
+        index.dirNextSibling = readInts(b, index.numDirs);
+        index.dirFirstFile = readInts(b, index.numDirs);
+        index.dirTable = readInts(b, dirTableLength);
+        skipPadding(b);
+
+        index.fileDir = readInts(b, index.numFiles);
+        index.fileNameStart = readInts(b, index.numFiles);
+        index.fileNameLength = readInts(b, index.numFiles);
+        index.fileNextInDir = readInts(b, index.numFiles);
+        index.fileTable = readInts(b, fileTableLength);
+        skipPadding(b);
+
+        index.names = new byte[index.namesSize];
+        b.get(index.names);
+        skipPadding(b);
+
+        index.dirName = new String[index.numDirs];
+        for (int dir = 0; dir < index.numDirs; dir++)
+            index.dirName[dir] = readString(b);
+
+        index.wideNames = new String[index.numWideNames];
+        for (int i = 0; i < index.numWideNames; i++)
+            index.wideNames[i] = readString(b);
+
+        skipPadding(b);
+
+        index.dirPath = new String[index.numDirs];
+
+        index.entryRecords = slice(b, ENTRY_RECORD_SIZE * index.numFiles);
+        index.blockRecords = slice(b, BLOCK_RECORD_SIZE * numBlocks);
+        index.decodedEntries = new AtomicReferenceArray<>(index.numFiles);
+
+        return index;
+    }
+
+    /**
+     * Writes an entry record: Offset, Size, UncompressedSize (8 bytes each), CompressionMethod, CompressionBlockSize,
+     * the first compression block and the number of them (4 bytes each), Hash (20 bytes), Flags and 3 bytes of padding.
+     */
+    private static void writeEntry(ByteBuffer b, FPakEntry entry, int firstBlock)
+    {
+        b.putLong(entry.Offset).putLong(entry.Size).putLong(entry.UncompressedSize);
+        b.putInt(entry.CompressionMethod).putInt(entry.CompressionBlockSize);
+        b.putInt(firstBlock).putInt(entry.CompressionBlocks.length);
+        b.put(entry.Hash);
+        b.put(entry.Flags).put((byte) 0).putShort((short) 0);
+    }
+
+    private FPakEntry readEntry(int file)
+    {
+        final int record = file * ENTRY_RECORD_SIZE;
+
+        // Absolute reads only, the buffer is shared by all readers
+        final FPakEntry entry = new FPakEntry();
+        entry.Offset = entryRecords.getLong(record);
+        entry.Size = entryRecords.getLong(record + 8);
+        entry.UncompressedSize = entryRecords.getLong(record + 16);
+        entry.CompressionMethod = entryRecords.getInt(record + 24);
+        entry.CompressionBlockSize = entryRecords.getInt(record + 28);
+
+        final int firstBlock = entryRecords.getInt(record + 32);
+        final int numBlocks = entryRecords.getInt(record + 36);
+
+        for (int i = 0; i < entry.Hash.length; i++)
+            entry.Hash[i] = entryRecords.get(record + 40 + i);
+
+        entry.Flags = entryRecords.get(record + 60);
+
+        if (numBlocks > 0)
+        {
+            entry.CompressionBlocks = new FPakCompressedBlock[numBlocks];
+            for (int i = 0; i < numBlocks; i++)
+            {
+                final int block = (firstBlock + i) * BLOCK_RECORD_SIZE;
+                entry.CompressionBlocks[i] = new FPakCompressedBlock(blockRecords.getLong(block),
+                        blockRecords.getLong(block + 8));
+            }
+        }
+
+        return entry;
+    }
+
+    static void writeString(ByteBuffer b, String s)
+    {
+        b.putInt(s.length());
+        for (int i = 0; i < s.length(); i++)
+            b.putChar(s.charAt(i));
+    }
+
+    static String readString(ByteBuffer b)
+    {
+        final char[] chars = new char[checkCount(b.getInt())];
+        b.asCharBuffer().get(chars);
+        b.position(b.position() + Character.BYTES * chars.length);
+
+        return new String(chars);
+    }
+
+    static long getStringSize(String s)
+    {
+        return Integer.BYTES + Character.BYTES * (long) s.length();
+    }
+
+    private static long getStringsSize(String[] strings, int count)
+    {
+        long size = 0;
+        for (int i = 0; i < count; i++)
+            size += getStringSize(strings[i]);
+
+        return size;
+    }
+
+    private static void writeInts(ByteBuffer b, int[] values, int count)
+    {
+        b.asIntBuffer().put(values, 0, count);
+        b.position(b.position() + Integer.BYTES * count);
+    }
+
+    private static int[] readInts(ByteBuffer b, int count)
+    {
+        final int[] values = new int[count];
+        b.asIntBuffer().get(values);
+        b.position(b.position() + Integer.BYTES * count);
+
+        return values;
+    }
+
+    private static ByteBuffer slice(ByteBuffer b, int size)
+    {
+        final ByteBuffer slice = b.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(size);
+
+        b.position(b.position() + size);
+        return slice;
+    }
+
+    static long align(long size)
+    {
+        return (size + 7) & ~7L;
+    }
+
+    static void pad(ByteBuffer b)
+    {
+        while ((b.position() & 7) != 0)
+            b.put((byte) 0);
+    }
+
+    static void skipPadding(ByteBuffer b)
+    {
+        b.position((int) align(b.position()));
+    }
+
+    private static int checkCount(int count)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("Negative count in a fixed layout index: " + count);
+
+        return count;
+    }
+
+    private String getDirectoryPath(int dir)
+    {
+        String path = dirPath[dir];
+        if (path == null)
+        {
+            // Strings are immutable, so a racy initialization is harmless
+            path = (dir == ROOT) ? "" : getDirectoryPath(dirParent[dir]) + dirName[dir] + SEPARATOR;
+            dirPath[dir] = path;
+        }
+
+        return path;
+    }
+
+    private int findDir(int parent, String s, int start, int end)
+    {
+        final int hash = hash(parent, s, start, end);
+        final int mask = dirTable.length - 1;
+
+        for (int slot = hash & mask; dirTable[slot] != 0; slot = (slot + 1) & mask)
+        {
+            final int dir = dirTable[slot] - 1;
+            if (dirParent[dir] == parent && regionEquals(dirName[dir], s, start, end))
+                return dir;
+        }
+
+        return -1;
+    }
+
+    private int findFile(int dir, String s, int start, int end)
+    {
+        final int hash = hash(dir, s, start, end);
+        final int mask = fileTable.length - 1;
+
+        for (int slot = hash & mask; fileTable[slot] != 0; slot = (slot + 1) & mask)
+        {
+            final int file = fileTable[slot] - 1;
+            if (fileDir[file] == dir && leafEquals(file, s, start, end))
+                return file;
+        }
+
+        return -1;
+    }
+
+    private int addDir(int parent, String name)
+    {
+        if (numDirs == dirParent.length)
+        {
+            final int capacity = numDirs * 2;
+
+            dirParent = Arrays.copyOf(dirParent, capacity);
+            dirName = Arrays.copyOf(dirName, capacity);
+            dirFirstChild = Arrays.copyOf(dirFirstChild, capacity);
+            dirLastChild = Arrays.copyOf(dirLastChild, capacity);
+            dirNextSibling = Arrays.copyOf(dirNextSibling, capacity);
+            dirFirstFile = Arrays.copyOf(dirFirstFile, capacity);
+            dirLastFile = Arrays.copyOf(dirLastFile, capacity);
+            dirPath = Arrays.copyOf(dirPath, capacity);
+        }
+
+        final int dir = numDirs++;
+
+        dirParent[dir] = parent;
+        dirName[dir] = name;
+        dirFirstChild[dir] = -1;
+        dirLastChild[dir] = -1;
+        dirNextSibling[dir] = -1;
+        dirFirstFile[dir] = -1;
+        dirLastFile[dir] = -1;
+
+        if (parent >= 0)
+        {
+            // Keep children in order of appearance
+            if (dirLastChild[parent] < 0)
+                dirFirstChild[parent] = dir;
+            else
+                dirNextSibling[dirLastChild[parent]] = dir;
+
+            dirLastChild[parent] = dir;
+
+            if (tableCapacity(numDirs) > dirTable.length)
+                dirTable = rehashDirs(tableCapacity(numDirs));
+            else
+                insert(dirTable, hash(parent, name, 0, name.length()), dir);
+        }
+
+        return dir;
+    }
+
+    private void addFile(int dir, String s, int start, int end, FPakEntry entry)
+    {
+        if (numFiles == fileDir.length)
+        {
+            final int capacity = numFiles * 2;
+
+            fileDir = Arrays.copyOf(fileDir, capacity);
+            fileNameStart = Arrays.copyOf(fileNameStart, capacity);
+            fileNameLength = Arrays.copyOf(fileNameLength, capacity);
+            fileEntry = Arrays.copyOf(fileEntry, capacity);
+            fileNextInDir = Arrays.copyOf(fileNextInDir, capacity);
+        }
+
+        final int file = numFiles++;
+
+        fileDir[file] = dir;
+        fileEntry[file] = entry;
+        fileNextInDir[file] = -1;
+
+        addLeafName(file, s, start, end);
+
+        // Keep files in index order
+        if (dirLastFile[dir] < 0)
+            dirFirstFile[dir] = file;
+        else
+            fileNextInDir[dirLastFile[dir]] = file;
+
+        dirLastFile[dir] = file;
+
+        if (tableCapacity(numFiles) > fileTable.length)
+            fileTable = rehashFiles(tableCapacity(numFiles));
+        else
+            insert(fileTable, hash(dir, s, start, end), file);
+    }
+
+    private void addLeafName(int file, String s, int start, int end)
+    {
+        final int length = end - start;
+
+        boolean bIsNarrow = true;
+        for (int i = start; bIsNarrow && i < end; i++)
+            bIsNarrow = s.charAt(i) <= 0xFF;
+
+        if (!bIsNarrow)
+        {
+            if (numWideNames == wideNames.length)
+                wideNames = Arrays.copyOf(wideNames, Math.max(4, numWideNames * 2));
+
+            wideNames[numWideNames] = s.substring(start, end);
+
+            fileNameStart[file] = ~(numWideNames++);
+            fileNameLength[file] = length;
+            return;
+        }
+
+        if (names.length - namesSize < length)
+        {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesSize + length));
+        }
+
+        for (int i = 0; i < length; i++)
+            names[namesSize + i] = (byte) s.charAt(start + i);
+
+        fileNameStart[file] = namesSize;
+        fileNameLength[file] = length;
+
+        namesSize += length;
+    }
+
+    String getLeafName(int file)
+    {
+        final int start = fileNameStart[file];
+        if (start < 0)
+            return wideNames[~start];
+
+        final char[] chars = new char[fileNameLength[file]];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) (names[start + i] & 0xFF);
+
+        return new String(chars);
+    }
+
+    private char leafCharAt(int file, int i)
+    {
+        final int start = fileNameStart[file];
+        return (start < 0) ? wideNames[~start].charAt(i) : (char) (names[start + i] & 0xFF);
+    }
+
+    private boolean leafEquals(int file, String s, int start, int end)
+    {
+        if (fileNameLength[file] != end - start)
+            return false;
+
+        for (int i = start; i < end; i++)
+        {
+            if (leafCharAt(file, i - start) != s.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    private boolean leafStartsWith(int file, String prefix)
+    {
+        if (fileNameLength[file] < prefix.length())
+            return false;
+
+        for (int i = 0; i < prefix.length(); i++)
+        {
+            if (leafCharAt(file, i) != prefix.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    private int leafHash(int file)
+    {
+        int h = fileDir[file];
+        for (int i = 0; i < fileNameLength[file]; i++)
+            h = 31 * h + leafCharAt(file, i);
+
+        return mix(h);
+    }
+
+    private int[] rehashDirs(int capacity)
+    {
+        final int[] table = new int[capacity];
+
+        // The root is never looked up
+        for (int dir = 1; dir < numDirs; dir++)
+            insert(table, hash(dirParent[dir], dirName[dir], 0, dirName[dir].length()), dir);
+
+        return table;
+    }
+
+    private int[] rehashFiles(int capacity)
+    {
+        final int[] table = new int[capacity];
+
+        for (int file = 0; file < numFiles; file++)
+            insert(table, leafHash(file), file);
+
+        return table;
+    }
+
+    private static void insert(int[] table, int hash, int ordinal)
+    {
+        final int mask = table.length - 1;
+
+        int slot = hash & mask;
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+
+        // Zero means an empty slot
+        table[slot] = ordinal + 1;
+    }
+
+    /**
+     * Computes a table capacity keeping the load factor under 1/2.
+     */
+    private static int tableCapacity(int numElements)
+    {
+        return Integer.highestOneBit(Math.max(16, numElements) * 2 - 1) * 2;
+    }
+
+    private static int hash(int parent, String s, int start, int end)
+    {
+        int h = parent;
+        for (int i = start; i < end; i++)
+            h = 31 * h + s.charAt(i);
+
+        return mix(h);
+    }
+
+    private static int mix(int h)
+    {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionEquals(String name, String s, int start, int end)
+    {
+        return name.length() == end - start && s.regionMatches(start, name, 0, name.length());
+    }
+}
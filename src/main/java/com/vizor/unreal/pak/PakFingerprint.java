@@ -0,0 +1,351 @@
+package com.vizor.unreal.pak;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Deterministic content fingerprint of a pak file, a Merkle tree over its directory structure.
+ *
+ * A file hash covers the entry hash and the uncompressed size, a directory hash covers names, kinds and hashes
+ * of all its children (sorted by name, so the index order does not matter). Directory hashes do not depend on
+ * the name or location of the directory, so equal subtrees have equal hashes wherever they are.
+ * Paths are relative to the mount point, and entry hashes cover the data as stored, so the same files packed
+ * with a different compression or encryption have different fingerprints.
+ *
+ * Hashes of all directories are computed at once (subdirectories in parallel) and kept, so two pak files or two
+ * subtrees are compared by descending only into directories which differ, see {@link #diff(PakFingerprint)}.
+ */
+public final class PakFingerprint
+{
+    private static final byte TYPE_FILE = 0;
+    private static final byte TYPE_DIRECTORY = 1;
+
+    private static final char SEPARATOR = '/';
+
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    /**
+     * A difference between two fingerprints.
+     */
+    public static final class Change
+    {
+        public enum Kind
+        {
+            ADDED,
+            REMOVED,
+            MODIFIED
+        }
+
+        private final String path;
+        private final Kind kind;
+        private final boolean directory;
+
+        Change(String path, Kind kind, boolean directory)
+        {
+            this.path = path;
+            this.kind = kind;
+            this.directory = directory;
+        }
+
+        /**
+         * Gets a path of the changed file or directory (directories end with a separator), relative to the root
+         * of the comparison.
+         *
+         * @return Path.
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        public Kind getKind()
+        {
+            return kind;
+        }
+
+        /**
+         * Checks whether a whole directory was added or removed. Modified directories are never reported,
+         * their changed children are.
+         *
+         * @return True if the path is a directory.
+         */
+        public boolean isDirectory()
+        {
+            return directory;
+        }
+
+        @Override
+        public String toString()
+        {
+            return kind + " " + path;
+        }
+    }
+
+    /**
+     * A child of a directory.
+     */
+    private static final class Child
+    {
+        final String name;
+        final boolean directory;
+        final int ordinal;
+
+        Child(String name, boolean directory, int ordinal)
+        {
+            this.name = name;
+            this.directory = directory;
+            this.ordinal = ordinal;
+        }
+    }
+
+    private static final Comparator<Child> CHILD_ORDER = Comparator.comparing((Child c) -> c.name)
+            .thenComparing(c -> c.directory);
+
+    private final PakFilenameIndex index;
+
+    /**
+     * Hashes of directories, by directory ordinal.
+     */
+    private final byte[][] directoryHashes;
+
+    private PakFingerprint(PakFilenameIndex index)
+    {
+        this.index = index;
+        this.directoryHashes = new byte[index.getNumDirectories()][];
+    }
+
+    /**
+     * Computes hashes of all directories of the (compacted) index, in the common fork-join pool.
+     *
+     * @param index Filename index.
+     * @return A fingerprint.
+     */
+    static PakFingerprint of(PakFilenameIndex index)
+    {
+        final PakFingerprint fingerprint = new PakFingerprint(index);
+        ForkJoinPool.commonPool().invoke(fingerprint.new DirectoryTask(PakFilenameIndex.ROOT));
+
+        return fingerprint;
+    }
+
+    /**
+     * Gets the hash of the whole pak file.
+     *
+     * @return 20 bytes of SHA-1.
+     */
+    public byte[] getRootHash()
+    {
+        return directoryHashes[PakFilenameIndex.ROOT].clone();
+    }
+
+    /**
+     * Gets the hash of a directory.
+     *
+     * @param directory Directory path, like "Game/Content/" (an empty path is the root).
+     * @return 20 bytes of SHA-1, or null if there is no such directory.
+     */
+    public byte[] getHash(String directory)
+    {
+        final int dir = index.findDirectory(directory);
+        return (dir >= 0) ? directoryHashes[dir].clone() : null;
+    }
+
+    /**
+     * Compares the whole pak files.
+     *
+     * @param other Fingerprint of the other (newer) pak file.
+     * @return Changes from this pak file to the other one, sorted by path.
+     */
+    public List<Change> diff(PakFingerprint other)
+    {
+        return diff(other, "");
+    }
+
+    /**
+     * Compares the same subtree of two pak files. Only directories with different hashes are visited.
+     *
+     * @param other Fingerprint of the other (newer) pak file.
+     * @param directory Directory path, like "Game/Content/" (an empty path is the root).
+     * @return Changes from this subtree to the other one, sorted by path (relative to the directory).
+     */
+    public List<Change> diff(PakFingerprint other, String directory)
+    {
+        final int thisDir = index.findDirectory(directory);
+        final int otherDir = other.index.findDirectory(directory);
+
+        final List<Change> changes = new ArrayList<>();
+
+        if (thisDir < 0 && otherDir >= 0)
+            changes.add(new Change("", Change.Kind.ADDED, true));
+        else if (thisDir >= 0 && otherDir < 0)
+            changes.add(new Change("", Change.Kind.REMOVED, true));
+        else if (thisDir >= 0)
+            diff(other, thisDir, otherDir, "", changes);
+
+        return changes;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        return Arrays.equals(directoryHashes[PakFilenameIndex.ROOT],
+                ((PakFingerprint) o).directoryHashes[PakFilenameIndex.ROOT]);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(directoryHashes[PakFilenameIndex.ROOT]);
+    }
+
+    private void diff(PakFingerprint other, int thisDir, int otherDir, String path, List<Change> changes)
+    {
+        if (Arrays.equals(directoryHashes[thisDir], other.directoryHashes[otherDir]))
+            return;
+
+        final Child[] theseChildren = getSortedChildren(thisDir);
+        final Child[] otherChildren = other.getSortedChildren(otherDir);
+
+        int i = 0;
+        int j = 0;
+        while (i < theseChildren.length || j < otherChildren.length)
+        {
+            final int order = (i == theseChildren.length) ? 1 : (j == otherChildren.length) ? -1 :
+                    CHILD_ORDER.compare(theseChildren[i], otherChildren[j]);
+
+            if (order < 0)
+            {
+                final Child removed = theseChildren[i++];
+                changes.add(new Change(childPath(path, removed), Change.Kind.REMOVED, removed.directory));
+            }
+            else if (order > 0)
+            {
+                final Child added = otherChildren[j++];
+                changes.add(new Change(childPath(path, added), Change.Kind.ADDED, added.directory));
+            }
+            else
+            {
+                final Child thisChild = theseChildren[i++];
+                final Child otherChild = otherChildren[j++];
+
+                if (thisChild.directory)
+                {
+                    diff(other, thisChild.ordinal, otherChild.ordinal, childPath(path, thisChild), changes);
+                }
+                else if (!Arrays.equals(getFileHash(thisChild.ordinal), other.getFileHash(otherChild.ordinal)))
+                {
+                    changes.add(new Change(childPath(path, thisChild), Change.Kind.MODIFIED, false));
+                }
+            }
+        }
+    }
+
+    private static String childPath(String path, Child child)
+    {
+        return child.directory ? path + child.name + SEPARATOR : path + child.name;
+    }
+
+    private Child[] getSortedChildren(int dir)
+    {
+        final List<Child> children = new ArrayList<>();
+
+        for (int child = index.getFirstChildDirectory(dir); child >= 0; child = index.getNextSiblingDirectory(child))
+            children.add(new Child(index.getDirectoryName(child), true, child));
+
+        for (int file = index.getFirstFile(dir); file >= 0; file = index.getNextFile(file))
+            children.add(new Child(index.getLeafName(file), false, file));
+
+        final Child[] sorted = children.toArray(new Child[0]);
+        Arrays.sort(sorted, CHILD_ORDER);
+
+        return sorted;
+    }
+
+    private byte[] getFileHash(int file)
+    {
+        final FPakEntry entry = index.getEntry(file);
+
+        final MessageDigest sha1 = SHA1.get();
+        sha1.update(entry.Hash);
+        sha1.update(ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, entry.UncompressedSize));
+
+        return sha1.digest();
+    }
+
+    /**
+     * Computes the hash of a directory, after hashes of all its subdirectories (which are computed in parallel).
+     */
+    private final class DirectoryTask extends RecursiveAction
+    {
+        private final int dir;
+
+        DirectoryTask(int dir)
+        {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute()
+        {
+            final Child[] children = getSortedChildren(dir);
+
+            final List<DirectoryTask> subtasks = new ArrayList<>();
+            for (final Child child : children)
+            {
+                if (child.directory)
+                    subtasks.add(new DirectoryTask(child.ordinal));
+            }
+
+            invokeAll(subtasks);
+
+            final byte[][] hashes = new byte[children.length][];
+            for (int i = 0; i < children.length; i++)
+            {
+                final Child child = children[i];
+                hashes[i] = child.directory ? Objects.requireNonNull(directoryHashes[child.ordinal]) :
+                        getFileHash(child.ordinal);
+            }
+
+            final MessageDigest sha1 = SHA1.get();
+            final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int i = 0; i < children.length; i++)
+            {
+                final byte[] name = children[i].name.getBytes(StandardCharsets.UTF_8);
+
+                sha1.update(children[i].directory ? TYPE_DIRECTORY : TYPE_FILE);
+
+                length.putInt(0, name.length);
+                sha1.update(length.array());
+                sha1.update(name);
+
+                sha1.update(hashes[i]);
+            }
+
+            directoryHashes[dir] = sha1.digest();
+        }
+    }
+}
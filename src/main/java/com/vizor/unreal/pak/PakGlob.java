@@ -0,0 +1,284 @@
+package com.vizor.unreal.pak;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled glob pattern over pak filenames (relative to the mount point, '/' separated).
+ *
+ * Syntax, within a single path segment: {@code *} matches any number of characters, {@code ?} matches a single
+ * character, {@code [abc]} and {@code [a-z]} match a character class ({@code [!abc]} negates it), {@code {a,b}}
+ * matches any of the alternatives. A whole segment {@code **} matches any number of directories (including none),
+ * a trailing {@code **} matches all files of all subdirectories. Neither wildcards nor alternatives ever cross
+ * a separator.
+ *
+ * Unlike a {@link java.nio.file.PathMatcher}, a glob is matched against the directory trie of a pak file segment
+ * by segment, so whole subtrees which can not match are skipped (see {@link FPakFile#findEntries(Predicate)}).
+ */
+public final class PakGlob implements Predicate<String>
+{
+    private static final char SEPARATOR = '/';
+
+    /**
+     * States are kept in a bit mask, one bit per segment.
+     */
+    private static final int MAX_SEGMENTS = Long.SIZE - 1;
+
+    private static final class Segment
+    {
+        /**
+         * The segment itself if it has no wildcards, null otherwise.
+         */
+        final String literal;
+        final Pattern regex;
+        final boolean anyDirectories;
+
+        Segment(String literal, Pattern regex, boolean anyDirectories)
+        {
+            this.literal = literal;
+            this.regex = regex;
+            this.anyDirectories = anyDirectories;
+        }
+
+        boolean matches(String name)
+        {
+            return (literal != null) ? literal.equals(name) : regex.matcher(name).matches();
+        }
+    }
+
+    private final String pattern;
+    private final Segment[] segments;
+
+    private PakGlob(String pattern, Segment[] segments)
+    {
+        this.pattern = pattern;
+        this.segments = segments;
+    }
+
+    /**
+     * Compiles a glob.
+     *
+     * @param glob Glob pattern, e.g. "Game/Content/Maps/**" or "**&#47;*.{uasset,uexp}".
+     * @return A compiled glob.
+     * @throws IllegalArgumentException If the pattern is invalid.
+     */
+    public static PakGlob compile(String glob)
+    {
+        final String[] parts = glob.split(String.valueOf(SEPARATOR), -1);
+        if (parts.length > MAX_SEGMENTS)
+            throw new IllegalArgumentException("Too many segments in glob \"" + glob + "\", at most " + MAX_SEGMENTS);
+
+        final Segment[] segments = new Segment[parts.length];
+        for (int i = 0; i < parts.length; i++)
+        {
+            final String part = parts[i];
+            if (part.isEmpty())
+                throw new IllegalArgumentException("Empty segment in glob \"" + glob + "\"");
+
+            if (part.equals("**"))
+                segments[i] = new Segment(null, null, true);
+            else if (isLiteral(part))
+                segments[i] = new Segment(part, null, false);
+            else
+                segments[i] = new Segment(null, Pattern.compile(toRegex(part, glob)), false);
+        }
+
+        return new PakGlob(glob, segments);
+    }
+
+    /**
+     * Matches a full filename.
+     *
+     * @param filename Filename relative to the mount point.
+     * @return True if the filename matches.
+     */
+    @Override
+    public boolean test(String filename)
+    {
+        long states = initialStates();
+
+        int start = 0;
+        for (int end = filename.indexOf(SEPARATOR); end >= 0; end = filename.indexOf(SEPARATOR, start))
+        {
+            states = enterDirectory(states, filename.substring(start, end));
+            if (states == 0)
+                return false;
+
+            start = end + 1;
+        }
+
+        return matchesFile(states, filename.substring(start));
+    }
+
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    @Override
+    public String toString()
+    {
+        return pattern;
+    }
+
+    // === Matching segment by segment, states are bit masks of segments to match next ===
+
+    long initialStates()
+    {
+        return closure(1L);
+    }
+
+    /**
+     * Moves into a directory.
+     *
+     * @param states Current states.
+     * @param name Directory name.
+     * @return States inside the directory, zero if nothing inside the directory can match.
+     */
+    long enterDirectory(long states, String name)
+    {
+        long next = 0;
+
+        for (long s = states; s != 0; s &= s - 1)
+        {
+            final int i = Long.numberOfTrailingZeros(s);
+            final Segment segment = segments[i];
+
+            if (segment.anyDirectories)
+                next |= 1L << i;
+            else if (i < segments.length - 1 && segment.matches(name))
+                next |= 1L << (i + 1);
+        }
+
+        return closure(next);
+    }
+
+    /**
+     * Checks whether a file might match in a directory with the given states at all.
+     */
+    boolean mayMatchFiles(long states)
+    {
+        return (states & (1L << (segments.length - 1))) != 0;
+    }
+
+    /**
+     * Matches a file.
+     *
+     * @param states States of the directory of the file.
+     * @param name Leaf name of the file.
+     * @return True if the file matches.
+     */
+    boolean matchesFile(long states, String name)
+    {
+        if (!mayMatchFiles(states))
+            return false;
+
+        final Segment last = segments[segments.length - 1];
+        return last.anyDirectories || last.matches(name);
+    }
+
+    /**
+     * Gets the only directory name, which can be entered with the given states, if there is one.
+     *
+     * @param states Current states.
+     * @return A directory name, or null if several (or any) directories might match.
+     */
+    String getOnlyDirectory(long states)
+    {
+        if (Long.bitCount(states) != 1)
+            return null;
+
+        final int i = Long.numberOfTrailingZeros(states);
+        return (i < segments.length - 1) ? segments[i].literal : null;
+    }
+
+    /**
+     * Adds states reachable without entering a directory: a "**" segment may match no directories at all.
+     */
+    private long closure(long states)
+    {
+        for (int i = 0; i < segments.length - 1; i++)
+        {
+            if ((states & (1L << i)) != 0 && segments[i].anyDirectories)
+                states |= 1L << (i + 1);
+        }
+
+        return states;
+    }
+
+    private static boolean isLiteral(String part)
+    {
+        for (int i = 0; i < part.length(); i++)
+        {
+            final char c = part.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{' || c == '\\')
+                return false;
+        }
+
+        return true;
+    }
+
+    private static String toRegex(String part, String glob)
+    {
+        final StringBuilder regex = new StringBuilder();
+
+        boolean bInGroup = false;
+        for (int i = 0; i < part.length(); i++)
+        {
+            final char c = part.charAt(i);
+            switch (c)
+            {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append('.');
+                    break;
+                case '\\':
+                    if (++i == part.length())
+                        throw new IllegalArgumentException("Dangling escape in glob \"" + glob + "\"");
+
+                    regex.append(Pattern.quote(String.valueOf(part.charAt(i))));
+                    break;
+                case '[':
+                {
+                    final int end = part.indexOf(']', i + 2);
+                    if (end < 0)
+                        throw new IllegalArgumentException("Unclosed character class in glob \"" + glob + "\"");
+
+                    String set = part.substring(i + 1, end);
+                    if (set.charAt(0) == '!')
+                        set = '^' + set.substring(1);
+
+                    regex.append('[').append(set.replace("[", "\\[").replace("&&", "\\&\\&")).append(']');
+                    i = end;
+                    break;
+                }
+                case '{':
+                    if (bInGroup)
+                        throw new IllegalArgumentException("Nested groups are not supported in glob \"" + glob + "\"");
+
+                    bInGroup = true;
+                    regex.append("(?:");
+                    break;
+                case '}':
+                    if (!bInGroup)
+                        throw new IllegalArgumentException("Unbalanced '}' in glob \"" + glob + "\"");
+
+                    bInGroup = false;
+                    regex.append(')');
+                    break;
+                case ',':
+                    regex.append(bInGroup ? "|" : ",");
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        if (bInGroup)
+            throw new IllegalArgumentException("Unclosed group in glob \"" + glob + "\"");
+
+        return regex.toString();
+    }
+}
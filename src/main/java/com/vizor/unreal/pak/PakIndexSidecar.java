@@ -0,0 +1,211 @@
+package com.vizor.unreal.pak;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * A sidecar file (".pakidx" next to the pak file), which keeps the index of the pak file already parsed.
+ * Opening a pak file with a valid sidecar maps the sidecar instead of reading, decrypting, hashing and parsing
+ * the index.
+ *
+ * A sidecar is only valid for the very pak file it was written for: the pak size, modification time and index hash
+ * are checked on each open, a stale sidecar is ignored. The body is checked against the CRC32 in the header, so a
+ * corrupt sidecar is ignored too (the index is trusted as is once mapped). Sidecars are never written for encrypted
+ * indexes, since they would keep the filenames unencrypted.
+ *
+ * Layout (little endian): the header (see {@link #HEADER_SIZE}), the mount point, statistics of the pak file
+ * (see {@link PakStats}) and the index in the fixed layout of {@link PakFilenameIndex#write(ByteBuffer)}.
+ */
+final class PakIndexSidecar
+{
+    static final String EXTENSION = ".pakidx";
+
+    /**
+     * "PIDX" in little endian.
+     */
+    private static final int MAGIC = 0x58444950;
+
+    private static final int VERSION = 3;
+
+    /**
+     * Magic, version, pak version, CRC32 of everything after the header (4 bytes each), pak size, pak modification time (milliseconds),
+     * index offset, index size, sidecar size (8 bytes each), index hash (20 bytes) and 4 bytes of padding.
+     */
+    private static final int HEADER_SIZE = 80;
+
+    /**
+     * An index read from a sidecar.
+     */
+    static final class Contents
+    {
+        final String mountPoint;
+        final PakStats stats;
+        final PakFilenameIndex index;
+
+        private Contents(String mountPoint, PakStats stats, PakFilenameIndex index)
+        {
+            this.mountPoint = mountPoint;
+            this.stats = stats;
+            this.index = index;
+        }
+    }
+
+    private PakIndexSidecar()
+    {
+    }
+
+    /**
+     * Gets a path of the sidecar of a pak file.
+     *
+     * @param pakPath Path to the pak file.
+     * @return Path to the sidecar, which might not exist.
+     */
+    static Path getPath(Path pakPath)
+    {
+        return pakPath.resolveSibling(pakPath.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Maps the sidecar of a pak file, if it matches the pak file.
+     *
+     * @param pakPath Path to the pak file.
+     * @param info Trailer of the pak file.
+     * @param pakSize Size of the pak file.
+     * @return Contents of the sidecar, or null if the sidecar is stale, corrupt or has a different format.
+     * @throws IOException If the sidecar can not be read, e.g. if it does not exist.
+     */
+    static Contents read(Path pakPath, FPakInfo info, long pakSize) throws IOException
+    {
+        final long pakTime = Files.getLastModifiedTime(pakPath).toMillis();
+
+        final ByteBuffer map;
+        try (final FileChannel channel = FileChannel.open(getPath(pakPath), StandardOpenOption.READ))
+        {
+            final long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+                return null;
+
+            // The mapping stays valid when the channel is closed
+            map = channel.map(READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (map.getInt() != MAGIC || map.getInt() != VERSION || map.getInt() != info.Version)
+            return null;
+
+        final int bodyCrc = map.getInt();
+
+        if (map.getLong() != pakSize || map.getLong() != pakTime ||
+            map.getLong() != info.IndexOffset || map.getLong() != info.IndexSize || map.getLong() != map.capacity())
+            return null;
+
+        final byte[] indexHash = new byte[info.IndexHash.length];
+        map.get(indexHash);
+
+        if (!Arrays.equals(indexHash, info.IndexHash))
+            return null;
+
+        map.position(HEADER_SIZE);
+
+        if (hashBody(map) != bodyCrc)
+            return null;
+
+        final String mountPoint = PakFilenameIndex.readString(map);
+        PakFilenameIndex.skipPadding(map);
+
+        final PakStats stats = PakStats.read(map);
+
+        return new Contents(mountPoint, stats, PakFilenameIndex.read(map));
+    }
+
+    /**
+     * Writes the sidecar of a pak file. The sidecar is written to a temporary file first and then moved, so readers
+     * never see a partially written one.
+     *
+     * @param pakPath Path to the pak file.
+     * @param info Trailer of the pak file.
+     * @param pakSize Size of the pak file.
+     * @param mountPoint Mount point, as it was read from the index.
+     * @param stats Statistics of the pak file.
+     * @param index Compacted index of the pak file.
+     * @throws IOException If the sidecar can not be written.
+     */
+    static void write(Path pakPath, FPakInfo info, long pakSize, String mountPoint, PakStats stats,
+                      PakFilenameIndex index) throws IOException
+    {
+        if (info.bEncryptedIndex != 0)
+            throw new IOException("Sidecars are not written for encrypted indexes");
+
+        final long pakTime = Files.getLastModifiedTime(pakPath).toMillis();
+
+        final long size = HEADER_SIZE + PakFilenameIndex.align(PakFilenameIndex.getStringSize(mountPoint)) +
+                stats.getWrittenSize() + index.getWrittenSize();
+
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Index of " + pakPath + " is too large for a sidecar: " + size + " bytes");
+
+        final ByteBuffer b = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+
+        // The body CRC is written once the body is
+        b.putInt(MAGIC).putInt(VERSION).putInt(info.Version).putInt(0);
+        b.putLong(pakSize).putLong(pakTime).putLong(info.IndexOffset).putLong(info.IndexSize).putLong(size);
+        b.put(info.IndexHash);
+        PakFilenameIndex.pad(b);
+
+        PakFilenameIndex.writeString(b, mountPoint);
+        PakFilenameIndex.pad(b);
+
+        stats.write(b);
+        index.write(b);
+        b.flip();
+
+        b.position(HEADER_SIZE);
+        b.putInt(3 * Integer.BYTES, hashBody(b));
+        b.position(0);
+
+        final Path sidecarPath = getPath(pakPath);
+        final Path tempPath = Files.createTempFile(sidecarPath.toAbsolutePath().getParent(),
+                sidecarPath.getFileName().toString(), ".tmp");
+
+        try
+        {
+            try (final FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE))
+            {
+                while (b.hasRemaining())
+                    channel.write(b);
+            }
+
+            try {
+                Files.move(tempPath, sidecarPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, sidecarPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Computes a CRC32 of the remaining bytes, does not change the position of the buffer.
+     */
+    private static int hashBody(ByteBuffer b)
+    {
+        final CRC32 crc = new CRC32();
+        crc.update(b.duplicate());
+
+        return (int) crc.getValue();
+    }
+}
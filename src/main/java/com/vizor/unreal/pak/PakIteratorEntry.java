@@ -5,12 +5,11 @@ import com.vizor.unreal.util.PakExtractor;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Map;
 import java.util.function.DoubleConsumer;
 
 public class PakIteratorEntry
@@ -30,14 +29,24 @@ public class PakIteratorEntry
      */
     private final FPakFile pakFile;
 
-    PakIteratorEntry(Map.Entry<? extends String, ? extends FPakEntry> mapEntry, FPakFile pakFile)
+    PakIteratorEntry(String filename, FPakEntry entry, FPakFile pakFile)
     {
-        Filename = mapEntry.getKey();
-        Entry = mapEntry.getValue();
+        Filename = filename;
+        Entry = entry;
 
         this.pakFile = pakFile;
     }
 
+    /**
+     * Gets the pak file this entry belongs to.
+     *
+     * @return Pak file.
+     */
+    public FPakFile getPakFile()
+    {
+        return pakFile;
+    }
+
     @APIBridgeMethod
     public void extractMixed(String RootPath, DoubleConsumer progressConsumer) throws IOException
     {
@@ -84,23 +93,21 @@ public class PakIteratorEntry
             );
         }
 
-        // Do extract
-        PakExtractor.Extract(pakFile, Entry, Channels.newChannel(new OutputStream() {
-            private int position = 0;
-
-            @Override
-            public void write(int b)
-            {
-                Buffer[Offset + (position++)] = (byte)b;
-            }
-
-            @Override
-            public void write(byte[] InBuffer, int InBufferOffset, int InBufferLength)
-            {
-                // the default write(int) fallback is too slow, we can instead copy bunches of bytes at once
-                System.arraycopy(InBuffer, InBufferOffset, Buffer, Offset + position, InBufferLength);
-                position += InBufferLength;
-            }
-        }), progressConsumer);
+        // Do extract, right into the array
+        extractTo(ByteBuffer.wrap(Buffer, Offset, bufferCapacity), progressConsumer);
+    }
+
+    /**
+     * Extracts the entry straight into the buffer (either heap or direct), starting from its position.
+     * The position is advanced by {@link FPakEntry#UncompressedSize} bytes.
+     *
+     * @param Buffer A buffer to extract to, must have at least {@link FPakEntry#UncompressedSize} bytes remaining.
+     * @param progressConsumer Progress listener, may be null.
+     * @throws IOException If an I/O error occurs or the entry is corrupted.
+     */
+    @APIBridgeMethod
+    public void extractTo(final ByteBuffer Buffer, DoubleConsumer progressConsumer) throws IOException
+    {
+        PakExtractor.Extract(pakFile, Entry, Buffer, progressConsumer);
     }
 }
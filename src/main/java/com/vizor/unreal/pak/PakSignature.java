@@ -0,0 +1,224 @@
+package com.vizor.unreal.pak;
+
+import com.vizor.unreal.util.PakSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Chunk signature of a pak file, the ".sig" file next to it: a CRC32 of every {@link #CHUNK_SIZE} bytes of the pak
+ * file (the last chunk is hashed as is, without padding). Chunks are checked as they are read, so a large pak file
+ * is verified without hashing it as a whole, see {@link FPakFile#setSignature(PakSignature)}.
+ *
+ * Layout (little endian, as FPakSignatureFile of the engine): magic, version, the encrypted hash of the chunk hash
+ * table and the chunk hash table (both are arrays, prefixed with 32-bit lengths). Signatures are not signed with
+ * RSA keys, so the encrypted hash of written signatures is empty, and it is ignored when read.
+ */
+public final class PakSignature
+{
+    public static final String EXTENSION = ".sig";
+
+    public static final int CHUNK_SIZE = FPakInfo.MaxChunkDataSize;
+
+    private static final int MAGIC = 0x73832DAA;
+
+    private static final int VERSION = 1;
+
+    private final byte[] encryptedHash;
+    private final int[] chunkHashes;
+
+    private PakSignature(byte[] encryptedHash, int[] chunkHashes)
+    {
+        this.encryptedHash = encryptedHash;
+        this.chunkHashes = chunkHashes;
+    }
+
+    /**
+     * Gets a path of the signature of a pak file: the ".pak" extension is replaced, any other one is kept.
+     *
+     * @param pakPath Path to the pak file.
+     * @return Path to the signature, which might not exist.
+     */
+    public static Path getPath(Path pakPath)
+    {
+        final String name = pakPath.getFileName().toString();
+        final String baseName = name.endsWith(".pak") ? name.substring(0, name.length() - ".pak".length()) : name;
+
+        return pakPath.resolveSibling(baseName + EXTENSION);
+    }
+
+    /**
+     * Gets a number of chunks of a pak file.
+     *
+     * @param pakSize Size of the pak file.
+     * @return Number of chunks.
+     */
+    public static int getNumChunks(long pakSize)
+    {
+        final long numChunks = (pakSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (numChunks > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many chunks in a pak file of " + pakSize + " bytes");
+
+        return (int) numChunks;
+    }
+
+    /**
+     * Computes a signature, chunks are read and hashed in parallel (in the common fork-join pool).
+     *
+     * @param source Source of the pak file bytes.
+     * @param pakSize Size of the pak file.
+     * @return A signature.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static PakSignature compute(PakSource source, long pakSize) throws IOException
+    {
+        final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(CHUNK_SIZE));
+
+        try {
+            final int[] chunkHashes = IntStream.range(0, getNumChunks(pakSize)).parallel().map(chunk -> {
+                try {
+                    return hashChunk(readChunk(source, pakSize, chunk, buffers.get()));
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toArray();
+
+            return new PakSignature(new byte[0], chunkHashes);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads a signature.
+     *
+     * @param path Path to the signature, see {@link #getPath(Path)}.
+     * @return A signature.
+     * @throws IOException If the signature can not be read or has an invalid format.
+     */
+    public static PakSignature read(Path path) throws IOException
+    {
+        final ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            final int magic = b.getInt();
+            if (magic != MAGIC)
+                throw new IOException("Invalid signature magic in " + path + ": " + Integer.toHexString(magic));
+
+            final int version = b.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported signature version in " + path + ": " + version);
+
+            final byte[] encryptedHash = new byte[checkLength(b.getInt(), Byte.BYTES, b, path)];
+            b.get(encryptedHash);
+
+            final int[] chunkHashes = new int[checkLength(b.getInt(), Integer.BYTES, b, path)];
+            b.asIntBuffer().get(chunkHashes);
+
+            return new PakSignature(encryptedHash, chunkHashes);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Truncated signature " + path, e);
+        }
+    }
+
+    /**
+     * Writes the signature.
+     *
+     * @param path Path to the signature, see {@link #getPath(Path)}.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(Path path) throws IOException
+    {
+        final ByteBuffer b = ByteBuffer.allocate(Integer.BYTES * 4 + encryptedHash.length +
+                Integer.BYTES * chunkHashes.length).order(ByteOrder.LITTLE_ENDIAN);
+
+        b.putInt(MAGIC).putInt(VERSION);
+
+        b.putInt(encryptedHash.length);
+        b.put(encryptedHash);
+
+        b.putInt(chunkHashes.length);
+        for (final int hash : chunkHashes)
+            b.putInt(hash);
+
+        Files.write(path, b.array());
+    }
+
+    public int getNumChunks()
+    {
+        return chunkHashes.length;
+    }
+
+    /**
+     * Gets a CRC32 of a chunk.
+     *
+     * @param chunk Chunk index, the chunk starts at {@code chunk * CHUNK_SIZE}.
+     * @return CRC32 of the chunk.
+     */
+    public int getChunkHash(int chunk)
+    {
+        return chunkHashes[chunk];
+    }
+
+    /**
+     * Gets the encrypted hash of the chunk hash table, as it was read.
+     *
+     * @return A copy of the hash, empty if the signature is not signed.
+     */
+    public byte[] getEncryptedHash()
+    {
+        return encryptedHash.clone();
+    }
+
+    /**
+     * Computes a CRC32 of the remaining bytes, does not change the position of the buffer.
+     */
+    static int hashChunk(ByteBuffer chunk)
+    {
+        final CRC32 crc = new CRC32();
+        crc.update(chunk.duplicate());
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads a whole chunk into the buffer.
+     *
+     * @return The buffer, flipped.
+     */
+    static ByteBuffer readChunk(PakSource source, long pakSize, int chunk, ByteBuffer buffer) throws IOException
+    {
+        final long start = (long) chunk * CHUNK_SIZE;
+
+        buffer.clear();
+        buffer.limit((int) Math.min(CHUNK_SIZE, pakSize - start));
+
+        while (buffer.hasRemaining())
+        {
+            final int bytesRead = source.read(buffer, start + buffer.position());
+            if (bytesRead < 0)
+                throw new IOException("Unexpected end of pak file at " + (start + buffer.position()));
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int checkLength(int length, int elementSize, ByteBuffer b, Path path) throws IOException
+    {
+        if (length < 0 || (long) length * elementSize > b.remaining())
+            throw new IOException("Invalid array length in signature " + path + ": " + length);
+
+        return length;
+    }
+}
@@ -0,0 +1,288 @@
+package com.vizor.unreal.pak;
+
+import com.vizor.unreal.ue4.ECompressionFlags;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Immutable aggregate statistics of a pak file, computed once when the index is loaded.
+ */
+public final class PakStats
+{
+    /**
+     * Number of the largest entries kept.
+     */
+    public static final int NUM_LARGEST_ENTRIES = 10;
+
+    /**
+     * Number of buckets of the block count histogram, see {@link #getBlockCountHistogram()}.
+     */
+    public static final int NUM_BLOCK_COUNT_BUCKETS = Integer.SIZE + 1;
+
+    /**
+     * An entry among the largest ones (by uncompressed size).
+     */
+    public static final class LargeEntry
+    {
+        private final String filename;
+        private final long size;
+        private final long uncompressedSize;
+
+        LargeEntry(String filename, long size, long uncompressedSize)
+        {
+            this.filename = filename;
+            this.size = size;
+            this.uncompressedSize = uncompressedSize;
+        }
+
+        public String getFilename()
+        {
+            return filename;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getUncompressedSize()
+        {
+            return uncompressedSize;
+        }
+
+        @Override
+        public String toString()
+        {
+            return filename + " (" + size + "/" + uncompressedSize + " bytes)";
+        }
+    }
+
+    private final int numEntries;
+    private final long totalSize;
+    private final long totalUncompressedSize;
+    private final int numEncrypted;
+    private final int numCompressed;
+    private final int numDeleted;
+    private final long[] blockCountHistogram;
+    private final List<LargeEntry> largestEntries;
+
+    private PakStats(int numEntries, long totalSize, long totalUncompressedSize, int numEncrypted, int numCompressed,
+                     int numDeleted, long[] blockCountHistogram, List<LargeEntry> largestEntries)
+    {
+        this.numEntries = numEntries;
+        this.totalSize = totalSize;
+        this.totalUncompressedSize = totalUncompressedSize;
+        this.numEncrypted = numEncrypted;
+        this.numCompressed = numCompressed;
+        this.numDeleted = numDeleted;
+        this.blockCountHistogram = blockCountHistogram;
+        this.largestEntries = Collections.unmodifiableList(largestEntries);
+    }
+
+    /**
+     * Computes statistics of a (compacted) index in a single pass. Only filenames of the largest entries are built.
+     *
+     * @param index Filename index.
+     * @return Statistics.
+     */
+    static PakStats of(PakFilenameIndex index)
+    {
+        long totalSize = 0;
+        long totalUncompressedSize = 0;
+        int numEncrypted = 0;
+        int numCompressed = 0;
+        int numDeleted = 0;
+
+        final long[] blockCountHistogram = new long[NUM_BLOCK_COUNT_BUCKETS];
+
+        // Min-heap of ordinals of the largest entries, the smallest one of them on top
+        final PriorityQueue<Integer> largest = new PriorityQueue<>(NUM_LARGEST_ENTRIES + 1,
+                Comparator.comparingLong(file -> index.getEntry(file).UncompressedSize));
+
+        for (int file = 0; file < index.size(); file++)
+        {
+            final FPakEntry entry = index.getEntry(file);
+
+            totalSize += entry.Size;
+            totalUncompressedSize += entry.UncompressedSize;
+
+            if (entry.IsEncrypted())
+                numEncrypted++;
+
+            if (entry.CompressionMethod != ECompressionFlags.COMPRESS_None)
+                numCompressed++;
+
+            if (entry.IsDeleteRecord())
+                numDeleted++;
+
+            blockCountHistogram[getBlockCountBucket(entry.CompressionBlocks.length)]++;
+
+            if (largest.size() < NUM_LARGEST_ENTRIES)
+            {
+                largest.add(file);
+            }
+            else if (entry.UncompressedSize > index.getEntry(largest.peek()).UncompressedSize)
+            {
+                largest.poll();
+                largest.add(file);
+            }
+        }
+
+        final List<LargeEntry> largestEntries = new ArrayList<>(largest.size());
+        while (!largest.isEmpty())
+        {
+            final int file = largest.poll();
+            final FPakEntry entry = index.getEntry(file);
+
+            largestEntries.add(new LargeEntry(index.getFilename(file), entry.Size, entry.UncompressedSize));
+        }
+
+        // The largest one first
+        Collections.reverse(largestEntries);
+
+        return new PakStats(index.size(), totalSize, totalUncompressedSize, numEncrypted, numCompressed, numDeleted,
+                blockCountHistogram, largestEntries);
+    }
+
+    public int getNumEntries()
+    {
+        return numEntries;
+    }
+
+    /**
+     * Gets the total size of all entries, as they are stored in the pak file (compressed, without headers).
+     *
+     * @return Number of bytes.
+     */
+    public long getTotalSize()
+    {
+        return totalSize;
+    }
+
+    public long getTotalUncompressedSize()
+    {
+        return totalUncompressedSize;
+    }
+
+    public int getNumEncrypted()
+    {
+        return numEncrypted;
+    }
+
+    public int getNumCompressed()
+    {
+        return numCompressed;
+    }
+
+    public int getNumDeleted()
+    {
+        return numDeleted;
+    }
+
+    /**
+     * Gets the number of entries by their number of compression blocks. Bucket 0 counts entries without blocks
+     * (uncompressed ones), bucket {@code i > 0} counts entries with {@code [2^(i-1), 2^i)} blocks.
+     *
+     * @return A copy of the histogram, of {@link #NUM_BLOCK_COUNT_BUCKETS} buckets.
+     */
+    public long[] getBlockCountHistogram()
+    {
+        return blockCountHistogram.clone();
+    }
+
+    /**
+     * Gets the largest entries by uncompressed size, the largest one first.
+     *
+     * @return Unmodifiable list of at most {@link #NUM_LARGEST_ENTRIES} entries.
+     */
+    public List<LargeEntry> getLargestEntries()
+    {
+        return largestEntries;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PakStats{" +
+            "numEntries=" + numEntries +
+            ", totalSize=" + totalSize +
+            ", totalUncompressedSize=" + totalUncompressedSize +
+            ", numEncrypted=" + numEncrypted +
+            ", numCompressed=" + numCompressed +
+            ", numDeleted=" + numDeleted +
+            ", blockCountHistogram=" + Arrays.toString(blockCountHistogram) +
+            ", largestEntries=" + largestEntries +
+        '}';
+    }
+
+    private static int getBlockCountBucket(int numBlocks)
+    {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(numBlocks);
+    }
+
+    // === Fixed layout, kept in index sidecars ===
+
+    long getWrittenSize()
+    {
+        long size = Integer.BYTES * 4 + Long.BYTES * 2 + Long.BYTES * NUM_BLOCK_COUNT_BUCKETS + Integer.BYTES;
+
+        for (final LargeEntry entry : largestEntries)
+            size += PakFilenameIndex.getStringSize(entry.filename) + Long.BYTES * 2;
+
+        return PakFilenameIndex.align(size);
+    }
+
+    void write(ByteBuffer b)
+    {
+        b.putInt(numEntries).putInt(numEncrypted).putInt(numCompressed).putInt(numDeleted);
+        b.putLong(totalSize).putLong(totalUncompressedSize);
+
+        for (final long count : blockCountHistogram)
+            b.putLong(count);
+
+        b.putInt(largestEntries.size());
+        for (final LargeEntry entry : largestEntries)
+        {
+            PakFilenameIndex.writeString(b, entry.filename);
+            b.putLong(entry.size).putLong(entry.uncompressedSize);
+        }
+
+        PakFilenameIndex.pad(b);
+    }
+
+    static PakStats read(ByteBuffer b)
+    {
+        final int numEntries = b.getInt();
+        final int numEncrypted = b.getInt();
+        final int numCompressed = b.getInt();
+        final int numDeleted = b.getInt();
+        final long totalSize = b.getLong();
+        final long totalUncompressedSize = b.getLong();
+
+        final long[] blockCountHistogram = new long[NUM_BLOCK_COUNT_BUCKETS];
+        for (int i = 0; i < blockCountHistogram.length; i++)
+            blockCountHistogram[i] = b.getLong();
+
+        final int numLargest = b.getInt();
+        if (numLargest < 0 || numLargest > NUM_LARGEST_ENTRIES)
+            throw new IllegalArgumentException("Invalid number of the largest entries: " + numLargest);
+
+        final List<LargeEntry> largestEntries = new ArrayList<>(numLargest);
+        for (int i = 0; i < numLargest; i++)
+        {
+            final String filename = PakFilenameIndex.readString(b);
+            largestEntries.add(new LargeEntry(filename, b.getLong(), b.getLong()));
+        }
+
+        PakFilenameIndex.skipPadding(b);
+
+        return new PakStats(numEntries, totalSize, totalUncompressedSize, numEncrypted, numCompressed, numDeleted,
+                blockCountHistogram, largestEntries);
+    }
+}
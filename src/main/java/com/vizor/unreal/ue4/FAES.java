@@ -7,16 +7,24 @@ import javax.crypto.spec.SecretKeySpec;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
-import java.util.Arrays;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
+/**
+ * AES-256 in ECB mode, as UE4 uses it for pak files.
+ *
+ * Every 16 byte block is encrypted independently, so large calls (see {@link #ParallelThreshold}) are split into
+ * chunks, which are processed in parallel in the common fork-join pool. Ciphers are taken from a shared pool, so
+ * each call has a cipher of its own, all methods are thread-safe.
+ */
 @SuppressWarnings({"WeakerAccess", "SpellCheckingInspection"})
 public final class FAES
 {
-    // A static cipher instance, all methods must vbe synchronized
-    private static final Cipher AES256Cipher;
-
     // UE4 uses an AES encryption with ECB approach to reduce
     private static final String cryptoAlgorithmName = "AES";
     private static final String cipherTransformation = cryptoAlgorithmName + "/ECB/NoPadding";
@@ -26,18 +34,27 @@ public final class FAES
     private static final int KEYLENGTH = AES_KEYBITS / Byte.SIZE;
     private static final int AESBlockSize = 16;
 
-    // Buffer for decryption
-    private static final byte[] EncryptionDecryptionBuffer = new byte[AESBlockSize];
+    /**
+     * Calls of at least this number of bytes are processed in parallel.
+     */
+    private static final int ParallelThreshold = 1024 * 1024;
+
+    /**
+     * Size of a chunk processed by a single task, must be a multiple of the block size.
+     */
+    private static final int ParallelChunkSize = 256 * 1024;
+
+    /**
+     * Idle ciphers, each is initialized with a key on each call. The pool grows up to the number of concurrent calls
+     * (unlike a cipher per thread, which would be created for every virtual thread).
+     */
+    private static final Queue<Cipher> CipherPool = new ConcurrentLinkedQueue<>();
 
     static {
         tryFixKeyLength();
 
-        try {
-            AES256Cipher = Cipher.getInstance(cipherTransformation);
-        }
-        catch (GeneralSecurityException e) {
-            throw new RuntimeException(e);
-        }
+        // Fail early if there is no such cipher at all
+        CipherPool.offer(newCipher());
     }
 
     private FAES()
@@ -52,7 +69,7 @@ public final class FAES
      * @param NumBytes the size of the buffer
      * @param KeyBytes a byte array that is a 32 byte multiple length
      */
-    public static synchronized void EncryptData(byte[] Contents, int NumBytes, byte[] KeyBytes)
+    public static void EncryptData(byte[] Contents, int NumBytes, byte[] KeyBytes)
     {
         EncryptData(Contents, NumBytes, KeyBytes, 0, KeyBytes.length);
     }
@@ -64,31 +81,13 @@ public final class FAES
      * @param NumBytes the size of the buffer
      * @param KeyBytes a byte array that is a 32 byte multiple length
      */
-    public static synchronized void EncryptData(byte[] Contents, int NumBytes, byte[] KeyBytes, int KeyOffset, int NumKeyBytes)
+    public static void EncryptData(byte[] Contents, int NumBytes, byte[] KeyBytes, int KeyOffset, int NumKeyBytes)
     {
         Misc.checkf((NumBytes & (AESBlockSize - 1)) == 0, Misc.TEXT("NumBytes needs to be a multiple of 16 bytes"));
         Misc.checkf(NumKeyBytes >= KEYLENGTH, Misc.TEXT("AES key needs to be at least %d characters"), KEYLENGTH);
 
-        //
         final SecretKeySpec secretKeySpec = new SecretKeySpec(KeyBytes, KeyOffset, NumKeyBytes, cryptoAlgorithmName);
-        try {
-            AES256Cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec);
-
-            // Decrypt the data a block at a time
-            for (int Offset = 0; Offset < NumBytes; Offset += AESBlockSize)
-            {
-                // Update and copy to the EncryptionDecryptionBuffer
-                AES256Cipher.update(Contents, Offset, AESBlockSize, EncryptionDecryptionBuffer);
-
-                // Copy to the initial array
-                System.arraycopy(EncryptionDecryptionBuffer, 0, Contents, Offset, AESBlockSize);
-            }
-
-            Arrays.fill(EncryptionDecryptionBuffer, (byte) 0);
-        }
-        catch (GeneralSecurityException e) {
-            throw new RuntimeException(e);
-        }
+        ProcessData(Cipher.ENCRYPT_MODE, secretKeySpec, ByteBuffer.wrap(Contents, 0, NumBytes));
     }
 
     /**
@@ -98,7 +97,7 @@ public final class FAES
      * @param NumBytes the size of the buffer
      * @param KeyBytes a null terminated string that is a 32 byte multiple length
      */
-    public static synchronized void DecryptData(byte[] Contents, int NumBytes, byte[] KeyBytes)
+    public static void DecryptData(byte[] Contents, int NumBytes, byte[] KeyBytes)
     {
         DecryptData(Contents, NumBytes, KeyBytes, 0, KeyBytes.length);
     }
@@ -110,26 +109,93 @@ public final class FAES
      * @param NumBytes the size of the buffer
      * @param KeyBytes a null terminated string that is a 32 byte multiple length
      */
-    public static synchronized void DecryptData(byte[] Contents, int NumBytes, byte[] KeyBytes, int KeyOffset, int NumKeyBytes)
+    public static void DecryptData(byte[] Contents, int NumBytes, byte[] KeyBytes, int KeyOffset, int NumKeyBytes)
     {
         Misc.checkf((NumBytes & (AESBlockSize - 1)) == 0, Misc.TEXT("NumBytes needs to tbe a multiple of 16 bytes"));
         Misc.checkf(NumKeyBytes >= KEYLENGTH, Misc.TEXT("AES key needs to be at least %d characters"), KEYLENGTH);
 
         final SecretKeySpec secretKeySpec = new SecretKeySpec(KeyBytes, KeyOffset, NumKeyBytes, cryptoAlgorithmName);
-        try {
-            AES256Cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);
+        ProcessData(Cipher.DECRYPT_MODE, secretKeySpec, ByteBuffer.wrap(Contents, 0, NumBytes));
+    }
 
-            // Decrypt the data a block at a time
-            for (int Offset = 0; Offset < NumBytes; Offset += AESBlockSize)
-            {
-                // Update and copy to the EncryptionDecryptionBuffer
-                AES256Cipher.update(Contents, Offset, AESBlockSize, EncryptionDecryptionBuffer);
+    /**
+     * Decrypts a chunk of data in-place using a specific key. Works for both heap and direct buffers.
+     *
+     * @param Contents the buffer to decrypt, starting from its position (position is not changed)
+     * @param NumBytes the size of the data to decrypt
+     * @param KeyBytes a null terminated string that is a 32 byte multiple length
+     */
+    public static void DecryptData(ByteBuffer Contents, int NumBytes, byte[] KeyBytes)
+    {
+        Misc.checkf((NumBytes & (AESBlockSize - 1)) == 0, Misc.TEXT("NumBytes needs to tbe a multiple of 16 bytes"));
+        Misc.checkf(KeyBytes.length >= KEYLENGTH, Misc.TEXT("AES key needs to be at least %d characters"), KEYLENGTH);
 
-                // Copy to the initial array
-                System.arraycopy(EncryptionDecryptionBuffer, 0, Contents, Offset, AESBlockSize);
-            }
+        final SecretKeySpec secretKeySpec = new SecretKeySpec(KeyBytes, 0, KeyBytes.length, cryptoAlgorithmName);
 
-            Arrays.fill(EncryptionDecryptionBuffer, (byte) 0);
+        final ByteBuffer Data = Contents.duplicate();
+        Data.limit(Data.position() + NumBytes);
+
+        ProcessData(Cipher.DECRYPT_MODE, secretKeySpec, Data);
+    }
+
+    /**
+     * Encrypts or decrypts data in-place, in parallel if there is enough data.
+     *
+     * @param Mode Cipher mode.
+     * @param Key Secret key.
+     * @param Data Data between the position and the limit (the buffer is not changed).
+     */
+    private static void ProcessData(int Mode, SecretKeySpec Key, ByteBuffer Data)
+    {
+        final int NumBytes = Data.remaining();
+
+        if (NumBytes < ParallelThreshold || ForkJoinPool.getCommonPoolParallelism() < 2)
+        {
+            ProcessChunk(Mode, Key, Data, 0, NumBytes);
+            return;
+        }
+
+        final int NumChunks = (NumBytes + ParallelChunkSize - 1) / ParallelChunkSize;
+
+        IntStream.range(0, NumChunks).parallel().forEach(Chunk -> {
+            final int Offset = Chunk * ParallelChunkSize;
+            ProcessChunk(Mode, Key, Data, Offset, Math.min(ParallelChunkSize, NumBytes - Offset));
+        });
+    }
+
+    private static void ProcessChunk(int Mode, SecretKeySpec Key, ByteBuffer Data, int Offset, int Length)
+    {
+        // Own views, other chunks are processed concurrently
+        final ByteBuffer Input = Data.duplicate();
+        Input.position(Data.position() + Offset);
+        Input.limit(Input.position() + Length);
+
+        final ByteBuffer Output = Input.duplicate();
+
+        Cipher AESCipher = CipherPool.poll();
+        if (AESCipher == null)
+        {
+            AESCipher = newCipher();
+        }
+
+        try {
+            AESCipher.init(Mode, Key);
+
+            // Cipher is copy-safe, so both views may reference the same memory
+            AESCipher.update(Input, Output);
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            CipherPool.offer(AESCipher);
+        }
+    }
+
+    private static Cipher newCipher()
+    {
+        try {
+            return Cipher.getInstance(cipherTransformation);
         }
         catch (GeneralSecurityException e) {
             throw new RuntimeException(e);
@@ -149,58 +215,78 @@ public final class FAES
     }
 
     /**
-     * In earlier JDK version AES key length is limited by 128 bit, but UE4 uses a
+     * In earlier JDK version AES key length is limited by 128 bit, but UE4 uses a 256 bit key.
+     * JDK 8u161+ has no such limit, so the hack below is only performed on older JDKs. It can not work on newer
+     * JDKs (no Field.modifiers, strong encapsulation), there we only warn and let the cipher report a bad key.
      */
     @SuppressWarnings("unchecked")
     private static void tryFixKeyLength()
     {
+        final int keyLengthBefore;
+        try {
+            keyLengthBefore = Cipher.getMaxAllowedKeyLength(cryptoAlgorithmName);
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (keyLengthBefore >= AES_KEYBITS)
+        {
+            return;
+        }
+
         try {
             final Class<?> classCryptoAllPermissionCollection = Class.forName("javax.crypto.CryptoAllPermissionCollection");
             final Class<?> classCryproPermissions = Class.forName("javax.crypto.CryptoPermissions");
             final Class<?> classJceSecurityManager = Class.forName("javax.crypto.JceSecurityManager");
 
-            final int keyLengthBefore = Cipher.getMaxAllowedKeyLength(cryptoAlgorithmName);
-            if (keyLengthBefore < AES_KEYBITS)
-            {
-                // 1.
-                final Constructor con1 = classCryptoAllPermissionCollection.getDeclaredConstructor();
-                con1.setAccessible(true);
-                final Field all_allowed = classCryptoAllPermissionCollection.getDeclaredField("all_allowed");
-                all_allowed.setAccessible(true);
-                final Object cryptoAllPermissionCollection = con1.newInstance();
-                all_allowed.setBoolean(cryptoAllPermissionCollection, true);
-
-                // 2.
-                final Constructor con2 = classCryproPermissions.getDeclaredConstructor();
-                con2.setAccessible(true);
-                Object allPermissions = con2.newInstance();
-                final Field f2 = classCryproPermissions.getDeclaredField("perms");
-                f2.setAccessible(true);
-                ((Map) f2.get(allPermissions)).put("*", cryptoAllPermissionCollection);
-
-                // 3.
-                final Field defaultPolicyField = classJceSecurityManager.getDeclaredField("defaultPolicy");
-                defaultPolicyField.setAccessible(true);
-                final Field mf = Field.class.getDeclaredField("modifiers");
-                mf.setAccessible(true);
-                mf.setInt(defaultPolicyField, defaultPolicyField.getModifiers() & ~Modifier.FINAL);
-                mf.setAccessible(false);
-                defaultPolicyField.set(null, allPermissions);
-
-                // Check whether the hack succeeded
-                final int keyLengthAfter = Cipher.getMaxAllowedKeyLength(cryptoAlgorithmName);
-                if (keyLengthAfter < AES_KEYBITS)
-                {
-                    throw new RuntimeException(String.join(System.lineSeparator(), String.join(
-                            "Failed manually overriding key-length permissions.",
-                            "Previous length: " + keyLengthBefore,
-                            "Current length : " + keyLengthAfter
-                    )));
-                }
-            }
+            // 1.
+            final Constructor con1 = classCryptoAllPermissionCollection.getDeclaredConstructor();
+            con1.setAccessible(true);
+            final Field all_allowed = classCryptoAllPermissionCollection.getDeclaredField("all_allowed");
+            all_allowed.setAccessible(true);
+            final Object cryptoAllPermissionCollection = con1.newInstance();
+            all_allowed.setBoolean(cryptoAllPermissionCollection, true);
+
+            // 2.
+            final Constructor con2 = classCryproPermissions.getDeclaredConstructor();
+            con2.setAccessible(true);
+            Object allPermissions = con2.newInstance();
+            final Field f2 = classCryproPermissions.getDeclaredField("perms");
+            f2.setAccessible(true);
+            ((Map) f2.get(allPermissions)).put("*", cryptoAllPermissionCollection);
+
+            // 3.
+            final Field defaultPolicyField = classJceSecurityManager.getDeclaredField("defaultPolicy");
+            defaultPolicyField.setAccessible(true);
+            final Field mf = Field.class.getDeclaredField("modifiers");
+            mf.setAccessible(true);
+            mf.setInt(defaultPolicyField, defaultPolicyField.getModifiers() & ~Modifier.FINAL);
+            mf.setAccessible(false);
+            defaultPolicyField.set(null, allPermissions);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            // RuntimeException covers InaccessibleObjectException (Java 9+), which can not be referenced in Java 8
+            System.err.println("Unable to lift AES key-length restriction (" + e + "), 256 bit keys may be rejected");
+            return;
+        }
+
+        // Check whether the hack succeeded
+        final int keyLengthAfter;
+        try {
+            keyLengthAfter = Cipher.getMaxAllowedKeyLength(cryptoAlgorithmName);
         }
-        catch (ReflectiveOperationException | GeneralSecurityException roe) {
-            throw new RuntimeException(roe);
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (keyLengthAfter < AES_KEYBITS)
+        {
+            System.err.println(String.join(System.lineSeparator(),
+                    "Failed manually overriding key-length permissions.",
+                    "Previous length: " + keyLengthBefore,
+                    "Current length : " + keyLengthAfter
+            ));
         }
     }
 }
@@ -0,0 +1,119 @@
+package com.vizor.unreal.util;
+
+import com.vizor.unreal.pak.FPakFile;
+import com.vizor.unreal.pak.PakIteratorEntry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts many entries at once.
+ *
+ * On Java 8 entries are extracted by a fixed pool of platform threads. On Java 21+ (multi-release jar)
+ * every entry is extracted by its own virtual thread, so blocking file creation and writes of many tiny
+ * files overlap each other cheaply.
+ */
+public final class BatchExtractor
+{
+    private BatchExtractor()
+    {
+        throw new AssertionError("No " + getClass() + " instances for you");
+    }
+
+    /**
+     * Checks whether entries are extracted by virtual threads (Java 21+ runtime and a multi-release jar).
+     *
+     * @return True if every entry runs on its own virtual thread, false otherwise.
+     */
+    public static boolean usesVirtualThreads()
+    {
+        return ExtractionThreads.isVirtual();
+    }
+
+    /**
+     * Extracts entries with the default number of entries in flight.
+     *
+     * @param entries Entries to extract (for example, an {@link com.vizor.unreal.pak.FPakFile}).
+     * @param rootPath Root directory to extract to.
+     * @throws IOException If any of entries failed to extract, the first failure is thrown.
+     */
+    public static void extract(Iterable<PakIteratorEntry> entries, Path rootPath) throws IOException
+    {
+        extract(entries, rootPath, ExtractionThreads.defaultEntriesInFlight());
+    }
+
+    /**
+     * Extracts entries, keeping at most {@code entriesInFlight} entries being extracted at once.
+     * Entries are grouped by their pak files and extracted with an {@link ExtractionPlan} per pak file
+     * (so in order of their offsets, not in order of iteration).
+     *
+     * @param entries Entries to extract (for example, an {@link com.vizor.unreal.pak.FPakFile}).
+     * @param rootPath Root directory to extract to.
+     * @param entriesInFlight Maximum number of entries being extracted at once, must be positive.
+     * @throws IOException If any of entries failed to extract, the first failure is thrown.
+     */
+    public static void extract(Iterable<PakIteratorEntry> entries, Path rootPath, int entriesInFlight) throws IOException
+    {
+        extract(entries, rootPath, entriesInFlight, null);
+    }
+
+    /**
+     * Extracts entries like {@link #extract(Iterable, Path, int)} does, reporting the progress of all entries
+     * (of all pak files) as a single job.
+     *
+     * @param entries Entries to extract (for example, an {@link com.vizor.unreal.pak.FPakFile}).
+     * @param rootPath Root directory to extract to.
+     * @param entriesInFlight Maximum number of entries being extracted at once, must be positive.
+     * @param progress Progress tracker, started and finished by this method, may be null.
+     * @throws IOException If any of entries failed to extract, the first failure is thrown.
+     * @throws java.util.concurrent.CancellationException If the tracker was cancelled.
+     */
+    public static void extract(Iterable<PakIteratorEntry> entries, Path rootPath, int entriesInFlight,
+                               ProgressTracker progress) throws IOException
+    {
+        // Group by identity (copies of a pak file have equal hash codes), keep the order of pak files
+        final Map<FPakFile, List<PakIteratorEntry>> entriesByPakFile = new IdentityHashMap<>();
+        final List<FPakFile> pakFiles = new ArrayList<>();
+
+        for (final PakIteratorEntry entry : entries)
+        {
+            entriesByPakFile.computeIfAbsent(entry.getPakFile(), pakFile -> {
+                pakFiles.add(pakFile);
+                return new ArrayList<>();
+            }).add(entry);
+        }
+
+        final List<ExtractionPlan> plans = new ArrayList<>(pakFiles.size());
+        for (final FPakFile pakFile : pakFiles)
+        {
+            plans.add(ExtractionPlan.of(pakFile, entriesByPakFile.get(pakFile), rootPath));
+        }
+
+        if (progress != null)
+        {
+            long totalBytes = 0;
+            int totalEntries = 0;
+            for (final ExtractionPlan plan : plans)
+            {
+                totalBytes += plan.getTotalBytes();
+                totalEntries += plan.getNumEntries();
+            }
+
+            progress.start(totalBytes, totalEntries);
+        }
+
+        for (final ExtractionPlan plan : plans)
+        {
+            plan.execute(entriesInFlight, progress);
+        }
+
+        if (progress != null)
+        {
+            progress.finish();
+        }
+    }
+}
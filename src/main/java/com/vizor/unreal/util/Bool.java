@@ -6,6 +6,7 @@ import com.vizor.unreal.annotations.Operator;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.util.Optional;
 
 public class Bool
 {
@@ -23,7 +24,11 @@ public class Bool
     // Show some extra info if calling operator bool() was unsuccessful
     private static final boolean DEBUG_OPERATOR_BOOL = true;
 
-    private static final LRU<Class<?>, MethodHandle> operatorBoolCache = new LRU<>(32);
+    // Operators of structs, an empty value if the struct has no (valid) operator
+    private static final ConcurrentLRU<Class<?>, Optional<MethodHandle>> operatorBoolCache =
+            ConcurrentLRU.<Class<?>, Optional<MethodHandle>>builder()
+                    .maximumSize(32)
+                    .build();
 
     /**
      * Converts a boolean into boolean.
@@ -167,49 +172,62 @@ public class Bool
     private static boolean structToBoolean(Object o)
     {
         final Class<?> clazz = o.getClass();
+        final MethodHandle operatorBool = operatorBoolCache.get(clazz, Bool::findOperatorBool).orElse(null);
 
-        MethodHandle operatorBool = null;
-        if (!operatorBoolCache.containsKey(clazz))
+        // assume the object is 'exists' and make it 'true' by default
+        boolean operatorBoolInvokeResult = true;
+
+        // Call operator if it was found
+        if (operatorBool != null)
         {
-            // It will be added to the map as 'null' (no such operator) even if some exception(s) occurred
-            Method operatorBoolMethod = null;
+            try {
+                operatorBoolInvokeResult = (boolean)operatorBool.invoke(o);
+            }
+            catch (Throwable t) {
+                if (DEBUG_OPERATOR_BOOL)
+                {
+                    System.err.println("Calling '" + clazz.getName() + ".operator bool()' failed\n" +
+                                               "Reason: " + t.toString());
+                }
+            }
+        }
 
-            final Method[] methods = clazz.getMethods();
-            for (int i = 0, l = methods.length; (i < l) && (operatorBoolMethod == null); i++)
-            {
-                Method method = methods[i];
-                final Operator operator = method.getAnnotation(Operator.class);
+        return operatorBoolInvokeResult;
+    }
 
-                if ((operator != null) && Operator.BOOL.equals(operator.value()))
-                    operatorBoolMethod = method;
-            }
+    private static Optional<MethodHandle> findOperatorBool(Class<?> clazz)
+    {
+        // It will be cached as empty (no such operator) even if some exception(s) occurred
+        MethodHandle operatorBool = null;
+        Method operatorBoolMethod = null;
+
+        final Method[] methods = clazz.getMethods();
+        for (int i = 0, l = methods.length; (i < l) && (operatorBoolMethod == null); i++)
+        {
+            Method method = methods[i];
+            final Operator operator = method.getAnnotation(Operator.class);
+
+            if ((operator != null) && Operator.BOOL.equals(operator.value()))
+                operatorBoolMethod = method;
+        }
 
-            if (operatorBoolMethod != null)
+        if (operatorBoolMethod != null)
+        {
+            // Check if the convention is valid
+            if (boolean.class.equals(operatorBoolMethod.getReturnType()) ||
+                        Boolean.class.equals(operatorBoolMethod.getReturnType()))
             {
-                // Check if the convention is valid
-                if (boolean.class.equals(operatorBoolMethod.getReturnType()) ||
-                            Boolean.class.equals(operatorBoolMethod.getReturnType()))
+                if (operatorBoolMethod.getParameterCount() == 0)
                 {
-                    if (operatorBoolMethod.getParameterCount() == 0)
-                    {
-                        // Retrieve a method handle of an operator
-                        try {
-                            operatorBool = MethodHandles.lookup().unreflect(operatorBoolMethod);
-                        }
-                        catch (IllegalAccessException e) {
-                            if (DEBUG_OPERATOR_BOOL)
-                            {
-                                System.err.println("Unable to unreflect " + clazz.getName() + "." +
-                                    operatorBoolMethod.getName() + "\nReason: " + e.toString());
-                            }
-                        }
+                    // Retrieve a method handle of an operator
+                    try {
+                        operatorBool = MethodHandles.lookup().unreflect(operatorBoolMethod);
                     }
-                    else
-                    {
+                    catch (IllegalAccessException e) {
                         if (DEBUG_OPERATOR_BOOL)
                         {
-                            System.err.println(clazz.getName() + "." + operatorBoolMethod.getName() +
-                                " must have no params to be used as Operator(\"bool\")");
+                            System.err.println("Unable to unreflect " + clazz.getName() + "." +
+                                operatorBoolMethod.getName() + "\nReason: " + e.toString());
                         }
                     }
                 }
@@ -218,37 +236,20 @@ public class Bool
                     if (DEBUG_OPERATOR_BOOL)
                     {
                         System.err.println(clazz.getName() + "." + operatorBoolMethod.getName() +
-                            " must return 'boolean' or 'Boolean' to be used as Operator(\"bool\")");
+                            " must have no params to be used as Operator(\"bool\")");
                     }
                 }
             }
-
-            operatorBoolCache.put(clazz, operatorBool);
-        }
-        else
-        {
-            operatorBool = operatorBoolCache.get(clazz);
-        }
-
-
-        // assume the object is 'exists' and make it 'true' by default
-        boolean operatorBoolInvokeResult = true;
-
-        // Call operator if it was found
-        if (operatorBool != null)
-        {
-            try {
-                operatorBoolInvokeResult = (boolean)operatorBool.invoke(o);
-            }
-            catch (Throwable t) {
+            else
+            {
                 if (DEBUG_OPERATOR_BOOL)
                 {
-                    System.err.println("Calling '" + clazz.getName() + ".operator bool()' failed\n" +
-                                               "Reason: " + t.toString());
+                    System.err.println(clazz.getName() + "." + operatorBoolMethod.getName() +
+                        " must return 'boolean' or 'Boolean' to be used as Operator(\"bool\")");
                 }
             }
         }
 
-        return operatorBoolInvokeResult;
+        return Optional.ofNullable(operatorBool);
     }
 }
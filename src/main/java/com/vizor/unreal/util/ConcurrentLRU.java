@@ -0,0 +1,804 @@
+package com.vizor.unreal.util;
+
+import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A thread-safe least-recently used cache, bounded either by the number of entries or by their total weight
+ * (e.g. size in bytes).
+ *
+ * The cache is split into segments, each one is an access-ordered {@link LinkedHashMap} guarded by its own lock,
+ * so threads touching different segments never contend. Each segment holds an equal share of the maximum weight,
+ * hence eviction order is least-recently used within a segment, not across the whole cache. Use a single segment
+ * ({@link Builder#concurrencyLevel(int)}) if exact ordering matters more than throughput.
+ *
+ * Pure LRU is polluted by scans, optionally entries can be admitted by their frequency instead, see
+ * {@link Builder#frequencyAdmission(boolean)}.
+ *
+ * Hits, misses and evictions are always counted (with striped counters, so counting costs almost nothing),
+ * see {@link #stats()}. Null keys and values are not permitted.
+ *
+ * @see LRU A single-threaded variant.
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public final class ConcurrentLRU<K, V>
+{
+    /**
+     * A builder used to construct a cache.
+     *
+     * @param <K> Key type.
+     * @param <V> Value type.
+     */
+    public static final class Builder<K, V>
+    {
+        private long maximumWeight = -1;
+        private int concurrencyLevel = 16;
+        private ToIntBiFunction<? super K, ? super V> weigher = null;
+        private BiConsumer<? super K, ? super V> evictionListener = null;
+        private boolean frequencyAdmission = false;
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Sets the maximum number of entries (or the maximum total weight if a weigher is set).
+         *
+         * @param value Maximum number of entries (or total weight), must be positive.
+         * @return This builder.
+         */
+        public Builder<K, V> maximumSize(long value)
+        {
+            if (value <= 0)
+                throw new IllegalArgumentException("Maximum size must be positive, given: " + value);
+
+            maximumWeight = value;
+            return this;
+        }
+
+        /**
+         * Sets a weigher, entries are then bounded by their total weight. The weigher must always return
+         * the same (non-negative) weight for the same entry.
+         *
+         * @param value Weigher of entries.
+         * @return This builder.
+         */
+        public Builder<K, V> weigher(ToIntBiFunction<? super K, ? super V> value)
+        {
+            weigher = requireNonNull(value);
+            return this;
+        }
+
+        /**
+         * Sets a listener, called for each entry evicted due to the size limit (not for replaced or removed ones).
+         * The listener is called by the thread which caused the eviction, outside of any lock.
+         *
+         * @param value Eviction listener.
+         * @return This builder.
+         */
+        public Builder<K, V> evictionListener(BiConsumer<? super K, ? super V> value)
+        {
+            evictionListener = requireNonNull(value);
+            return this;
+        }
+
+        /**
+         * Sets the desired number of segments, rounded up to a power of two. The actual number might be lower
+         * to keep segments reasonably large.
+         *
+         * @param value The desired number of segments.
+         * @return This builder.
+         */
+        public Builder<K, V> concurrencyLevel(int value)
+        {
+            if (value <= 0)
+                throw new IllegalArgumentException("Concurrency level must be positive, given: " + value);
+
+            concurrencyLevel = value;
+            return this;
+        }
+
+        /**
+         * Enables (or disables) the W-TinyLFU admission policy. New entries then get into a small LRU window,
+         * entries leaving the window are admitted to the main part of the cache only if they are requested more
+         * often than the entries they would evict. Request frequencies are estimated with a sketch, so a one-off
+         * scan of many keys does not push frequently requested entries out of the cache.
+         *
+         * @param value Whether the admission policy is enabled, false by default (plain LRU).
+         * @return This builder.
+         */
+        public Builder<K, V> frequencyAdmission(boolean value)
+        {
+            frequencyAdmission = value;
+            return this;
+        }
+
+        public ConcurrentLRU<K, V> build()
+        {
+            if (maximumWeight < 0)
+                throw new IllegalStateException("Maximum size must be set");
+
+            return new ConcurrentLRU<>(this);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the cache statistics.
+     */
+    public static final class Stats
+    {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long evictionWeight;
+
+        private Stats(long hitCount, long missCount, long evictionCount, long evictionWeight)
+        {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.evictionWeight = evictionWeight;
+        }
+
+        public long getHitCount()
+        {
+            return hitCount;
+        }
+
+        public long getMissCount()
+        {
+            return missCount;
+        }
+
+        public long getRequestCount()
+        {
+            return hitCount + missCount;
+        }
+
+        public long getEvictionCount()
+        {
+            return evictionCount;
+        }
+
+        public long getEvictionWeight()
+        {
+            return evictionWeight;
+        }
+
+        /**
+         * Gets a ratio of hits to all requests.
+         *
+         * @return Hit rate in range [0, 1], or NaN if there were no requests.
+         */
+        public double getHitRate()
+        {
+            final long requestCount = getRequestCount();
+            return (requestCount > 0) ? ((double) hitCount / requestCount) : Double.NaN;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Hits: " + hitCount + ", Misses: " + missCount + ", Evictions: " + evictionCount +
+                    " (weight " + evictionWeight + ")";
+        }
+    }
+
+    /**
+     * A part of the cache, guarded by its own monitor.
+     * All methods must be called under the segment lock.
+     */
+    private abstract class Segment
+    {
+        final long maximumWeight;
+        long weight = 0;
+
+        Segment(long maximumWeight)
+        {
+            this.maximumWeight = maximumWeight;
+        }
+
+        /**
+         * Gets a value, marks it as used.
+         */
+        abstract V get(Object key);
+
+        /**
+         * Gets a value of a key, which access is already recorded by a previous {@link #get(Object)} of the same
+         * lookup: the access is not counted once again, the value is not promoted.
+         */
+        abstract V peek(Object key);
+
+        abstract boolean containsKey(Object key);
+
+        abstract V remove(Object key);
+
+        /**
+         * Inserts an absent value, evicts entries if the segment becomes too heavy.
+         *
+         * @return Evicted entries if there is a listener to be notified, null otherwise.
+         */
+        abstract List<Map.Entry<K, V>> insert(K key, V value);
+
+        abstract int size();
+
+        abstract void clear();
+    }
+
+    /**
+     * Evicts the least recently used entries.
+     */
+    private final class LruSegment extends Segment
+    {
+        private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        LruSegment(long maximumWeight)
+        {
+            super(maximumWeight);
+        }
+
+        @Override
+        V get(Object key)
+        {
+            return map.get(key);
+        }
+
+        @Override
+        V peek(Object key)
+        {
+            // Marking as the most recently used once again changes nothing
+            return map.get(key);
+        }
+
+        @Override
+        boolean containsKey(Object key)
+        {
+            return map.containsKey(key);
+        }
+
+        @Override
+        V remove(Object key)
+        {
+            final V removed = map.remove(key);
+            if (removed != null)
+                weight -= weigh(key, removed);
+
+            return removed;
+        }
+
+        @Override
+        List<Map.Entry<K, V>> insert(K key, V value)
+        {
+            map.put(key, value);
+            weight += weigh(key, value);
+
+            List<Map.Entry<K, V>> evicted = null;
+
+            // An entry heavier than the whole segment evicts everything, itself included
+            final Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+            while (weight > maximumWeight && it.hasNext())
+            {
+                final Map.Entry<K, V> eldest = it.next();
+                final int eldestWeight = weigh(eldest.getKey(), eldest.getValue());
+
+                evicted = evict(evicted, eldest.getKey(), eldest.getValue(), eldestWeight);
+                it.remove();
+
+                weight -= eldestWeight;
+            }
+
+            return evicted;
+        }
+
+        @Override
+        int size()
+        {
+            return map.size();
+        }
+
+        @Override
+        void clear()
+        {
+            map.clear();
+            weight = 0;
+        }
+    }
+
+    /**
+     * Window TinyLFU: new entries get into a small LRU window, those leaving the window compete with the victims
+     * of the main space by their estimated frequency. The main space is a segmented LRU: entries requested once
+     * again while on probation are promoted to the protected part.
+     *
+     * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+     */
+    private final class AdmittingSegment extends Segment
+    {
+        /**
+         * Percent of the weight given to the window.
+         */
+        private static final int WINDOW_PERCENT = 1;
+
+        /**
+         * Percent of the main space weight given to the protected part.
+         */
+        private static final int PROTECTED_PERCENT = 80;
+
+        private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, V> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<K, V> protect = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final long windowMaximumWeight;
+        private final long mainMaximumWeight;
+        private final long protectedMaximumWeight;
+
+        private long windowWeight = 0;
+        private long probationWeight = 0;
+        private long protectedWeight = 0;
+
+        private final FrequencySketch sketch = new FrequencySketch();
+
+        AdmittingSegment(long maximumWeight)
+        {
+            super(maximumWeight);
+
+            this.windowMaximumWeight = Math.max(1, maximumWeight * WINDOW_PERCENT / 100);
+            this.mainMaximumWeight = maximumWeight - windowMaximumWeight;
+            this.protectedMaximumWeight = mainMaximumWeight * PROTECTED_PERCENT / 100;
+
+            // The number of entries is unknown if they are weighted, the sketch then grows with the segment
+            sketch.ensureCapacity(weigher == null ? maximumWeight : 0);
+        }
+
+        @Override
+        V get(Object key)
+        {
+            sketch.increment(key.hashCode());
+
+            V value = window.get(key);
+            if (value != null)
+                return value;
+
+            value = protect.get(key);
+            if (value != null)
+                return value;
+
+            value = probation.remove(key);
+            if (value != null)
+            {
+                final int w = weigh(key, value);
+                probationWeight -= w;
+
+                @SuppressWarnings("unchecked")
+                final K k = (K) key;
+                protect.put(k, value);
+                protectedWeight += w;
+
+                // Demote the least recently used protected entries, they are the first to leave probation
+                final Iterator<Map.Entry<K, V>> it = protect.entrySet().iterator();
+                while (protectedWeight > protectedMaximumWeight && it.hasNext())
+                {
+                    final Map.Entry<K, V> eldest = it.next();
+                    final int eldestWeight = weigh(eldest.getKey(), eldest.getValue());
+
+                    it.remove();
+                    protectedWeight -= eldestWeight;
+
+                    probation.put(eldest.getKey(), eldest.getValue());
+                    probationWeight += eldestWeight;
+                }
+            }
+
+            return value;
+        }
+
+        @Override
+        V peek(Object key)
+        {
+            V value = window.get(key);
+            if (value == null)
+                value = protect.get(key);
+            if (value == null)
+                value = probation.get(key);
+
+            return value;
+        }
+
+        @Override
+        boolean containsKey(Object key)
+        {
+            return window.containsKey(key) || probation.containsKey(key) || protect.containsKey(key);
+        }
+
+        @Override
+        V remove(Object key)
+        {
+            V removed;
+            if ((removed = window.remove(key)) != null)
+                windowWeight -= weigh(key, removed);
+            else if ((removed = probation.remove(key)) != null)
+                probationWeight -= weigh(key, removed);
+            else if ((removed = protect.remove(key)) != null)
+                protectedWeight -= weigh(key, removed);
+
+            weight = windowWeight + probationWeight + protectedWeight;
+            return removed;
+        }
+
+        @Override
+        List<Map.Entry<K, V>> insert(K key, V value)
+        {
+            window.put(key, value);
+            windowWeight += weigh(key, value);
+
+            if (weigher != null)
+                sketch.ensureCapacity(size());
+
+            List<Map.Entry<K, V>> evicted = null;
+
+            // Entries leaving the window are candidates to the main space
+            final Iterator<Map.Entry<K, V>> it = window.entrySet().iterator();
+            while (windowWeight > windowMaximumWeight && it.hasNext())
+            {
+                final Map.Entry<K, V> candidate = it.next();
+                final K candidateKey = candidate.getKey();
+                final V candidateValue = candidate.getValue();
+                final int candidateWeight = weigh(candidateKey, candidateValue);
+
+                it.remove();
+                windowWeight -= candidateWeight;
+
+                evicted = admit(evicted, candidateKey, candidateValue, candidateWeight);
+            }
+
+            weight = windowWeight + probationWeight + protectedWeight;
+            return evicted;
+        }
+
+        private List<Map.Entry<K, V>> admit(List<Map.Entry<K, V>> evicted, K key, V value, int w)
+        {
+            if (w > mainMaximumWeight)
+                return evict(evicted, key, value, w);
+
+            final int frequency = sketch.frequency(key.hashCode());
+
+            while (probationWeight + protectedWeight + w > mainMaximumWeight)
+            {
+                // Victims are taken from probation first
+                final LinkedHashMap<K, V> victims = probation.isEmpty() ? protect : probation;
+                final Map.Entry<K, V> victim = victims.entrySet().iterator().next();
+
+                // The candidate must be strictly more frequent, scans are rejected even if the victim is cold
+                if (frequency <= sketch.frequency(victim.getKey().hashCode()))
+                    return evict(evicted, key, value, w);
+
+                final int victimWeight = weigh(victim.getKey(), victim.getValue());
+                evicted = evict(evicted, victim.getKey(), victim.getValue(), victimWeight);
+
+                victims.remove(victim.getKey());
+                if (victims == probation)
+                    probationWeight -= victimWeight;
+                else
+                    protectedWeight -= victimWeight;
+            }
+
+            probation.put(key, value);
+            probationWeight += w;
+
+            return evicted;
+        }
+
+        @Override
+        int size()
+        {
+            return window.size() + probation.size() + protect.size();
+        }
+
+        @Override
+        void clear()
+        {
+            window.clear();
+            probation.clear();
+            protect.clear();
+
+            windowWeight = probationWeight = protectedWeight = weight = 0;
+        }
+    }
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    private final long maximumWeight;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final BiConsumer<? super K, ? super V> evictionListener;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedWeight = new LongAdder();
+
+    /**
+     * Segments smaller than this are not worth splitting further.
+     */
+    private static final long MIN_SEGMENT_WEIGHT = 16;
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentLRU(Builder<K, V> builder)
+    {
+        this.maximumWeight = builder.maximumWeight;
+        this.weigher = builder.weigher;
+        this.evictionListener = builder.evictionListener;
+
+        int numSegments = 1;
+        while (numSegments < builder.concurrencyLevel && (maximumWeight / (numSegments * 2)) >= MIN_SEGMENT_WEIGHT)
+            numSegments *= 2;
+
+        this.segments = (Segment[]) Array.newInstance(Segment.class, numSegments);
+        this.segmentShift = Integer.SIZE - Integer.numberOfTrailingZeros(numSegments);
+
+        // Distribute the remainder, so the total is exactly the maximum weight
+        for (int i = 0; i < numSegments; i++)
+        {
+            final long segmentWeight = maximumWeight / numSegments + ((i < maximumWeight % numSegments) ? 1 : 0);
+            segments[i] = builder.frequencyAdmission ? new AdmittingSegment(segmentWeight) : new LruSegment(segmentWeight);
+        }
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @param <K> Key type.
+     * @param <V> Value type.
+     * @return A new builder.
+     */
+    public static <K, V> Builder<K, V> builder()
+    {
+        return new Builder<>();
+    }
+
+    /**
+     * Gets a value, marks it as the most recently used.
+     *
+     * @param key A key.
+     * @return A value, or null if the cache has no value for the key.
+     */
+    public V get(Object key)
+    {
+        final Segment segment = segmentFor(requireNonNull(key));
+
+        final V value;
+        synchronized (segment)
+        {
+            value = segment.get(key);
+        }
+
+        (value != null ? hits : misses).increment();
+        return value;
+    }
+
+    /**
+     * Gets a value, loads and caches it if the cache has no value for the key.
+     *
+     * The loader is called outside of any lock, so a slow loader never blocks other threads, but concurrent
+     * requests for the same key might load the value more than once (the first loaded value wins).
+     *
+     * @param key A key.
+     * @param loader Loads a value for the key, must not return null.
+     * @return A value.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader)
+    {
+        final V cached = get(key);
+        if (cached != null)
+            return cached;
+
+        final V loaded = requireNonNull(loader.apply(key), "Loader must not return null");
+
+        final Segment segment = segmentFor(key);
+
+        List<Map.Entry<K, V>> evicted = null;
+        V result;
+        synchronized (segment)
+        {
+            // Might be loaded by another thread meanwhile, the access is already recorded by get(key)
+            result = segment.peek(key);
+            if (result == null)
+            {
+                result = loaded;
+                evicted = segment.insert(key, loaded);
+            }
+        }
+
+        notifyEvicted(evicted);
+        return result;
+    }
+
+    /**
+     * Puts a value, marks it as the most recently used, evicts entries if necessary.
+     *
+     * @param key A key.
+     * @param value A value.
+     * @return The previous value, or null if there was none.
+     */
+    public V put(K key, V value)
+    {
+        requireNonNull(key);
+        requireNonNull(value);
+
+        final Segment segment = segmentFor(key);
+
+        final List<Map.Entry<K, V>> evicted;
+        final V previous;
+        synchronized (segment)
+        {
+            previous = segment.remove(key);
+            evicted = segment.insert(key, value);
+        }
+
+        notifyEvicted(evicted);
+        return previous;
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param key A key.
+     * @return The removed value, or null if there was none.
+     */
+    public V remove(Object key)
+    {
+        final Segment segment = segmentFor(key);
+
+        synchronized (segment)
+        {
+            return segment.remove(key);
+        }
+    }
+
+    /**
+     * Checks whether the cache has a value for the key. Neither changes the order, nor counts as a request.
+     *
+     * @param key A key.
+     * @return True if the cache has a value for the key.
+     */
+    public boolean containsKey(Object key)
+    {
+        final Segment segment = segmentFor(key);
+
+        synchronized (segment)
+        {
+            return segment.containsKey(key);
+        }
+    }
+
+    /**
+     * Removes all values, statistics are kept.
+     */
+    public void clear()
+    {
+        for (final Segment segment : segments)
+        {
+            synchronized (segment)
+            {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return Number of entries.
+     */
+    public long size()
+    {
+        long size = 0;
+        for (final Segment segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Gets the total weight of entries (the number of entries if there is no weigher).
+     *
+     * @return Total weight.
+     */
+    public long getWeightedSize()
+    {
+        long weight = 0;
+        for (final Segment segment : segments)
+        {
+            synchronized (segment)
+            {
+                weight += segment.weight;
+            }
+        }
+
+        return weight;
+    }
+
+    public long getMaximumWeight()
+    {
+        return maximumWeight;
+    }
+
+    /**
+     * Gets a snapshot of the statistics, counters are not reset.
+     *
+     * @return Statistics.
+     */
+    public Stats stats()
+    {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), evictedWeight.sum());
+    }
+
+    /**
+     * Counts an evicted entry, remembers it if there is a listener to be notified.
+     *
+     * @return The list of evicted entries (created if necessary), null if there is no listener.
+     */
+    private List<Map.Entry<K, V>> evict(List<Map.Entry<K, V>> evicted, K key, V value, int weight)
+    {
+        evictions.increment();
+        evictedWeight.add(weight);
+
+        if (evictionListener != null)
+        {
+            if (evicted == null)
+                evicted = new ArrayList<>(1);
+
+            evicted.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+        }
+
+        return evicted;
+    }
+
+    private void notifyEvicted(List<Map.Entry<K, V>> evicted)
+    {
+        if (evicted != null)
+        {
+            for (final Map.Entry<K, V> entry : evicted)
+                evictionListener.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int weigh(Object key, V value)
+    {
+        if (weigher == null)
+            return 1;
+
+        final int weight = weigher.applyAsInt((K) key, value);
+        if (weight < 0)
+            throw new IllegalStateException("Weight must not be negative, given: " + weight + " for " + key);
+
+        return weight;
+    }
+
+    private Segment segmentFor(Object key)
+    {
+        if (segments.length == 1)
+            return segments[0];
+
+        // Use high bits, spread by a multiplicative hash, low bits are used by the segment's table
+        final int h = key.hashCode() * 0x9E3779B9;
+        return segments[h >>> segmentShift];
+    }
+}
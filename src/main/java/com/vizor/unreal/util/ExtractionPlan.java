@@ -0,0 +1,486 @@
+package com.vizor.unreal.util;
+
+import com.vizor.unreal.pak.FPakCompressedBlock;
+import com.vizor.unreal.pak.FPakEntry;
+import com.vizor.unreal.pak.FPakFile;
+import com.vizor.unreal.pak.FPakInfo;
+import com.vizor.unreal.pak.PakIteratorEntry;
+import com.vizor.unreal.ue4.ECompressionFlags;
+import com.vizor.unreal.ue4.FAES;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleConsumer;
+
+import static com.vizor.unreal.ue4.AlignmentTemplates.Align;
+import static com.vizor.unreal.util.Bool.BOOL;
+import static com.vizor.unreal.util.Misc.toInt;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Bulk extraction plan for entries of a single pak file.
+ *
+ * Entries are extracted in the order of their payload in the pak file (not in the index order), all target
+ * directories are created once before extraction, and payloads of neighbouring entries are read with a single
+ * large sequential read ("run"), then handed to the workers which decrypt, inflate and write them.
+ * Entries too large to fit a run are read by the workers directly from the pak file.
+ */
+public final class ExtractionPlan
+{
+    /**
+     * Maximum size of a single sequential read.
+     */
+    private static final int MAX_RUN_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Gaps between entries which are smaller than this are read (and skipped) rather than seeked over.
+     */
+    private static final int MAX_RUN_GAP = FPakInfo.MaxChunkDataSize;
+
+    /**
+     * Maximum number of runs read ahead of the workers, bounds the memory held by run buffers.
+     */
+    private static final int MAX_RUNS_IN_FLIGHT = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * A range of the pak file, containing payloads of one or more entries, sorted by offset.
+     */
+    private static final class Run
+    {
+        private final long start;
+        private long end;
+
+        private final int firstEntry;
+        private int numEntries;
+
+        private Run(long start, long end, int firstEntry)
+        {
+            this.start = start;
+            this.end = end;
+            this.firstEntry = firstEntry;
+            this.numEntries = 1;
+        }
+
+        private boolean isPrefetched()
+        {
+            return (end - start) <= MAX_RUN_SIZE;
+        }
+    }
+
+    private final FPakFile pakFile;
+    private final Path rootPath;
+
+    private final PakIteratorEntry[] entries;
+    private final List<Run> runs = new ArrayList<>();
+    private final Set<Path> directories = new LinkedHashSet<>();
+
+    private ExtractionPlan(FPakFile pakFile, PakIteratorEntry[] entries, Path rootPath)
+    {
+        this.pakFile = pakFile;
+        this.rootPath = rootPath;
+        this.entries = entries;
+
+        final FPakInfo info = pakFile.getInfo();
+
+        // Read the disk in order
+        Arrays.sort(entries, Comparator.comparingLong(e -> e.Entry.Offset));
+
+        Run run = null;
+        for (int i = 0; i < entries.length; i++)
+        {
+            final FPakEntry entry = entries[i].Entry;
+
+            final long start = entry.Offset;
+            final long end = getEntryEnd(info, entry);
+
+            // Merge into the current run if close enough and the run does not grow too large
+            if ((run != null) && (start >= run.end) && (start - run.end <= MAX_RUN_GAP) && (end - run.start <= MAX_RUN_SIZE))
+            {
+                run.end = end;
+                run.numEntries++;
+            }
+            else
+            {
+                run = new Run(start, end, i);
+                runs.add(run);
+            }
+
+            final Path parent = rootPath.resolve(entries[i].Filename).getParent();
+            if (parent != null)
+            {
+                directories.add(parent);
+            }
+        }
+    }
+
+    /**
+     * Creates an extraction plan for the given entries.
+     *
+     * @param pakFile A pak file, all entries must belong to.
+     * @param entries Entries to extract.
+     * @param rootPath Root directory to extract to.
+     * @return A new plan.
+     */
+    public static ExtractionPlan of(FPakFile pakFile, Iterable<PakIteratorEntry> entries, Path rootPath)
+    {
+        final List<PakIteratorEntry> list = new ArrayList<>();
+        for (final PakIteratorEntry e : entries)
+        {
+            if (e.getPakFile() != pakFile)
+            {
+                throw new IllegalArgumentException("\"" + e.Filename + "\" does not belong to " + pakFile.getFilename());
+            }
+
+            list.add(e);
+        }
+
+        return new ExtractionPlan(pakFile, list.toArray(new PakIteratorEntry[0]), rootPath);
+    }
+
+    /**
+     * Gets the number of sequential reads the plan is about to perform (entries too large to fit a read are
+     * read by themselves).
+     *
+     * @return Number of reads.
+     */
+    public int getNumRuns()
+    {
+        return runs.size();
+    }
+
+    /**
+     * Gets the number of entries to extract.
+     *
+     * @return Number of entries.
+     */
+    public int getNumEntries()
+    {
+        return entries.length;
+    }
+
+    /**
+     * Gets the total uncompressed size of entries to extract.
+     *
+     * @return Number of bytes.
+     */
+    public long getTotalBytes()
+    {
+        long totalBytes = 0;
+        for (final PakIteratorEntry entry : entries)
+            totalBytes += entry.Entry.UncompressedSize;
+
+        return totalBytes;
+    }
+
+    /**
+     * Executes the plan with the default number of entries in flight.
+     *
+     * @throws IOException If any of entries failed to extract, the first failure is thrown.
+     */
+    public void execute() throws IOException
+    {
+        execute(ExtractionThreads.defaultEntriesInFlight());
+    }
+
+    /**
+     * Executes the plan. Runs are read sequentially by the calling thread, entries are extracted by workers.
+     *
+     * @param entriesInFlight Maximum number of entries being extracted at once, must be positive.
+     * @throws IOException If any of entries failed to extract, the first failure is thrown.
+     */
+    public void execute(int entriesInFlight) throws IOException
+    {
+        execute(entriesInFlight, null);
+    }
+
+    /**
+     * Executes the plan, reporting uncompressed bytes and entries to the tracker. The tracker is neither started
+     * nor finished, so a single tracker may aggregate several plans (see {@link #getTotalBytes()}).
+     *
+     * Whatever happens, this method returns only once all the workers are done: after a failure (or an interrupt)
+     * no more entries are started, but the ones already started are finished.
+     *
+     * @param entriesInFlight Maximum number of entries being extracted at once, must be positive.
+     * @param progress Progress tracker, may be null.
+     * @throws IOException If any of entries failed to extract, the first failure is thrown.
+     * @throws java.util.concurrent.CancellationException If the tracker was cancelled.
+     */
+    public void execute(int entriesInFlight, ProgressTracker progress) throws IOException
+    {
+        if (entriesInFlight <= 0)
+        {
+            throw new IllegalArgumentException("Number of entries in flight must be positive, given: " + entriesInFlight);
+        }
+
+        // All directories at once, workers never check them
+        for (final Path directory : directories)
+        {
+            Files.createDirectories(directory);
+        }
+
+        final PakSource pakSource = pakFile::read;
+
+        final Semaphore entriesPermits = new Semaphore(entriesInFlight);
+        final Semaphore runsPermits = new Semaphore(MAX_RUNS_IN_FLIGHT);
+        final Queue<ByteBuffer> runBuffers = new ConcurrentLinkedQueue<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final ExecutorService executor = ExtractionThreads.newEntryExecutor(entriesInFlight);
+        boolean interrupted = false;
+        try
+        {
+            for (final Run run : runs)
+            {
+                if (failure.get() != null || (progress != null && progress.isCancelled()))
+                    break;
+
+                final PakSource source;
+                final ByteBuffer runBuffer;
+                if (run.isPrefetched())
+                {
+                    runsPermits.acquire();
+
+                    final ByteBuffer pooled = runBuffers.poll();
+                    runBuffer = (pooled != null) ? pooled : ByteBuffer.allocate(MAX_RUN_SIZE);
+
+                    runBuffer.position(0).limit(toInt(run.end - run.start));
+                    readFully(pakSource, runBuffer, run.start);
+                    runBuffer.flip();
+
+                    source = prefetchedSource(runBuffer, run.start);
+                }
+                else
+                {
+                    runBuffer = null;
+                    source = pakSource;
+                }
+
+                // Released once the last entry of the run is done
+                final AtomicInteger entriesRemaining = new AtomicInteger(run.numEntries);
+
+                for (int i = run.firstEntry; i < run.firstEntry + run.numEntries; i++)
+                {
+                    final PakIteratorEntry entry = entries[i];
+
+                    entriesPermits.acquire();
+
+                    executor.execute(() -> {
+                        try {
+                            if (failure.get() == null)
+                                extractEntry(entry, source, progress);
+                        }
+                        catch (Throwable t) {
+                            recordFailure(failure, t);
+                        }
+                        finally {
+                            entriesPermits.release();
+
+                            if (entriesRemaining.decrementAndGet() == 0 && runBuffer != null)
+                            {
+                                runBuffers.offer(runBuffer);
+                                runsPermits.release();
+                            }
+                        }
+                    });
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            interrupted = true;
+            recordFailure(failure, new InterruptedIOException("Interrupted while extracting entries"));
+        }
+        catch (Throwable t)
+        {
+            recordFailure(failure, t);
+        }
+        finally
+        {
+            // Never return while workers still write files or use run buffers, entries not started yet are skipped
+            interrupted |= awaitTermination(executor);
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        rethrow(failure.get());
+
+        if (progress != null)
+            progress.checkCancelled();
+    }
+
+    /**
+     * Keeps the first failure, later ones are suppressed by it.
+     */
+    private static void recordFailure(AtomicReference<Throwable> failure, Throwable t)
+    {
+        if (!failure.compareAndSet(null, t) && failure.get() != t)
+            failure.get().addSuppressed(t);
+    }
+
+    /**
+     * Shuts the executor down and waits for all the tasks to finish, even if interrupted.
+     *
+     * @return True if the calling thread was interrupted while waiting.
+     */
+    private static boolean awaitTermination(ExecutorService executor)
+    {
+        executor.shutdown();
+
+        boolean interrupted = false;
+        while (true)
+        {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES))
+                    return interrupted;
+
+                // Keep waiting, large entries may take a while
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private void extractEntry(PakIteratorEntry entry, PakSource source, ProgressTracker progress) throws IOException
+    {
+        final DoubleConsumer progressConsumer;
+        if (progress != null)
+        {
+            progress.beginEntry(entry.Filename);
+            progressConsumer = newEntryProgress(entry.Entry.UncompressedSize, progress);
+        }
+        else
+        {
+            progressConsumer = null;
+        }
+
+        // Directory is already created
+        try (final FileChannel fileChannel = FileChannel.open(rootPath.resolve(entry.Filename), CREATE, TRUNCATE_EXISTING, WRITE))
+        {
+            PakExtractor.Extract(pakFile, entry.Entry, source, fileChannel, progressConsumer);
+        }
+
+        if (progressConsumer != null)
+        {
+            // Extractor might never report the end (e.g. empty entries)
+            progressConsumer.accept(1.0);
+            progress.endEntry();
+        }
+    }
+
+    /**
+     * Converts the progress of a single entry into uncompressed bytes done.
+     */
+    private static DoubleConsumer newEntryProgress(long entrySize, ProgressTracker progress)
+    {
+        final long[] bytesReported = {0};
+
+        return fraction -> {
+            final long bytes = Math.min((long) (fraction * entrySize), entrySize);
+            if (bytes > bytesReported[0])
+            {
+                progress.addBytes(bytes - bytesReported[0]);
+                bytesReported[0] = bytes;
+            }
+        };
+    }
+
+    private static PakSource prefetchedSource(ByteBuffer runBuffer, long runStart)
+    {
+        return (dst, position) -> {
+            final long offset = position - runStart;
+            if (offset < 0 || offset > runBuffer.limit())
+            {
+                throw new IOException("Position " + position + " is out of the prefetched range [" + runStart + ", " +
+                        (runStart + runBuffer.limit()) + ")");
+            }
+
+            final int numBytes = Math.min(dst.remaining(), runBuffer.limit() - (int) offset);
+            if (numBytes <= 0)
+            {
+                return -1;
+            }
+
+            // Run buffer is shared between workers, never touch its own position
+            final ByteBuffer view = runBuffer.duplicate();
+            view.position((int) offset).limit((int) offset + numBytes);
+            dst.put(view);
+
+            return numBytes;
+        };
+    }
+
+    /**
+     * Computes where the data of the entry ends in the pak file (including encryption padding).
+     *
+     * @param info Pak file info.
+     * @param entry Entry.
+     * @return Absolute offset of the first byte after the entry.
+     */
+    static long getEntryEnd(FPakInfo info, FPakEntry entry)
+    {
+        final long dataSize = entry.IsEncrypted() ? Align(entry.Size, FAES.getBlockSize()) : entry.Size;
+        long end = entry.Offset + entry.GetSerializedSize(info.Version) + dataSize;
+
+        if (entry.CompressionMethod != ECompressionFlags.COMPRESS_None)
+        {
+            final long baseOffset = BOOL(info.HasRelativeCompressedChunkOffsets()) ? entry.Offset : 0;
+
+            for (final FPakCompressedBlock block : entry.CompressionBlocks)
+            {
+                final long blockSize = block.CompressedEnd - block.CompressedStart;
+                final long alignedSize = entry.IsEncrypted() ? Align(blockSize, FAES.getBlockSize()) : blockSize;
+
+                end = Math.max(end, baseOffset + block.CompressedStart + alignedSize);
+            }
+        }
+
+        return end;
+    }
+
+    private static void readFully(PakSource source, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            final int bytesRead = source.read(buffer, position);
+            if (bytesRead < 0)
+            {
+                throw new IOException("Unexpected end of pak file at " + position);
+            }
+
+            position += bytesRead;
+        }
+    }
+
+    private static void rethrow(Throwable t) throws IOException
+    {
+        if (t instanceof IOException)
+            throw (IOException) t;
+        else if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        else if (t instanceof Error)
+            throw (Error) t;
+        else if (t != null)
+            throw new IOException(t);
+    }
+}
@@ -0,0 +1,60 @@
+package com.vizor.unreal.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for batch extraction.
+ *
+ * This is the Java 8 version, which runs entries on a fixed pool of platform threads.
+ * A multi-release jar replaces this class on Java 21+ (see src/main/java21), where every entry
+ * gets its own virtual thread.
+ */
+final class ExtractionThreads
+{
+    private ExtractionThreads()
+    {
+        throw new AssertionError("No " + getClass() + " instances for you");
+    }
+
+    /**
+     * Checks whether entries are extracted by virtual threads.
+     *
+     * @return True if every entry runs on its own virtual thread, false otherwise.
+     */
+    static boolean isVirtual()
+    {
+        return false;
+    }
+
+    /**
+     * Default number of entries being extracted at once.
+     *
+     * @return Number of entries, each of them holds its own extraction buffers.
+     */
+    static int defaultEntriesInFlight()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Creates an executor, running extraction tasks.
+     *
+     * @param entriesInFlight Maximum number of entries being extracted at once.
+     * @return A new executor, must be shut down by the caller.
+     */
+    static ExecutorService newEntryExecutor(int entriesInFlight)
+    {
+        final AtomicInteger threadCounter = new AtomicInteger();
+
+        final ThreadFactory threadFactory = r -> {
+            final Thread thread = new Thread(r, "juepak-extract-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return Executors.newFixedThreadPool(entriesInFlight, threadFactory);
+    }
+}
@@ -0,0 +1,147 @@
+package com.vizor.unreal.util;
+
+/**
+ * A count-min sketch estimating how often keys are requested, used by the admission policy of {@link ConcurrentLRU}.
+ *
+ * Each long holds sixteen 4-bit counters, a key is counted in four of them (one per hash function), the estimation
+ * is the minimum of the four. Once the number of increments reaches ten times the capacity, all counters are halved,
+ * so the sketch ages and keys which were popular long ago do not stay in the cache forever.
+ *
+ * Not thread-safe, guarded by the owning segment.
+ *
+ * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+ */
+final class FrequencySketch
+{
+    private static final long[] SEEDS = {
+            0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L
+    };
+
+    /**
+     * Clears the highest bit of each counter after a shift (halving).
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * The lowest bit of each counter.
+     */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] table = new long[0];
+    private int tableMask = 0;
+
+    private int sampleSize = 0;
+    private int size = 0;
+
+    /**
+     * Grows the sketch if it is smaller than the given number of keys, grown sketch loses its counts.
+     *
+     * @param maximumSize Expected number of keys.
+     */
+    void ensureCapacity(long maximumSize)
+    {
+        final int capacity = (int) Math.min(Math.max(maximumSize, MIN_CAPACITY), MAX_CAPACITY);
+        if (table.length >= capacity)
+            return;
+
+        // One long (sixteen counters) per key
+        final int length = Integer.highestOneBit(capacity - 1) << 1;
+
+        table = new long[length];
+        tableMask = length - 1;
+
+        sampleSize = (int) Math.min(10L * length, Integer.MAX_VALUE);
+        size = 0;
+    }
+
+    /**
+     * Estimates how many times a key was requested (recently).
+     *
+     * @param hashCode Hash code of a key.
+     * @return Frequency in range [0, 15].
+     */
+    int frequency(int hashCode)
+    {
+        final int hash = spread(hashCode);
+        final int start = (hash & 3) << 2;
+
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++)
+        {
+            final int index = indexOf(hash, i);
+            final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xFL);
+
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Counts a request of a key.
+     *
+     * @param hashCode Hash code of a key.
+     */
+    void increment(int hashCode)
+    {
+        final int hash = spread(hashCode);
+        final int start = (hash & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+            added |= incrementAt(indexOf(hash, i), start + i);
+
+        if (added && (++size == sampleSize))
+            reset();
+    }
+
+    private boolean incrementAt(int index, int counter)
+    {
+        final int offset = counter << 2;
+        final long mask = 0xFL << offset;
+
+        // Saturates at 15
+        if ((table[index] & mask) != mask)
+        {
+            table[index] += 1L << offset;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Halves all counters.
+     */
+    private void reset()
+    {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++)
+        {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+
+        // Each key is counted four times, halving drops the odd remainders
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i)
+    {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x)
+    {
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,47 @@
+package com.vizor.unreal.util;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates into byte buffers.
+ *
+ * This is the Java 8 version: heap buffers are inflated into their backing arrays directly, direct buffers
+ * require a copy through a scratch array. A multi-release jar replaces this class on Java 21+
+ * (see src/main/java21), where direct buffers are inflated into without any copy.
+ */
+final class Inflaters
+{
+    private Inflaters()
+    {
+        throw new AssertionError("No " + getClass() + " instances for you");
+    }
+
+    /**
+     * Inflates as much as possible into the remaining space of the buffer, advancing its position.
+     *
+     * @param inflater Inflater, which input is already set.
+     * @param dst Destination buffer.
+     * @param scratch Scratch array, used if the destination buffer has no accessible array.
+     * @return Number of bytes inflated.
+     * @throws DataFormatException If the compressed data format is invalid.
+     */
+    static int inflate(Inflater inflater, ByteBuffer dst, byte[] scratch) throws DataFormatException
+    {
+        final int bytesInflated;
+
+        if (dst.hasArray())
+        {
+            bytesInflated = inflater.inflate(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            dst.position(dst.position() + bytesInflated);
+        }
+        else
+        {
+            bytesInflated = inflater.inflate(scratch, 0, Math.min(scratch.length, dst.remaining()));
+            dst.put(scratch, 0, bytesInflated);
+        }
+
+        return bytesInflated;
+    }
+}
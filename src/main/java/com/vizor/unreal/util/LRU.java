@@ -7,6 +7,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A container collection, representing a preempting least-recently use cache.
+ * Not thread-safe, even {@link #get(Object)} changes the order, use {@link ConcurrentLRU} if the cache is shared.
  *
  * @see <a href="https://en.wikipedia.org/wiki/Cache_replacement_policies">LRU Cache</a>
  * @param <K> Key type.
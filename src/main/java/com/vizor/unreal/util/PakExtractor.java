@@ -1,5 +1,9 @@
 package com.vizor.unreal.util;
 
+import com.vizor.unreal.metrics.PakMetrics;
+import com.vizor.unreal.metrics.PakMetrics.Counter;
+import com.vizor.unreal.metrics.PakMetrics.Stage;
+import com.vizor.unreal.pak.EntryVerification;
 import com.vizor.unreal.pak.FPakCompressedBlock;
 import com.vizor.unreal.pak.FPakEntry;
 import com.vizor.unreal.pak.FPakFile;
@@ -8,14 +12,14 @@ import com.vizor.unreal.ue4.ECompressionFlags;
 import com.vizor.unreal.ue4.FAES;
 import com.vizor.unreal.ue4.FCoreDelegates;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.DoubleConsumer;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
@@ -27,27 +31,188 @@ import static com.vizor.unreal.util.Misc.toInt;
 public class PakExtractor
 {
     /**
-     * A statically-allocated entry, serves as check-entry to check pak-file integrity
+     * Maximum size of a single read. Neighbouring blocks of an entry are read at once up to this size,
+     * must be a multiple of the AES block size.
      */
-    private static final FPakEntry checkEntry = new FPakEntry();
+    private static final int MAX_READ_SIZE = 1024 * 1024;
 
     /**
-     * Key bytes must be nullified when decryption is done.
+     * Initial size of context buffers.
      */
-    private static final byte[] sharedKeyBytes = new byte[32];
+    private static final int INITIAL_BUFFER_SIZE = FPakInfo.MaxChunkDataSize * 2;
 
     /**
-     * Inflater is being used to decompress ZLIB-compressed blocks
+     * Maximum number of idle contexts kept in the pool.
      */
-    private static final Inflater inflater = new Inflater();
+    private static final int MAX_POOLED_CONTEXTS = Runtime.getRuntime().availableProcessors();
 
-    //
-    private static final ByteBuffer srcBuffer = ByteBuffer.allocate(FPakInfo.MaxChunkDataSize * 2);
-    private static final ByteBuffer dstBuffer = ByteBuffer.allocate(FPakInfo.MaxChunkDataSize * 2);
+    /**
+     * Per-thread extraction state (buffers, inflater, key bytes), so several entries can be extracted at once.
+     */
+    private static final class ExtractionContext
+    {
+        /**
+         * Serves as check-entry to check pak-file integrity
+         */
+        private final FPakEntry checkEntry = new FPakEntry();
+
+        /**
+         * Key bytes must be nullified when decryption is done.
+         */
+        private final byte[] keyBytes = new byte[32];
+
+        /**
+         * Inflater is being used to decompress ZLIB-compressed blocks
+         */
+        private final Inflater inflater = new Inflater();
+
+        /**
+         * Raw (compressed and/or encrypted) data, grows up to {@link #MAX_READ_SIZE} for large entries only,
+         * shrinks back when the context is returned to the pool.
+         */
+        private ByteBuffer srcBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        /**
+         * Inflated data.
+         */
+        private final ByteBuffer dstBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        private ByteBuffer getSrcBuffer(int minCapacity)
+        {
+            if (srcBuffer.capacity() < minCapacity)
+            {
+                srcBuffer = ByteBuffer.allocate(minCapacity);
+            }
+
+            return srcBuffer;
+        }
+    }
+
+    /**
+     * Idle extraction contexts, at most {@link #MAX_POOLED_CONTEXTS} of them. Contexts beyond the limit (created
+     * while more entries are extracted concurrently) are dropped when done, with their inflaters ended.
+     */
+    private static final Queue<ExtractionContext> contextPool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of contexts in the pool, the queue size is not constant-time.
+     */
+    private static final AtomicInteger contextPoolSize = new AtomicInteger();
+
+
+    /**
+     * Extracts a single entry into the given channel. Thread-safe: any number of entries (of the same or of
+     * different pak files) may be extracted at once, all reads are positional.
+     *
+     * @param PakFile Pak file the entry belongs to.
+     * @param entry Entry to extract.
+     * @param DestChannel Channel to write the extracted data into.
+     * @param progressConsumer Progress listener, may be null.
+     * @throws IOException If an I/O error occurs or the entry is corrupted.
+     */
+    public static void Extract(FPakFile PakFile, FPakEntry entry, WritableByteChannel DestChannel,
+                               DoubleConsumer progressConsumer) throws IOException
+    {
+        // The pak file's own channel is shared, only positional reads are used
+        Extract(PakFile, entry, PakFile::read, DestChannel, progressConsumer);
+    }
+
+    /**
+     * Extracts a single entry into the given channel, reading the entry from a custom source (for example,
+     * from an already read range of the pak file). Thread-safe as long as the source is.
+     *
+     * @param PakFile Pak file the entry belongs to.
+     * @param entry Entry to extract.
+     * @param Source Positional source of the pak file bytes, must contain the whole entry (including header).
+     * @param DestChannel Channel to write the extracted data into.
+     * @param progressConsumer Progress listener, may be null.
+     * @throws IOException If an I/O error occurs or the entry is corrupted.
+     */
+    public static void Extract(FPakFile PakFile, FPakEntry entry, PakSource Source, WritableByteChannel DestChannel,
+                               DoubleConsumer progressConsumer) throws IOException
+    {
+        Extract(PakFile, entry, Source, Objects.requireNonNull(DestChannel), null, progressConsumer);
+    }
+
+    /**
+     * Extracts a single entry straight into the given buffer (either heap or direct), starting from its position.
+     * Data is read, decrypted and inflated into the buffer itself, without intermediate copies (except direct
+     * buffers on Java 8, which can not be inflated into). The position is advanced by the size of the entry.
+     *
+     * @param PakFile Pak file the entry belongs to.
+     * @param entry Entry to extract.
+     * @param DestBuffer Buffer to extract to, must have at least {@link FPakEntry#UncompressedSize} bytes remaining.
+     * @param progressConsumer Progress listener, may be null.
+     * @throws IOException If an I/O error occurs or the entry is corrupted.
+     */
+    public static void Extract(FPakFile PakFile, FPakEntry entry, ByteBuffer DestBuffer,
+                               DoubleConsumer progressConsumer) throws IOException
+    {
+        if (DestBuffer.remaining() < entry.UncompressedSize)
+        {
+            throw new IllegalArgumentException("Your buffer of " + DestBuffer.remaining() + " remaining bytes can not " +
+                    "fit current pak entry (file) of " + entry.UncompressedSize + " bytes");
+        }
+
+        Extract(PakFile, entry, PakFile::read, null, DestBuffer, progressConsumer);
+    }
+
+    private static void Extract(FPakFile PakFile, FPakEntry entry, PakSource Source, WritableByteChannel DestChannel,
+                                ByteBuffer DestBuffer, DoubleConsumer progressConsumer) throws IOException
+    {
+        ExtractionContext context = contextPool.poll();
+        if (context != null)
+        {
+            contextPoolSize.decrementAndGet();
+        }
+        else
+        {
+            context = new ExtractionContext();
+        }
+
+        final long startTime = PakMetrics.startTimer();
+        PakMetrics.increment(Counter.ENTRIES_OPENED);
+
+        try {
+            Extract(context, PakFile, entry, Source, DestChannel, DestBuffer, progressConsumer);
+
+            PakMetrics.increment(Counter.ENTRIES_EXTRACTED);
+            PakMetrics.add(Counter.BYTES_WRITTEN, entry.UncompressedSize);
+            PakMetrics.stopTimer(Stage.EXTRACT_ENTRY, startTime);
+        }
+        finally {
+            // Nullify key bytes whatever happened
+            Arrays.fill(context.keyBytes, (byte) 0);
+            releaseContext(context);
+        }
+    }
+
+    private static void releaseContext(ExtractionContext context)
+    {
+        if (contextPoolSize.incrementAndGet() > MAX_POOLED_CONTEXTS)
+        {
+            contextPoolSize.decrementAndGet();
+
+            // Native zlib state is not freed until finalization otherwise
+            context.inflater.end();
+            return;
+        }
+
+        // Do not keep a buffer of a large entry forever
+        if (context.srcBuffer.capacity() > INITIAL_BUFFER_SIZE)
+        {
+            context.srcBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
 
+        contextPool.offer(context);
+    }
 
-    public synchronized static void Extract(FPakFile PakFile, FPakEntry entry, WritableByteChannel DestChannel,
-                                            DoubleConsumer progressConsumer) throws IOException
+    /**
+     * Exactly one of DestChannel and DestBuffer must be non-null.
+     */
+    private static void Extract(ExtractionContext context, FPakFile PakFile, FPakEntry entry, PakSource Source,
+                                WritableByteChannel DestChannel, ByteBuffer DestBuffer,
+                                DoubleConsumer progressConsumer) throws IOException
     {
         if (progressConsumer != null)
         {
@@ -55,25 +220,17 @@ public class PakExtractor
         }
 
         final FPakInfo PakInfo = PakFile.getInfo();
-        final FileInputStream PakInputStream = PakFile.inputStream;
-
-        // Might use cached channel if any has already created, this must be stable
-        final FileChannel SourceChannel = PakInputStream.getChannel();
 
-        // Deserialize header once again
+        // Header is stored in front of the data
         final long entrySerializedSize = entry.GetSerializedSize(PakInfo.Version);
 
-        checkEntry.clean();
-        checkEntry.Deserialize(SourceChannel.map(MapMode.READ_ONLY, entry.Offset, entrySerializedSize), PakInfo.Version);
-
-        // Compare entries
-        if (!entry.equals(checkEntry))
+        final EntryVerification verification = PakFile.getEntryVerification();
+        if (verification == EntryVerification.ALWAYS || (verification == EntryVerification.ONCE && !entry.Verified))
         {
-            throw new IllegalStateException(String.join(System.lineSeparator(), Arrays.asList(
-                "Entry is invalid!",
-                " > Index entry: " + entry.toString(),
-                " > Check entry: " + checkEntry.toString()
-            )));
+            VerifyEntryHeader(context, entry, Source, PakInfo.Version, entrySerializedSize);
+
+            // Races are harmless here, the header might only be checked twice
+            entry.Verified = true;
         }
 
         final boolean bEntryIsEncrypted = entry.IsEncrypted();
@@ -81,7 +238,7 @@ public class PakExtractor
         // Acquire key if entry is encrypted to save resources
         if (bEntryIsEncrypted)
         {
-            FCoreDelegates.GetPakEncryptionKeyDelegate().Execute(sharedKeyBytes);
+            FCoreDelegates.GetPakEncryptionKeyDelegate().Execute(context.keyBytes);
         }
 
         final long entrySize = entry.Size;
@@ -96,9 +253,13 @@ public class PakExtractor
 
                 while (BytesRemaining > 0)
                 {
-                    final long BytesToRead = Math.min(FPakInfo.MaxChunkDataSize, BytesRemaining);
+                    // Uncompressed data is contiguous, so read as much as possible at once
+                    final long BytesToRead = Math.min(MAX_READ_SIZE, BytesRemaining);
 
-                    ExtractBlock(SourceChannel, DestChannel, Offset, toInt(BytesToRead), bEntryIsEncrypted, false);
+                    if (DestBuffer != null)
+                        ExtractBlock(context, Source, DestBuffer, Offset, toInt(BytesToRead), bEntryIsEncrypted);
+                    else
+                        ExtractBlock(context, Source, DestChannel, Offset, toInt(BytesToRead), bEntryIsEncrypted);
 
                     Offset += BytesToRead;
                     BytesRemaining -= BytesToRead;
@@ -113,23 +274,46 @@ public class PakExtractor
             }
             case ECompressionFlags.COMPRESS_ZLIB:
             {
+                final FPakCompressedBlock[] Blocks = entry.CompressionBlocks;
+                final long GlobalOffset = BOOL(PakInfo.HasRelativeCompressedChunkOffsets()) ? entry.Offset : 0;
+
                 long bytesProcessed = 0;
 
-                for (final FPakCompressedBlock Block : entry.CompressionBlocks)
+                int FirstBlock = 0;
+                while (FirstBlock < Blocks.length)
                 {
-                    final long GlobalOffset = BOOL(PakFile.getInfo().HasRelativeCompressedChunkOffsets()) ? entry.Offset : 0;
-                    final long Offset = GlobalOffset + Block.CompressedStart;
-                    final long BytesToRead = Block.CompressedEnd - Block.CompressedStart;
+                    // Find a run of contiguous blocks, which fits a single read
+                    final long ReadStart = GlobalOffset + Blocks[FirstBlock].CompressedStart;
+                    long ReadEnd = ReadStart + GetBlockReadSize(Blocks[FirstBlock], bEntryIsEncrypted);
+
+                    int LastBlock = FirstBlock + 1;
+                    while (LastBlock < Blocks.length)
+                    {
+                        final long NextStart = GlobalOffset + Blocks[LastBlock].CompressedStart;
+                        final long NextEnd = NextStart + GetBlockReadSize(Blocks[LastBlock], bEntryIsEncrypted);
+
+                        if (NextStart != ReadEnd || (NextEnd - ReadStart) > MAX_READ_SIZE)
+                            break;
 
-                    ExtractBlock(SourceChannel, DestChannel, Offset, (int) BytesToRead, bEntryIsEncrypted, true);
+                        ReadEnd = NextEnd;
+                        LastBlock++;
+                    }
 
-                    bytesProcessed += (Block.CompressedEnd - Block.CompressedStart);
+                    ExtractCompressedBlocks(context, Source, DestChannel, DestBuffer, Blocks, FirstBlock, LastBlock,
+                            GlobalOffset, ReadStart, toInt(ReadEnd - ReadStart), bEntryIsEncrypted);
+
+                    for (int i = FirstBlock; i < LastBlock; i++)
+                    {
+                        bytesProcessed += (Blocks[i].CompressedEnd - Blocks[i].CompressedStart);
+                    }
 
                     // Report progress
                     if (progressConsumer != null)
                     {
                         progressConsumer.accept((double)bytesProcessed / entrySize);
                     }
+
+                    FirstBlock = LastBlock;
                 }
                 break;
             }
@@ -138,70 +322,270 @@ public class PakExtractor
                 throw new IOException("Unsupported compression method: " + ECompressionFlags.StaticToString(entry.CompressionMethod));
             }
         }
+    }
 
-        // Nullify key bytes if node was encrypted
-        if (bEntryIsEncrypted)
+    private static void VerifyEntryHeader(ExtractionContext context, FPakEntry entry, PakSource Source, int Version,
+                                          long entrySerializedSize) throws IOException
+    {
+        final FPakEntry checkEntry = context.checkEntry;
+
+        // Headers of huge entries (thousands of blocks) may not fit the shared buffer
+        final ByteBuffer headerBuffer = (entrySerializedSize <= MAX_READ_SIZE) ?
+                context.getSrcBuffer(toInt(entrySerializedSize)) : ByteBuffer.allocate(toInt(entrySerializedSize));
+
+        // Deserialize header once again, using a plain positional read
+        headerBuffer.position(0).limit(toInt(entrySerializedSize));
+        readFully(Source, headerBuffer, entry.Offset);
+        headerBuffer.flip();
+
+        checkEntry.clean();
+        checkEntry.Deserialize(headerBuffer, Version);
+
+        // Compare entries
+        if (!entry.equals(checkEntry))
         {
-            Arrays.fill(sharedKeyBytes, (byte) 0);
+            throw new IllegalStateException(String.join(System.lineSeparator(), Arrays.asList(
+                "Entry is invalid!",
+                " > Index entry: " + entry.toString(),
+                " > Check entry: " + checkEntry.toString()
+            )));
         }
     }
 
+    /**
+     * Gets the number of bytes to read for a compressed block, checks the block size first, so a corrupted index
+     * can not make the extractor allocate a huge buffer.
+     */
+    private static long GetBlockReadSize(FPakCompressedBlock Block, boolean isEncrypted) throws IOException
+    {
+        final long blockSize = Block.CompressedEnd - Block.CompressedStart;
+        final long readSize = isEncrypted ? Align(blockSize, FAES.getBlockSize()) : blockSize;
+
+        // Check block size
+        if (blockSize < 0 || readSize > MAX_READ_SIZE)
+        {
+            throw new IOException("Illegal block size: " + blockSize + ", must be within 0.." + MAX_READ_SIZE);
+        }
+
+        return readSize;
+    }
 
-    private static void ExtractBlock(SeekableByteChannel srcChannel, WritableByteChannel dstChannel,
-                                     final long BlockOffset, final int blockSize,
-                                     final boolean isEncrypted, final boolean isCompressed)
+    private static void ExtractBlock(ExtractionContext context, PakSource srcChannel, WritableByteChannel dstChannel,
+                                     final long BlockOffset, final int blockSize, final boolean isEncrypted)
             throws IOException
     {
         // Check block size
-        if (blockSize < 0 || blockSize > srcBuffer.capacity())
+        if (blockSize < 0 || blockSize > MAX_READ_SIZE)
         {
-            throw new IOException("Illegal block size: " + blockSize + ", must be within 0.." + srcBuffer.capacity());
+            throw new IOException("Illegal block size: " + blockSize + ", must be within 0.." + MAX_READ_SIZE);
         }
 
+        final int readSize = isEncrypted ? Align(blockSize, FAES.getBlockSize()) : blockSize;
+        final ByteBuffer srcBuffer = context.getSrcBuffer(readSize);
+
         // Rewind buffer and set limit
         srcBuffer.position(0);
-        srcBuffer.limit(isEncrypted ? Align(blockSize, FAES.getBlockSize()) : blockSize);
+        srcBuffer.limit(readSize);
 
-        // Read data
-        srcChannel.position(BlockOffset);
-        srcChannel.read(srcBuffer);
+        // Read data, never touch the channel's position as it may be shared between threads
+        readFully(srcChannel, srcBuffer, BlockOffset);
 
-        // Decrypt data if necessary, sharedKeyBytes must be already acquired if entry is encrypted
+        // Decrypt data if necessary, key bytes must be already acquired if entry is encrypted
         if (isEncrypted)
         {
-            FAES.DecryptData(srcBuffer.array(), srcBuffer.limit(), sharedKeyBytes);
+            Decrypt(srcBuffer.array(), srcBuffer.limit(), context.keyBytes);
         }
 
-        // Decompress or just write
-        if (isCompressed)
+        final long startTime = PakMetrics.startTimer();
+        dstChannel.write((ByteBuffer) srcBuffer.position(0).limit(blockSize));
+        PakMetrics.stopTimer(Stage.EXTRACT_WRITE, startTime);
+
+        PakMetrics.increment(Counter.BLOCKS_PROCESSED);
+    }
+
+    /**
+     * Reads data directly into the destination buffer, only the trailing partial AES block of an encrypted entry
+     * goes through the context buffer (there might be no room for the padding in the destination).
+     */
+    private static void ExtractBlock(ExtractionContext context, PakSource srcChannel, ByteBuffer dstBuffer,
+                                     final long BlockOffset, final int blockSize, final boolean isEncrypted)
+            throws IOException
+    {
+        final int directSize = isEncrypted ? (blockSize & -FAES.getBlockSize()) : blockSize;
+
+        if (directSize > 0)
         {
-            inflater.reset();
-            inflater.setInput(srcBuffer.array(), 0, srcBuffer.limit());
+            final ByteBuffer target = dstBuffer.duplicate();
+            target.limit(target.position() + directSize);
 
-            // Read until inflater is finished
-            while (!inflater.finished())
+            readFully(srcChannel, target, BlockOffset);
+
+            if (isEncrypted)
             {
-                try {
-                    if (inflater.needsInput())
-                    {
-                        throw new IOException("Inflater is not ready to inflate");
-                    }
+                Decrypt(dstBuffer, directSize, context.keyBytes);
+            }
+
+            dstBuffer.position(dstBuffer.position() + directSize);
+        }
+
+        final int tailSize = blockSize - directSize;
+        if (tailSize > 0)
+        {
+            final ByteBuffer srcBuffer = context.getSrcBuffer(FAES.getBlockSize());
+
+            srcBuffer.position(0);
+            srcBuffer.limit(FAES.getBlockSize());
+
+            readFully(srcChannel, srcBuffer, BlockOffset + directSize);
+            Decrypt(srcBuffer.array(), FAES.getBlockSize(), context.keyBytes);
+
+            dstBuffer.put(srcBuffer.array(), 0, tailSize);
+        }
+
+        PakMetrics.increment(Counter.BLOCKS_PROCESSED);
+    }
+
+    private static void ExtractCompressedBlocks(ExtractionContext context, PakSource srcChannel,
+                                                WritableByteChannel dstChannel, ByteBuffer dstBuffer,
+                                                FPakCompressedBlock[] Blocks, int FirstBlock, int LastBlock, long GlobalOffset,
+                                                long ReadOffset, int ReadSize, boolean isEncrypted)
+            throws IOException
+    {
+        final ByteBuffer srcBuffer = context.getSrcBuffer(ReadSize);
+
+        // Read all blocks at once
+        srcBuffer.position(0);
+        srcBuffer.limit(ReadSize);
+
+        readFully(srcChannel, srcBuffer, ReadOffset);
+
+        // Blocks are contiguous and each of them is aligned, so the whole range decrypts at once
+        if (isEncrypted)
+        {
+            Decrypt(srcBuffer.array(), ReadSize, context.keyBytes);
+        }
 
-                    final int bytesInflated = inflater.inflate(dstBuffer.array());
+        // Then inflate block by block
+        for (int i = FirstBlock; i < LastBlock; i++)
+        {
+            final int BlockOffset = toInt(GlobalOffset + Blocks[i].CompressedStart - ReadOffset);
+            final int BlockReadSize = toInt(GetBlockReadSize(Blocks[i], isEncrypted));
+
+            if (dstBuffer != null)
+                InflateBlock(context, srcBuffer.array(), BlockOffset, BlockReadSize, dstBuffer);
+            else
+                InflateBlock(context, srcBuffer.array(), BlockOffset, BlockReadSize, dstChannel);
+        }
+    }
+
+    private static void InflateBlock(ExtractionContext context, byte[] src, int srcOffset, int srcLength,
+                                     WritableByteChannel dstChannel) throws IOException
+    {
+        final ByteBuffer dstBuffer = context.dstBuffer;
+        final Inflater inflater = context.inflater;
 
-                    dstBuffer.position(0);
-                    dstBuffer.limit(bytesInflated);
+        inflater.reset();
+        inflater.setInput(src, srcOffset, srcLength);
 
-                    dstChannel.write(dstBuffer);
+        PakMetrics.increment(Counter.BLOCKS_PROCESSED);
+
+        // Read until inflater is finished
+        while (!inflater.finished())
+        {
+            try {
+                if (inflater.needsInput())
+                {
+                    throw new IOException("Inflater is not ready to inflate");
                 }
-                catch (DataFormatException e) {
-                    throw new IOException(e);
+
+                final long inflateStartTime = PakMetrics.startTimer();
+                final int bytesInflated = inflater.inflate(dstBuffer.array());
+                PakMetrics.stopTimer(Stage.EXTRACT_INFLATE, inflateStartTime);
+                PakMetrics.add(Counter.BYTES_INFLATED, bytesInflated);
+
+                dstBuffer.position(0);
+                dstBuffer.limit(bytesInflated);
+
+                final long writeStartTime = PakMetrics.startTimer();
+                dstChannel.write(dstBuffer);
+                PakMetrics.stopTimer(Stage.EXTRACT_WRITE, writeStartTime);
+            }
+            catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private static void InflateBlock(ExtractionContext context, byte[] src, int srcOffset, int srcLength,
+                                     ByteBuffer dstBuffer) throws IOException
+    {
+        final Inflater inflater = context.inflater;
+
+        inflater.reset();
+        inflater.setInput(src, srcOffset, srcLength);
+
+        PakMetrics.increment(Counter.BLOCKS_PROCESSED);
+
+        // Inflate right into the destination
+        while (!inflater.finished())
+        {
+            try {
+                if (inflater.needsInput())
+                {
+                    throw new IOException("Inflater is not ready to inflate");
                 }
+
+                final long startTime = PakMetrics.startTimer();
+                final int bytesInflated = Inflaters.inflate(inflater, dstBuffer, context.dstBuffer.array());
+                PakMetrics.stopTimer(Stage.EXTRACT_INFLATE, startTime);
+                PakMetrics.add(Counter.BYTES_INFLATED, bytesInflated);
+
+                if (bytesInflated == 0 && !dstBuffer.hasRemaining())
+                {
+                    throw new IOException("Inflated data does not fit the destination buffer");
+                }
+            }
+            catch (DataFormatException e) {
+                throw new IOException(e);
             }
         }
-        else
+    }
+
+    private static void Decrypt(byte[] data, int size, byte[] keyBytes)
+    {
+        final long startTime = PakMetrics.startTimer();
+        FAES.DecryptData(data, size, keyBytes);
+        PakMetrics.stopTimer(Stage.EXTRACT_DECRYPT, startTime);
+
+        PakMetrics.add(Counter.BYTES_DECRYPTED, size);
+    }
+
+    private static void Decrypt(ByteBuffer data, int size, byte[] keyBytes)
+    {
+        final long startTime = PakMetrics.startTimer();
+        FAES.DecryptData(data, size, keyBytes);
+        PakMetrics.stopTimer(Stage.EXTRACT_DECRYPT, startTime);
+
+        PakMetrics.add(Counter.BYTES_DECRYPTED, size);
+    }
+
+    private static void readFully(PakSource srcChannel, ByteBuffer buffer, long position) throws IOException
+    {
+        final long startTime = PakMetrics.startTimer();
+        final long startPosition = position;
+
+        while (buffer.hasRemaining())
         {
-            dstChannel.write((ByteBuffer) srcBuffer.position(0).limit(blockSize));
+            final int bytesRead = srcChannel.read(buffer, position);
+            if (bytesRead < 0)
+            {
+                throw new IOException("Unexpected end of pak file at " + position + " (reading from " + startPosition + ")");
+            }
+
+            position += bytesRead;
         }
+
+        PakMetrics.stopTimer(Stage.EXTRACT_READ, startTime);
+        PakMetrics.add(Counter.BYTES_READ, position - startPosition);
     }
 }
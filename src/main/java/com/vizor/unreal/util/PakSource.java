@@ -0,0 +1,23 @@
+package com.vizor.unreal.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Positional source of pak file bytes. Reads must not depend on (or change) any shared position, so a single
+ * source can be used by many threads at once. {@link java.nio.channels.FileChannel#read(ByteBuffer, long)}
+ * is a valid source.
+ */
+@FunctionalInterface
+public interface PakSource
+{
+    /**
+     * Reads a sequence of bytes, starting at the given absolute position in the pak file.
+     *
+     * @param dst The buffer into which bytes are to be transferred.
+     * @param position Absolute position in the pak file.
+     * @return Number of bytes read (possibly zero), or -1 if the position is beyond the end of the source.
+     * @throws IOException If an I/O error occurs.
+     */
+    int read(ByteBuffer dst, long position) throws IOException;
+}
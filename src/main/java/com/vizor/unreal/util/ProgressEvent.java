@@ -0,0 +1,125 @@
+package com.vizor.unreal.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable progress of a job (packing or extraction of many entries) at some moment.
+ */
+public final class ProgressEvent
+{
+    private final long bytesDone;
+    private final long bytesTotal;
+    private final int entriesDone;
+    private final int entriesTotal;
+    private final String currentEntry;
+    private final long elapsedNanos;
+    private final boolean finished;
+
+    ProgressEvent(long bytesDone, long bytesTotal, int entriesDone, int entriesTotal, String currentEntry,
+                  long elapsedNanos, boolean finished)
+    {
+        this.bytesDone = bytesDone;
+        this.bytesTotal = bytesTotal;
+        this.entriesDone = entriesDone;
+        this.entriesTotal = entriesTotal;
+        this.currentEntry = currentEntry;
+        this.elapsedNanos = elapsedNanos;
+        this.finished = finished;
+    }
+
+    public long getBytesDone()
+    {
+        return bytesDone;
+    }
+
+    public long getBytesTotal()
+    {
+        return bytesTotal;
+    }
+
+    public int getEntriesDone()
+    {
+        return entriesDone;
+    }
+
+    public int getEntriesTotal()
+    {
+        return entriesTotal;
+    }
+
+    /**
+     * Gets the name of the entry most recently started.
+     *
+     * @return Entry name, null if no entry was started yet.
+     */
+    public String getCurrentEntry()
+    {
+        return currentEntry;
+    }
+
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    /**
+     * Checks whether this is the last event of the job.
+     *
+     * @return True if the job is finished.
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * Gets the done part of the job, by bytes.
+     *
+     * @return Progress in range [0, 1], 1 if the job has no bytes at all.
+     */
+    public double getFraction()
+    {
+        if (bytesTotal <= 0)
+            return 1.0;
+
+        return Math.min(Math.max((double) bytesDone / bytesTotal, 0.0), 1.0);
+    }
+
+    /**
+     * Gets the average throughput since the job was started.
+     *
+     * @return Bytes per second, 0 if nothing was done yet.
+     */
+    public double getBytesPerSecond()
+    {
+        if (elapsedNanos <= 0)
+            return 0.0;
+
+        return bytesDone * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Estimates the remaining time by the average throughput.
+     *
+     * @return Estimated remaining time in nanoseconds, -1 if it can not be estimated yet.
+     */
+    public long getEtaNanos()
+    {
+        final double bytesPerSecond = getBytesPerSecond();
+        if (bytesPerSecond <= 0.0)
+            return -1;
+
+        return (long) (Math.max(bytesTotal - bytesDone, 0L) / bytesPerSecond * 1e9);
+    }
+
+    @Override
+    public String toString()
+    {
+        final long eta = getEtaNanos();
+
+        return String.format("%.1f%% (%d/%d entries), %.2f MiB/s, ETA %s%s",
+                getFraction() * 100.0, entriesDone, entriesTotal, getBytesPerSecond() / (1024 * 1024),
+                (eta >= 0) ? (TimeUnit.NANOSECONDS.toSeconds(eta) + "s") : "unknown",
+                (currentEntry != null && !finished) ? (", " + currentEntry) : "");
+    }
+}
@@ -0,0 +1,16 @@
+package com.vizor.unreal.util;
+
+/**
+ * Receives throttled progress of a job, see {@link ProgressTracker}.
+ */
+@FunctionalInterface
+public interface ProgressListener
+{
+    /**
+     * Called at most once per reporting interval, and once when the job is finished. Calls are never concurrent,
+     * but might come from different threads.
+     *
+     * @param event Progress of the job.
+     */
+    void onProgress(ProgressEvent event);
+}
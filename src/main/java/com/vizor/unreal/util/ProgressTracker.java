@@ -0,0 +1,246 @@
+package com.vizor.unreal.util;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks progress of a whole job (packing or extraction of many entries) and reports it to listeners, throttled:
+ * an event is sent once the reporting interval has elapsed or enough bytes were done since the previous event,
+ * whichever comes first. The last event is always sent by {@link #finish()}.
+ *
+ * Thread-safe, workers report bytes and entries concurrently. The job can be cancelled from any thread,
+ * workers then fail with a {@link CancellationException} next time they report their progress.
+ */
+public final class ProgressTracker
+{
+    /**
+     * A builder used to construct a tracker.
+     */
+    public static final class Builder
+    {
+        private final List<ProgressListener> listeners = new CopyOnWriteArrayList<>();
+        private long intervalNanos = TimeUnit.MILLISECONDS.toNanos(200);
+        private long byteInterval = Long.MAX_VALUE;
+
+        private Builder()
+        {
+        }
+
+        public Builder listener(ProgressListener value)
+        {
+            listeners.add(Objects.requireNonNull(value));
+            return this;
+        }
+
+        /**
+         * Sets the minimum time between two events.
+         *
+         * @param value Interval, zero reports every change.
+         * @param unit Time unit of the interval.
+         * @return This builder.
+         */
+        public Builder interval(long value, TimeUnit unit)
+        {
+            if (value < 0)
+                throw new IllegalArgumentException("Interval must not be negative, given: " + value);
+
+            intervalNanos = unit.toNanos(value);
+            return this;
+        }
+
+        /**
+         * Sets the number of bytes, which triggers an event even if the interval has not elapsed yet.
+         *
+         * @param value Number of bytes, must be positive.
+         * @return This builder.
+         */
+        public Builder byteInterval(long value)
+        {
+            if (value <= 0)
+                throw new IllegalArgumentException("Byte interval must be positive, given: " + value);
+
+            byteInterval = value;
+            return this;
+        }
+
+        public ProgressTracker build()
+        {
+            return new ProgressTracker(this);
+        }
+    }
+
+    private final List<ProgressListener> listeners;
+    private final long intervalNanos;
+    private final long byteInterval;
+
+    private volatile long bytesTotal = 0;
+    private volatile int entriesTotal = 0;
+    private volatile long startTime = 0;
+    private volatile String currentEntry = null;
+    private volatile boolean cancelled = false;
+
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicInteger entriesDone = new AtomicInteger();
+
+    private final AtomicLong lastReportTime = new AtomicLong();
+    private volatile long lastReportBytes = 0;
+
+    private ProgressTracker(Builder builder)
+    {
+        this.listeners = builder.listeners;
+        this.intervalNanos = builder.intervalNanos;
+        this.byteInterval = builder.byteInterval;
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Adds a listener.
+     *
+     * @param listener Progress listener.
+     */
+    public void addListener(ProgressListener listener)
+    {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    /**
+     * Starts the job, resets all progress.
+     *
+     * @param totalBytes Total number of bytes to be done.
+     * @param totalEntries Total number of entries to be done.
+     */
+    public void start(long totalBytes, int totalEntries)
+    {
+        bytesTotal = totalBytes;
+        entriesTotal = totalEntries;
+
+        bytesDone.set(0);
+        entriesDone.set(0);
+        currentEntry = null;
+
+        startTime = System.nanoTime();
+        lastReportTime.set(startTime);
+        lastReportBytes = 0;
+    }
+
+    /**
+     * Marks an entry as the current one.
+     *
+     * @param name Entry name.
+     * @throws CancellationException If the job was cancelled.
+     */
+    public void beginEntry(String name)
+    {
+        checkCancelled();
+        currentEntry = name;
+    }
+
+    /**
+     * Adds done bytes, sends an event if it is time to.
+     *
+     * @param numBytes Number of bytes done.
+     * @throws CancellationException If the job was cancelled.
+     */
+    public void addBytes(long numBytes)
+    {
+        checkCancelled();
+
+        final long done = bytesDone.addAndGet(numBytes);
+        maybeReport(done);
+    }
+
+    /**
+     * Marks an entry as done, sends an event if it is time to.
+     *
+     * @throws CancellationException If the job was cancelled.
+     */
+    public void endEntry()
+    {
+        entriesDone.incrementAndGet();
+
+        checkCancelled();
+        maybeReport(bytesDone.get());
+    }
+
+    /**
+     * Finishes the job and sends the last event, unless it was cancelled.
+     */
+    public void finish()
+    {
+        if (!cancelled)
+            report(true);
+    }
+
+    /**
+     * Requests cancellation of the job, workers stop as soon as they report their progress.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Fails if the job was cancelled.
+     *
+     * @throws CancellationException If the job was cancelled.
+     */
+    public void checkCancelled()
+    {
+        if (cancelled)
+            throw new CancellationException("Cancelled");
+    }
+
+    /**
+     * Gets the progress right now, does not send anything to listeners.
+     *
+     * @return Progress of the job.
+     */
+    public ProgressEvent snapshot()
+    {
+        return newEvent(System.nanoTime(), false);
+    }
+
+    private void maybeReport(long done)
+    {
+        final long now = System.nanoTime();
+        final long last = lastReportTime.get();
+
+        if ((now - last >= intervalNanos) || (done - lastReportBytes >= byteInterval))
+        {
+            // Only a single thread reports per interval
+            if (lastReportTime.compareAndSet(last, now))
+            {
+                lastReportBytes = done;
+                report(false);
+            }
+        }
+    }
+
+    private synchronized void report(boolean finished)
+    {
+        final ProgressEvent event = newEvent(System.nanoTime(), finished);
+
+        for (final ProgressListener listener : listeners)
+            listener.onProgress(event);
+    }
+
+    private ProgressEvent newEvent(long now, boolean finished)
+    {
+        return new ProgressEvent(bytesDone.get(), bytesTotal, entriesDone.get(), entriesTotal, currentEntry,
+                now - startTime, finished);
+    }
+}
@@ -1,42 +1,12 @@
 package com.vizor.unreal.util;
 
-import com.vizor.unreal.annotations.FStruct;
-import com.vizor.unreal.annotations.StaticSize;
-
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 
 @SuppressWarnings({"unused", "SameReturnValue"})
 public class Sizeof
 {
-    private static final Map<Class<?>, Integer> sizeCache = new HashMap<>();
-
-    static {
-        // 1 byte
-        sizeCache.put(boolean.class, Byte.BYTES);
-        sizeCache.put(byte.class, Byte.BYTES);
-
-        // 2 bytes
-        sizeCache.put(short.class, Short.BYTES);
-        sizeCache.put(char.class, Character.BYTES);
-
-        // 4 bytes
-        sizeCache.put(int.class, Integer.BYTES);
-        sizeCache.put(float.class, Float.BYTES);
-
-        // 8 bytes
-        sizeCache.put(long.class, Long.BYTES);
-        sizeCache.put(double.class, Double.BYTES);
-
-        // 0 bytes
-        sizeCache.put(void.class, 0);
-    }
-
-
     // Size of primitives
     public static int sizeof(boolean $) { return Byte.BYTES; }
     public static int sizeof(byte $)    { return Byte.BYTES; }
@@ -87,45 +57,14 @@ public class Sizeof
 
     private static int getStructSize(final Class<?> clazz)
     {
-        final Integer cachedSize = sizeCache.get(clazz);
-        if (cachedSize != null)
-        {
-            // Already cached (works for primitives as well)
-            return cachedSize;
-        }
-        else if (clazz.isAnnotationPresent(FStruct.class))
-        {
-            // Mustn't have any superclasses
-            if (Object.class == clazz.getSuperclass())
-            {
-                int size = 0;
-                for (final Field field : clazz.getDeclaredFields())
-                {
-                    // Exclude static
-                    if (!Modifier.isStatic(field.getModifiers()))
-                    {
-                        final StaticSize staticSize = field.getAnnotation(StaticSize.class);
-
-                        final int elementSize = getStructSize(field.getType());
-                        final int dimension = staticSize != null ? staticSize.value() : 1;
-
-                        size += elementSize * dimension;
-                    }
-                }
-
-                sizeCache.put(clazz, size);
-                return size;
-            }
-            else
-            {
-                throw new RuntimeException("\"" + classToString(clazz) + "\" must only extend java.lang.Object");
-            }
-
-        }
-        else
+        // Computed once per class (works for primitives as well)
+        final int size = TypeMetadata.of(clazz).getSize();
+        if (size < 0)
         {
             throw new RuntimeException("\"" + classToString(clazz) + "\" must only extend java.lang.Object");
         }
+
+        return size;
     }
 
     private static String classToString(final Class<?> clazz)
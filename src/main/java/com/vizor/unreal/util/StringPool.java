@@ -0,0 +1,151 @@
+package com.vizor.unreal.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Deduplicates strings which repeat a lot (like directory names of pak entries).
+ *
+ * Strings are looked up by a range of ASCII bytes or characters, so a hit allocates nothing, a miss creates
+ * a new string and remembers it. The pool is not thread-safe, it is meant to be used by a single loader.
+ */
+public final class StringPool
+{
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String[] table = new String[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Gets a pooled string consisting of the given single-byte characters (bytes are mapped to characters
+     * as is, like ISO-8859-1 does, which is the same as ASCII for valid ASCII strings).
+     *
+     * @param b A buffer, its position and limit are ignored (and not changed).
+     * @param offset Absolute offset of the first byte.
+     * @param length Number of bytes.
+     * @return A pooled string.
+     */
+    public String get(ByteBuffer b, int offset, int length)
+    {
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + (b.get(offset + i) & 0xFF);
+
+        final int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask)
+        {
+            final String s = table[slot];
+            if (s == null)
+            {
+                final byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++)
+                    bytes[i] = b.get(offset + i);
+
+                return add(slot, new String(bytes, StandardCharsets.ISO_8859_1));
+            }
+
+            if (s.hashCode() == hash && equals(s, b, offset, length))
+                return s;
+        }
+    }
+
+    /**
+     * Gets a pooled string equal to the given range of characters.
+     *
+     * @param cs A sequence of characters.
+     * @param start Index of the first character (inclusive).
+     * @param end Index of the last character (exclusive).
+     * @return A pooled string.
+     */
+    public String get(CharSequence cs, int start, int end)
+    {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + cs.charAt(i);
+
+        final int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask)
+        {
+            final String s = table[slot];
+            if (s == null)
+            {
+                return add(slot, cs.subSequence(start, end).toString());
+            }
+
+            if (s.hashCode() == hash && equals(s, cs, start, end))
+                return s;
+        }
+    }
+
+    /**
+     * Gets the number of distinct strings in the pool.
+     *
+     * @return Number of strings.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private String add(int slot, String s)
+    {
+        table[slot] = s;
+
+        // Keep the load factor under 1/2
+        if (++size * 2 > table.length)
+        {
+            final String[] oldTable = table;
+            table = new String[oldTable.length * 2];
+
+            final int mask = table.length - 1;
+            for (final String e : oldTable)
+            {
+                if (e != null)
+                {
+                    int i = mix(e.hashCode()) & mask;
+                    while (table[i] != null)
+                        i = (i + 1) & mask;
+
+                    table[i] = e;
+                }
+            }
+        }
+
+        return s;
+    }
+
+    private static int mix(int hash)
+    {
+        // Spread poor hashes of short strings
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(String s, ByteBuffer b, int offset, int length)
+    {
+        if (s.length() != length)
+            return false;
+
+        for (int i = 0; i < length; i++)
+        {
+            if (s.charAt(i) != (b.get(offset + i) & 0xFF))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean equals(String s, CharSequence cs, int start, int end)
+    {
+        if (s.length() != end - start)
+            return false;
+
+        for (int i = start; i < end; i++)
+        {
+            if (s.charAt(i - start) != cs.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+}
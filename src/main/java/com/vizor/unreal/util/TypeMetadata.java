@@ -0,0 +1,171 @@
+package com.vizor.unreal.util;
+
+import com.vizor.unreal.annotations.FStruct;
+import com.vizor.unreal.annotations.StaticSize;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+
+/**
+ * Per-class metadata used by {@link Sizeof} and {@link UE4Deserializer}: static size, no-argument constructor
+ * and array reader. Everything is computed once per class, when the class is first asked for.
+ *
+ * Backed by a {@link ClassValue}, so lookups are lock-free and safe from any number of threads, and metadata
+ * does not keep classes from being unloaded.
+ */
+final class TypeMetadata
+{
+    /**
+     * Reads an array of a certain component type, the number of elements is already read.
+     */
+    @FunctionalInterface
+    interface ArrayReader
+    {
+        Object read(ByteBuffer b, int numElements);
+    }
+
+    private static final ClassValue<TypeMetadata> registry = new ClassValue<TypeMetadata>()
+    {
+        @Override
+        protected TypeMetadata computeValue(Class<?> type)
+        {
+            return new TypeMetadata(type);
+        }
+    };
+
+    /**
+     * Size in bytes, or -1 if the type has no static size.
+     */
+    private final int size;
+
+    /**
+     * A no-argument constructor, null if the type has none.
+     */
+    private final Constructor<?> noArgConstructor;
+
+    /**
+     * Reader of arrays of this type (as a component), null if arrays of this type can not be read.
+     */
+    private final ArrayReader arrayReader;
+
+    private final Class<?> type;
+
+    private TypeMetadata(Class<?> type)
+    {
+        this.type = type;
+        this.size = computeSize(type);
+        this.noArgConstructor = findNoArgConstructor(type);
+        this.arrayReader = UE4Deserializer.newArrayReader(type);
+    }
+
+    static TypeMetadata of(Class<?> type)
+    {
+        return registry.get(type);
+    }
+
+    /**
+     * Gets a static size of the type.
+     *
+     * @return Size in bytes or -1 if the type has no static size.
+     */
+    int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Gets a reader of arrays, which component type is this type.
+     *
+     * @return Array reader, null if arrays of this type can not be read.
+     */
+    ArrayReader getArrayReader()
+    {
+        return arrayReader;
+    }
+
+    /**
+     * Creates a new instance of the type with its no-argument constructor.
+     *
+     * @return A new instance.
+     */
+    Object newInstance()
+    {
+        if (noArgConstructor == null)
+        {
+            throw new RuntimeException(type.getName() + " should have a no-argument constructor to be read");
+        }
+
+        try {
+            return noArgConstructor.newInstance();
+        }
+        catch (IllegalAccessException e) {
+            throw new RuntimeException("A no-argument constructor of " + type.getName() + " must be public (accessible)", e);
+        }
+        catch (InstantiationException | InvocationTargetException e) {
+            throw new RuntimeException("Unable to instantiate " + type.getName(), e);
+        }
+    }
+
+    private static int computeSize(Class<?> type)
+    {
+        if (type.isPrimitive())
+        {
+            if (type == boolean.class || type == byte.class)
+                return Byte.BYTES;
+            else if (type == short.class || type == char.class)
+                return Short.BYTES;
+            else if (type == int.class || type == float.class)
+                return Integer.BYTES;
+            else if (type == long.class || type == double.class)
+                return Long.BYTES;
+            else
+                return 0; // void
+        }
+
+        // Mustn't have any superclasses
+        if (!type.isAnnotationPresent(FStruct.class) || Object.class != type.getSuperclass())
+        {
+            return -1;
+        }
+
+        int size = 0;
+        for (final Field field : type.getDeclaredFields())
+        {
+            // Exclude static
+            if (!Modifier.isStatic(field.getModifiers()))
+            {
+                final StaticSize staticSize = field.getAnnotation(StaticSize.class);
+
+                // Static size arrays are measured by their elements
+                final Class<?> elementType = (staticSize != null && field.getType().isArray()) ?
+                        field.getType().getComponentType() : field.getType();
+
+                final int elementSize = of(elementType).size;
+                final int dimension = staticSize != null ? staticSize.value() : 1;
+
+                if (elementSize < 0)
+                    return -1;
+
+                size += elementSize * dimension;
+            }
+        }
+
+        return size;
+    }
+
+    private static Constructor<?> findNoArgConstructor(Class<?> type)
+    {
+        if (type.isPrimitive() || type.isArray() || type.isInterface())
+            return null;
+
+        try {
+            return type.getDeclaredConstructor();
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -3,8 +3,7 @@ package com.vizor.unreal.util;
 import com.vizor.unreal.annotations.FStruct;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
@@ -18,9 +17,9 @@ import java.util.Objects;
 public class UE4Deserializer
 {
     /**
-     * LRU cache for some hot constructors
+     * Scratch space to decode strings from direct buffers.
      */
-    private static final LRU<Class<?>, Constructor<?>> cachedNoArgConstructors = new LRU<>(32);
+    private static final ThreadLocal<byte[]> ScratchBytes = ThreadLocal.withInitial(() -> new byte[256]);
 
     // PRIMITIVE TYPES
     // 1 byte
@@ -131,6 +130,19 @@ public class UE4Deserializer
      * @return A decoded string.
      */
     private static String ReadString(ByteBuffer b)
+    {
+        return ReadString(b, null);
+    }
+
+    /**
+     * Read a string from byte array in UE4-friendly way. Strings are decoded right from the buffer (or from its
+     * backing array), without intermediate copies (except direct buffers, which use a per-thread scratch array).
+     *
+     * @param b Byte buffer to read from.
+     * @param Pool A pool to deduplicate ASCII strings with (hits allocate nothing), may be null.
+     * @return A decoded string.
+     */
+    public static String ReadString(ByteBuffer b, StringPool Pool)
     {
         // Ensure order is little endian
         b.order(ByteOrder.LITTLE_ENDIAN);
@@ -150,24 +162,55 @@ public class UE4Deserializer
         // And this is my adaptation, we need to increase a number of bytes 2 times
         final int NumBytes = SaveNum * BytesPerCharacter;
 
-        final byte[] StrBytes = new byte[NumBytes];
-        b.get(StrBytes);
+        if (NumBytes < 0 || NumBytes > b.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+
+        final int StrOffset = b.position();
+        b.position(StrOffset + NumBytes);
 
-        // Compute length, stripping zero characters
+        // Compute length, stripping zero characters (right in the buffer)
         int NumBytesToDecode = NumBytes;
+        while (NumBytesToDecode > 0 && IsZeroCharacter(b, StrOffset + NumBytesToDecode - BytesPerCharacter, BytesPerCharacter))
+        {
+            NumBytesToDecode -= BytesPerCharacter;
+        }
 
-        boolean ZeroBytesAhead = true;
-        for (int i = SaveNum - 1; ZeroBytesAhead && (i >= 0); --i)
+        // Finally, decode the string
+        if (Pool != null && !LoadUCS2Char)
         {
-            for (int j = 0; ZeroBytesAhead && (j < BytesPerCharacter); j++)
-                ZeroBytesAhead = StrBytes[(i * BytesPerCharacter) + j] == (byte) 0;
+            return Pool.get(b, StrOffset, NumBytesToDecode);
+        }
 
-            if (ZeroBytesAhead)
-                NumBytesToDecode -= BytesPerCharacter;
+        if (b.hasArray())
+        {
+            return new String(b.array(), b.arrayOffset() + StrOffset, NumBytesToDecode, charset);
         }
 
-        // Finally, decode the string
-        return new String(StrBytes, 0, NumBytesToDecode, charset);
+        byte[] Scratch = ScratchBytes.get();
+        if (Scratch.length < NumBytesToDecode)
+        {
+            Scratch = new byte[Math.max(NumBytesToDecode, Scratch.length * 2)];
+            ScratchBytes.set(Scratch);
+        }
+
+        final ByteBuffer StrBytes = b.duplicate();
+        StrBytes.position(StrOffset);
+        StrBytes.get(Scratch, 0, NumBytesToDecode);
+
+        return new String(Scratch, 0, NumBytesToDecode, charset);
+    }
+
+    private static boolean IsZeroCharacter(ByteBuffer b, int Offset, int BytesPerCharacter)
+    {
+        for (int i = 0; i < BytesPerCharacter; i++)
+        {
+            if (b.get(Offset + i) != (byte) 0)
+                return false;
+        }
+
+        return true;
     }
 
     @SuppressWarnings("unchecked")
@@ -237,37 +280,15 @@ public class UE4Deserializer
 
     private static <T> T ReadObject(ByteBuffer b, Class<T> clazz)
     {
-        // Retrieve a no-argument constructor
-        Constructor<?> noArgConstructor = cachedNoArgConstructors.get(clazz);
-        if (noArgConstructor == null)
-        {
-            try {
-                noArgConstructor = clazz.getDeclaredConstructor();
-            }
-            catch (NoSuchMethodException e) {
-                throw new RuntimeException(clazz.getName() + " should have a no-argument constructor to be read", e);
-            }
-
-            cachedNoArgConstructors.put(clazz, noArgConstructor);
-        }
-
-        // Create an instance of class
-        try {
-            @SuppressWarnings("unchecked")
-            final T instance = (T) noArgConstructor.newInstance();
+        // Create an instance of class (constructor is looked up once per class)
+        @SuppressWarnings("unchecked")
+        final T instance = (T) TypeMetadata.of(clazz).newInstance();
 
-            // Deserialize an instance
-            ((UE4Deserializable) instance).Deserialize(b);
+        // Deserialize an instance
+        ((UE4Deserializable) instance).Deserialize(b);
 
-            // Return an instance
-            return instance;
-        }
-        catch (IllegalAccessException e) {
-            throw new RuntimeException("A no-argument constructor of " + clazz.getName() + " must be public (accessible)", e);
-        }
-        catch (InstantiationException | InvocationTargetException e) {
-            throw new RuntimeException("Unable to instantiate " + clazz.getName(), e);
-        }
+        // Return an instance
+        return instance;
     }
 
     // ARRAY TYPES
@@ -344,52 +365,52 @@ public class UE4Deserializer
         return array;
     }
 
-    private static <T> T ReadArrayOfPrimitives(ByteBuffer b, Class<T> arrayType, int numElements)
+    /**
+     * Creates a reader of arrays of the given component type, called once per class by {@link TypeMetadata}.
+     *
+     * @param componentType Component type of arrays.
+     * @return Array reader, null if arrays of this type can not be read.
+     */
+    static TypeMetadata.ArrayReader newArrayReader(Class<?> componentType)
     {
-        final Class<?> arrayComponentType = arrayType.getComponentType();
+        if (componentType == boolean.class)
+            return UE4Deserializer::ReadArrayOfBooleans;
 
-        if (arrayComponentType == boolean.class)
-            return (T)ReadArrayOfBooleans(b, numElements);
+        else if (componentType == byte.class)
+            return UE4Deserializer::ReadArrayOfBytes;
 
-        else if (arrayComponentType == byte.class)
-            return (T)ReadArrayOfBytes(b, numElements);
+        else if (componentType == char.class)
+            return UE4Deserializer::ReadArrayOfChars;
 
-        else if (arrayComponentType == char.class)
-            return (T)ReadArrayOfChars(b, numElements);
+        else if (componentType == short.class)
+            return UE4Deserializer::ReadArrayOfShorts;
 
-        else if (arrayComponentType == short.class)
-            return (T)ReadArrayOfShorts(b, numElements);
+        else if (componentType == int.class)
+            return UE4Deserializer::ReadArrayOfInts;
 
-        else if (arrayComponentType == int.class)
-            return (T)ReadArrayOfInts(b, numElements);
+        else if (componentType == float.class)
+            return UE4Deserializer::ReadArrayOfFloats;
 
-        else if (arrayComponentType == float.class)
-            return (T)ReadArrayOfFloats(b, numElements);
+        else if (componentType == long.class)
+            return UE4Deserializer::ReadArrayOfLongs;
 
-        else if (arrayComponentType == long.class)
-            return (T)ReadArrayOfLongs(b, numElements);
+        else if (componentType == double.class)
+            return UE4Deserializer::ReadArrayOfDoubles;
 
-        else if (arrayComponentType == double.class)
-            return (T)ReadArrayOfDoubles(b, numElements);
+        else if (componentType.isAnnotationPresent(FStruct.class))
+            return (b, numElements) -> ReadArrayOfObjects(b, componentType, numElements);
 
-        // Unknown primitive type
-        throw new IllegalArgumentException("Unknown primitive type: " + arrayType);
+        return null;
     }
 
-    private static <T> T ReadArrayOfObjects(ByteBuffer b, Class<T> arrayType, int numElements)
+    private static Object[] ReadArrayOfObjects(ByteBuffer b, Class<?> componentType, int numElements)
     {
-        if (!arrayType.isArray())
-            throw new IllegalArgumentException("Only valid for arrays");
-
-        final Class<?> componentType = arrayType.getComponentType();
-
-        @SuppressWarnings("unchecked")
-        final T array = (T)Array.newInstance(componentType, numElements);
+        final Object[] array = (Object[]) Array.newInstance(componentType, numElements);
 
         // Put into array
         for (int i = 0; i < numElements; i++)
         {
-            Array.set(array, i, Read(b, componentType));
+            array[i] = Read(b, componentType);
         }
 
         return array;
@@ -457,18 +478,17 @@ public class UE4Deserializer
 
         final int numElements = checkDeserializeArraySize(ReadInt(b));
 
-        if (arrayComponentType.isPrimitive())
-        {
-            return ReadArrayOfPrimitives(b, arrayType, numElements);
-        }
-        else if (arrayComponentType.isAnnotationPresent(FStruct.class))
-        {
-            return ReadArrayOfObjects(b, arrayType, numElements);
-        }
-        else
+        // Reader is looked up once per class
+        final TypeMetadata.ArrayReader arrayReader = TypeMetadata.of(arrayComponentType).getArrayReader();
+        if (arrayReader == null)
         {
             throw new IllegalArgumentException("Unable to serialize " + arrayType);
         }
+
+        @SuppressWarnings("unchecked")
+        final T array = (T) arrayReader.read(b, numElements);
+
+        return array;
     }
 
     private static int checkDeserializeArraySize(int NumElements)
@@ -1,66 +1,27 @@
 package com.vizor.unreal.util;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.CharBuffer;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.CoderResult;
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 
 public class UE4Serializer
 {
-    private static final CharsetEncoder asciiEncoder = StandardCharsets.US_ASCII.newEncoder();
-    private static final CharsetEncoder utf16Encoder = StandardCharsets.UTF_16LE.newEncoder();
-
-    /**
-     * Initial encoding buffer size (in characters), long string will be encoded divided by chunks.
-     */
-    private static final int ENCODE_BUFFER_SIZE = 255;
-
-    private static final CharBuffer srcEncodeBuffer = CharBuffer.allocate(ENCODE_BUFFER_SIZE);
-    private static final ByteBuffer dstEncodeBuffer = ByteBuffer.allocate(ENCODE_BUFFER_SIZE * Character.BYTES)
-            .order(ByteOrder.nativeOrder());
-
     /**
      * Determines the exact number of bytes that can contain a certain string. Takes all possible overheads
      * into account.
-     * NOTE: This method is synchronized as it uses shared encoders.
      *
      * @param s A string, which serialization size is about to be determined.
      * @return Number of bytes.
+     * @throws IllegalArgumentException If the string can not be encoded (has unpaired surrogates).
      */
-    public synchronized static int GetSerializeSize(String s)
+    public static int GetSerializeSize(String s)
     {
-        int length = 0;
-
-        // 1. Length of string is an integer
-        length += Sizeof.sizeof(int.class);
+        final int bytesPerChar = RequiresUTF16(s) ? Character.BYTES : Byte.BYTES;
 
-        asciiEncoder.reset();
-
-        // Find encoder
-        final CharsetEncoder encoder;
-        if (asciiEncoder.canEncode(s))
-            encoder = asciiEncoder;
-        else
-        {
-            utf16Encoder.reset();
-
-            if (utf16Encoder.canEncode(s))
-                encoder = utf16Encoder;
-            else
-                throw new IllegalArgumentException("Can not encode \"" + s + "\"");
-        }
-
-        // 2. Content bytes
-        length += (s.length() * (int)encoder.maxBytesPerChar());
-
-        // 3. 0-terminator bytes
-        length += (int)encoder.maxBytesPerChar();
-
-        return length;
+        // Length of string is an integer, then content bytes and 0-terminator bytes
+        return Integer.BYTES + (s.length() + 1) * bytesPerChar;
     }
 
     public static void Write(ByteBuffer b, byte value)
@@ -90,50 +51,57 @@ public class UE4Serializer
         b.putLong(value);
     }
 
-    public static synchronized void Write(ByteBuffer b, String value)
+    public static void Write(ByteBuffer b, String value)
     {
         // Setup byte order
         b.order(ByteOrder.LITTLE_ENDIAN);
 
-        // Here later we'll write a string length
-        final int stringLengthPosition = b.position();
-        b.putInt(0); // Reserve 4 bytes for length
+        final int length = value.length();
 
-        // Write encoded content
-        final CharsetEncoder encoder;
-        if (doEncodeAndWrite(asciiEncoder, b, value))
+        if (RequiresUTF16(value))
         {
-            encoder = asciiEncoder;
-        }
-        else
-        {
-            if (doEncodeAndWrite(utf16Encoder, b, value))
-                encoder = utf16Encoder;
-            else
-                throw new IllegalArgumentException("No UE4-supported encoder can encode \"" + value + "\"");
-        }
-
-        final int contentFinishPosition = b.position();
-
-        // Write a length into stringLengthPosition
-        b.position(stringLengthPosition);
-
-        // 'bytesPerChar' extra char for '\0' (null-terminator)
+            // Negative length means UTF-16, 0-terminator included
+            b.putInt(-(length + 1));
 
+            for (int i = 0; i < length; i++)
+            {
+                b.putChar(value.charAt(i));
+            }
 
-        // Write length
-        if (encoder == utf16Encoder)
-            b.putInt(-(value.length() + /* 0-terminator */1));
+            b.putChar('\0');
+        }
         else
-            b.putInt(value.length() + /* 0-terminator */1);
+        {
+            b.putInt(length + 1);
 
-        b.position(contentFinishPosition);
+            if (b.hasArray())
+            {
+                if (b.remaining() < length + 1)
+                {
+                    throw new BufferOverflowException();
+                }
+
+                // Write right into the backing array
+                final byte[] array = b.array();
+                final int offset = b.arrayOffset() + b.position();
+
+                for (int i = 0; i < length; i++)
+                {
+                    array[offset + i] = (byte) value.charAt(i);
+                }
+
+                array[offset + length] = 0;
+                b.position(b.position() + length + 1);
+            }
+            else
+            {
+                for (int i = 0; i < length; i++)
+                {
+                    b.put((byte) value.charAt(i));
+                }
 
-        // Add 'bytesPerChar' of 0-terminator bytes to the end (1 for ASCII, 2 for UTF-16)
-        final int bytesPerChar = (int) encoder.maxBytesPerChar();
-        for (int i = 0; i < bytesPerChar; i++)
-        {
-            b.put((byte) 0);
+                b.put((byte) 0);
+            }
         }
     }
 
@@ -169,35 +137,37 @@ public class UE4Serializer
         }
     }
 
-    private static boolean doEncodeAndWrite(CharsetEncoder encoder, ByteBuffer b, String s)
+    /**
+     * Determines whether the string should be encoded as UTF-16 (has non-ASCII characters) with a single scan.
+     *
+     * @param s A string to check.
+     * @return True if UTF-16 is required, false if ASCII is enough.
+     * @throws IllegalArgumentException If the string can not be encoded (has unpaired surrogates).
+     */
+    private static boolean RequiresUTF16(String s)
     {
-        final int initialPosition = b.position();
-
-        encoder.reset();
-
-        // Encode step by step
-        final int stringLength = s.length();
-        for (int i = 0; i < stringLength;)
-        {
-            srcEncodeBuffer.rewind().limit(srcEncodeBuffer.capacity());
+        final int length = s.length();
 
-            while (i < stringLength && srcEncodeBuffer.hasRemaining())
-                srcEncodeBuffer.put(s.charAt(i++));
+        int i = 0;
+        while (i < length && s.charAt(i) < 0x80)
+            i++;
 
-            srcEncodeBuffer.flip();
-            dstEncodeBuffer.rewind().limit(dstEncodeBuffer.capacity());
+        if (i == length)
+            return false;
 
-            final boolean endOfInput = i >= stringLength;
-            final CoderResult result = encoder.encode(srcEncodeBuffer, dstEncodeBuffer, endOfInput);
+        // Non-ASCII, check surrogates for the rest of the string
+        for (; i < length; i++)
+        {
+            final char c = s.charAt(i);
 
-            if (result.isError())
+            if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(s.charAt(i + 1)))
             {
-                b.position(initialPosition);
-                return false;
+                i++;
+            }
+            else if (Character.isSurrogate(c))
+            {
+                throw new IllegalArgumentException("Can not encode \"" + s + "\"");
             }
-
-            dstEncodeBuffer.flip();
-            b.put(dstEncodeBuffer);
         }
 
         return true;
@@ -0,0 +1,39 @@
+package com.vizor.unreal.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors for batch extraction.
+ *
+ * This is the Java 21+ version: every entry gets its own virtual thread. Blocking reads, writes and file
+ * creation only park the virtual thread, while decryption and decompression run on the carrier pool, which
+ * is bounded by the number of processors (see jdk.virtualThreadScheduler.parallelism).
+ */
+final class ExtractionThreads
+{
+    /**
+     * Virtual threads are cheap, so the limit only bounds memory held by extraction buffers.
+     */
+    private static final int VIRTUAL_ENTRIES_IN_FLIGHT = 256;
+
+    private ExtractionThreads()
+    {
+        throw new AssertionError("No " + getClass() + " instances for you");
+    }
+
+    static boolean isVirtual()
+    {
+        return true;
+    }
+
+    static int defaultEntriesInFlight()
+    {
+        return VIRTUAL_ENTRIES_IN_FLIGHT;
+    }
+
+    static ExecutorService newEntryExecutor(int entriesInFlight)
+    {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("juepak-extract-", 0).factory());
+    }
+}
@@ -0,0 +1,23 @@
+package com.vizor.unreal.util;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates into byte buffers.
+ *
+ * This is the Java 21+ version: both heap and direct buffers are inflated into without any copy.
+ */
+final class Inflaters
+{
+    private Inflaters()
+    {
+        throw new AssertionError("No " + getClass() + " instances for you");
+    }
+
+    static int inflate(Inflater inflater, ByteBuffer dst, byte[] scratch) throws DataFormatException
+    {
+        return inflater.inflate(dst);
+    }
+}
@@ -0,0 +1,143 @@
+package com.vizor.unreal;
+
+import com.vizor.unreal.metrics.PakMetrics;
+import com.vizor.unreal.pak.TestPaks;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public class MainTest
+{
+    private static final List<String> FILENAMES = Arrays.asList(
+            "Game/Hero.uasset", "Game/Hero.uexp", "Game/Maps/Level.umap", "Game/Maps/Empty.umap", "Top.bin");
+
+    private Path root;
+
+    /**
+     * Output of the last command.
+     */
+    private String out;
+
+    /**
+     * Timing line of the last command, parsed.
+     */
+    private Map<String, String> timing;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        root = Files.createTempDirectory("juepak_main_");
+
+        for (int i = 0; i < FILENAMES.size(); i++)
+            TestPaks.writeFile(root.resolve("files"), FILENAMES.get(i), (i == 3) ? 0 : 100000 * i + 10, i);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        PakMetrics.setEnabled(false);
+        PakMetrics.reset();
+
+        TestPaks.deleteRecursively(root);
+    }
+
+    @Test
+    public void commandsTest() throws IOException
+    {
+        final String pak = root.resolve("test.pak").toString();
+
+        assertEquals(run("pack", "--compress", "--signature", pak, root.resolve("files").toString()), 0);
+        assertTiming("pack", 0, FILENAMES.size());
+
+        assertEquals(run("list", pak), 0);
+        assertTiming("list", 0, FILENAMES.size());
+        for (final String filename : FILENAMES)
+            assertTrue(out.contains(" " + filename), filename);
+
+        assertEquals(run("list", "--filter", "Game/Maps/*", pak), 0);
+        assertTiming("list", 0, 2);
+
+        final Path extracted = root.resolve("extracted");
+        assertEquals(run("extract", "--threads", "2", pak, extracted.toString()), 0);
+        assertTiming("extract", 0, FILENAMES.size());
+
+        for (final String filename : FILENAMES)
+        {
+            assertEquals(Files.readAllBytes(extracted.resolve(filename)),
+                    Files.readAllBytes(root.resolve("files").resolve(filename)), filename);
+        }
+
+        assertEquals(run("verify", "--signature", pak), 0);
+        assertTiming("verify", 0, FILENAMES.size());
+    }
+
+    @Test
+    public void usageTest() throws IOException
+    {
+        // A command failing on its arguments still ends with the timing line
+        Files.createDirectories(root.resolve("empty"));
+        assertEquals(run("pack", root.resolve("empty.pak").toString(), root.resolve("empty").toString()), 2);
+        assertTiming("pack", 2, 0);
+
+        assertEquals(run("list", root.resolve("missing.pak").toString()), 1);
+        assertTiming("list", 1, 0);
+    }
+
+    private int run(String... args) throws UnsupportedEncodingException
+    {
+        final ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+
+        final int exitCode;
+        try (final PrintStream outStream = new PrintStream(outBytes, true, "UTF-8");
+             final PrintStream errStream = new PrintStream(errBytes, true, "UTF-8"))
+        {
+            exitCode = Main.run(args, outStream, errStream);
+        }
+
+        out = outBytes.toString("UTF-8");
+
+        // The timing line is the last one
+        final String[] errLines = errBytes.toString("UTF-8").split("\\R");
+        final String lastLine = errLines[errLines.length - 1];
+        assertTrue(lastLine.startsWith("timing "), lastLine);
+
+        timing = new HashMap<>();
+        for (final String pair : lastLine.substring("timing ".length()).split(" "))
+        {
+            final int separator = pair.indexOf('=');
+            assertTrue(separator > 0, pair);
+
+            timing.put(pair.substring(0, separator), pair.substring(separator + 1));
+        }
+
+        return exitCode;
+    }
+
+    private void assertTiming(String command, int exitCode, int entries)
+    {
+        assertEquals(timing.get("command"), command);
+        assertEquals(timing.get("exit_code"), String.valueOf(exitCode));
+        assertEquals(timing.get("entries"), String.valueOf(entries));
+
+        assertNotNull(timing.get("elapsed_ms"));
+        assertTrue(Double.parseDouble(timing.get("elapsed_ms")) >= 0);
+        assertTrue(Double.parseDouble(timing.get("entries_per_s")) >= 0);
+        assertTrue(Double.parseDouble(timing.get("mb_per_s")) >= 0);
+    }
+}
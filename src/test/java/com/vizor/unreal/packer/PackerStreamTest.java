@@ -0,0 +1,145 @@
+package com.vizor.unreal.packer;
+
+import com.vizor.unreal.pak.TestPaks;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.expectThrows;
+
+public class PackerStreamTest
+{
+    private Path root;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        root = Files.createTempDirectory("juepak_stream_");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        TestPaks.deleteRecursively(root);
+    }
+
+    @Test
+    public void streamTest() throws IOException
+    {
+        // Entries smaller and larger than the buffer, the large ones are followed by smaller ones
+        final List<Path> files = new ArrayList<>();
+        files.add(TestPaks.writeFile(root, "files/Game/Small.bin", 100, 0));
+        files.add(TestPaks.writeFile(root, "files/Game/Large.bin", 200000, 1));
+        files.add(TestPaks.writeFile(root, "files/Game/Empty.bin", 0, 2));
+        files.add(TestPaks.writeFile(root, "files/Game/Maps/Exact.umap", 1000, 3));
+        files.add(TestPaks.writeFile(root, "files/Game/Maps/Medium.umap", 5000, 4));
+        files.add(TestPaks.writeFile(root, "files/Top.bin", 999, 5));
+
+        for (final boolean compress : new boolean[] {false, true})
+        {
+            final PakEntryParameters params = compress ? new PakEntryParameters().compress() : new PakEntryParameters();
+            final byte[] expected = Files.readAllBytes(TestPaks.pack(root.resolve("file.pak"), files, params));
+
+            for (final int entryBufferSize : new int[] {0, 1000, 64 * 1024 * 1024})
+            {
+                final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+                final Packer packer = Packer.builder()
+                        .customMountPoint("../../../")
+                        .outputStream(output)
+                        .entryBufferSize(entryBufferSize)
+                        .build();
+
+                for (final Path file : files)
+                    packer.add(file, params);
+
+                packer.close();
+
+                assertEquals(output.toByteArray(), expected,
+                        "Compressed: " + compress + ", entry buffer size: " + entryBufferSize);
+            }
+        }
+    }
+
+    @Test
+    public void entryBufferTest() throws IOException
+    {
+        final byte[] data = new byte[10000];
+        new Random(0).nextBytes(data);
+
+        try (final EntryBuffer buffer = new EntryBuffer(1000))
+        {
+            // Writes within the memory, across the limit and beyond it
+            for (final int[] pieces : new int[][] {{10000}, {500, 400, 300, 8800}, {999, 1, 1, 8999}, {100, 9900}})
+            {
+                int offset = 0;
+                for (final int piece : pieces)
+                {
+                    assertEquals(buffer.write(ByteBuffer.wrap(data, offset, piece)), piece);
+                    offset += piece;
+                }
+
+                assertEquals(buffer.size(), data.length);
+                assertEquals(buffer.spillFileSize(), data.length - 1000);
+                assertEquals(transfer(buffer), data);
+
+                // Kept buffered until reset
+                assertEquals(transfer(buffer), data);
+
+                buffer.reset();
+                assertEquals(buffer.size(), 0);
+                assertEquals(buffer.spillFileSize(), 0);
+            }
+
+            // A smaller entry after a spilled one, nothing of the previous spill is left
+            buffer.write(ByteBuffer.wrap(data, 0, 1500));
+            assertEquals(buffer.spillFileSize(), 500);
+            assertEquals(transfer(buffer), Arrays.copyOf(data, 1500));
+            buffer.reset();
+
+            buffer.write(ByteBuffer.wrap(data, 0, 700));
+            assertEquals(transfer(buffer), Arrays.copyOf(data, 700));
+        }
+    }
+
+    @Test
+    public void closedEntryBufferTest() throws IOException
+    {
+        final EntryBuffer buffer = new EntryBuffer(10);
+        buffer.write(ByteBuffer.allocate(100));
+        buffer.close();
+
+        assertFalse(buffer.isOpen());
+        expectThrows(ClosedChannelException.class, () -> buffer.write(ByteBuffer.allocate(1)));
+
+        // Closing twice does nothing
+        buffer.close();
+    }
+
+    private static byte[] transfer(EntryBuffer buffer) throws IOException
+    {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (final WritableByteChannel channel = Channels.newChannel(output))
+        {
+            buffer.transferTo(channel);
+        }
+
+        return output.toByteArray();
+    }
+}
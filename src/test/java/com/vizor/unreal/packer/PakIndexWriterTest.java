@@ -0,0 +1,135 @@
+package com.vizor.unreal.packer;
+
+import com.vizor.unreal.pak.FPakFile;
+import com.vizor.unreal.pak.TestPaks;
+import com.vizor.unreal.ue4.FAES;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.vizor.unreal.ue4.AlignmentTemplates.Align;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public class PakIndexWriterTest
+{
+    /**
+     * Larger than a chunk of an encrypted index.
+     */
+    private static final int HUGE_RECORD_SIZE = 5 * 1024 * 1024 + 3;
+
+    private Path root;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        root = Files.createTempDirectory("juepak_index_");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        TestPaks.deleteRecursively(root);
+    }
+
+    @Test
+    public void plainTest() throws IOException, NoSuchAlgorithmException
+    {
+        checkWriter(null);
+    }
+
+    @Test
+    public void encryptedTest() throws IOException, NoSuchAlgorithmException
+    {
+        checkWriter(TestPaks.getKey());
+    }
+
+    @Test
+    public void encryptedIndexPakTest() throws IOException
+    {
+        // About 270 bytes of an index record per file, the index takes several chunks
+        final char[] longName = new char[180];
+        Arrays.fill(longName, 'x');
+
+        final int numFiles = 20000;
+        final Path directory = root.resolve("files/Game/Content").resolve(new String(longName));
+        Files.createDirectories(directory);
+
+        final List<Path> files = new ArrayList<>(numFiles);
+        files.add(TestPaks.writeFile(root, "files/Top.bin", 1000, 0));
+        for (int i = 1; i < numFiles; i++)
+            files.add(Files.createFile(directory.resolve(String.format("File%05d.uasset", i))));
+
+        TestPaks.bindKey();
+        final Path pakPath = TestPaks.pack(root.resolve("test.pak"), files, new PakEntryParameters(), true);
+
+        // The index hash and size are checked on open
+        try (final FPakFile pakFile = new FPakFile(pakPath))
+        {
+            assertTrue(pakFile.isValid());
+            assertEquals(pakFile.getInfo().bEncryptedIndex, 1);
+            assertTrue(pakFile.getInfo().IndexSize > 4 * 1024 * 1024);
+            assertEquals(pakFile.getNumFiles(), numFiles);
+
+            assertNotNull(pakFile.findEntry("Top.bin"));
+            assertNotNull(pakFile.findEntry("Game/Content/" + new String(longName) + "/File19999.uasset"));
+        }
+    }
+
+    /**
+     * Writes records of random sizes (and a huge one) and compares the result with the whole index written at once.
+     */
+    private static void checkWriter(byte[] keyBytes) throws IOException, NoSuchAlgorithmException
+    {
+        final Random random = new Random(keyBytes != null ? 1 : 0);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+
+        final PakIndexWriter writer = new PakIndexWriter(Channels.newChannel(output), keyBytes);
+
+        for (int i = 0; i < 20000; i++)
+        {
+            // Odd sizes, so records straddle AES blocks and chunks
+            final int size = (i == 10000) ? HUGE_RECORD_SIZE : 1 + random.nextInt(1000);
+
+            final byte[] record = new byte[size];
+            random.nextBytes(record);
+            expected.write(record);
+
+            final ByteBuffer buffer = writer.beginRecord(size);
+            buffer.put(record);
+            writer.endRecord();
+        }
+
+        final byte[] indexHash = new byte[20];
+        final long indexSize = writer.finish(indexHash);
+
+        // Padded with zeroes, the hash covers the padding
+        byte[] index = expected.toByteArray();
+        if (keyBytes != null)
+            index = Arrays.copyOf(index, Align(index.length, FAES.getBlockSize()));
+
+        assertEquals(indexHash, MessageDigest.getInstance("SHA-1").digest(index));
+
+        if (keyBytes != null)
+            FAES.EncryptData(index, index.length, keyBytes);
+
+        assertEquals(indexSize, index.length);
+        assertEquals(output.toByteArray(), index);
+    }
+}
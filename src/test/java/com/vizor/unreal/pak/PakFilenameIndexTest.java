@@ -0,0 +1,189 @@
+package com.vizor.unreal.pak;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class PakFilenameIndexTest
+{
+    private static final String[] GLOBS = {
+        "*",
+        "**",
+        "**/*",
+        "**/*.uasset",
+        "Game/*",
+        "Game/**",
+        "Game/Content/*.u{asset,exp}",
+        "Game/Content/**/*.uexp",
+        "Game/**/Maps/*",
+        "**/Maps/**",
+        "Game/Content/Maps/Level?.umap",
+        "Game/Content/[A-C]*/*",
+        "Game/Content/[!A-C]*/**",
+        "Engine/**/Config/*.ini",
+        "Game/Content/Мир/*",
+        "Nothing/**",
+    };
+
+    @Test
+    public void findTest()
+    {
+        final List<String> filenames = createFilenames();
+        final PakFilenameIndex index = createIndex(filenames);
+
+        assertEquals(index.size(), filenames.size());
+
+        for (int i = 0; i < filenames.size(); i++)
+        {
+            assertEquals(index.find(filenames.get(i)), i);
+            assertEquals(index.getFilename(i), filenames.get(i));
+            assertEquals(index.getEntry(i).UncompressedSize, i);
+        }
+
+        assertEquals(index.find("Game/Content/Maps/Level9.umap"), -1);
+        assertEquals(index.find("Game/Content/Maps"), -1);
+        assertEquals(index.find("Game/Content/Maps/"), -1);
+        assertEquals(index.find("Game/Missing/Level0.umap"), -1);
+        assertEquals(index.find("Level0.umap"), -1);
+    }
+
+    @Test
+    public void duplicateTest()
+    {
+        final List<String> filenames = createFilenames();
+        final PakFilenameIndex index = new PakFilenameIndex(filenames.size());
+
+        for (int i = 0; i < filenames.size(); i++)
+            index.put(filenames.get(i), createEntry(i));
+
+        // The same files once again, entries are replaced but the ordinals stay
+        final FPakEntry[] replaced = new FPakEntry[filenames.size()];
+        for (int i = filenames.size() - 1; i >= 0; i--)
+        {
+            replaced[i] = createEntry(-i);
+            index.put(filenames.get(i), replaced[i]);
+        }
+
+        index.compact();
+
+        assertEquals(index.size(), filenames.size());
+
+        for (int i = 0; i < filenames.size(); i++)
+        {
+            assertEquals(index.find(filenames.get(i)), i);
+            assertEquals(index.getFilename(i), filenames.get(i));
+            assertSame(index.getEntry(i), replaced[i]);
+        }
+    }
+
+    @Test
+    public void prefixTest()
+    {
+        final List<String> filenames = createFilenames();
+        final PakFilenameIndex index = createIndex(filenames);
+
+        final String[] prefixes = {
+            "", "G", "Game/", "Game/Content", "Game/Content/", "Game/Content/Ma", "Game/Content/Maps/Level1",
+            "Game/Content/Мир/", "Engine/Config/", "Engine/Config/Base", "Nothing/", "Game/Nothing/",
+        };
+
+        for (final String prefix : prefixes)
+        {
+            final Set<String> expected = new TreeSet<>();
+            for (final String filename : filenames)
+            {
+                if (filename.startsWith(prefix))
+                    expected.add(filename);
+            }
+
+            final Set<String> actual = new TreeSet<>();
+            index.forEachWithPrefix(prefix, file -> actual.add(index.getFilename(file)));
+
+            assertEquals(actual, expected, "Prefix " + prefix);
+        }
+    }
+
+    @Test
+    public void globTest()
+    {
+        final List<String> filenames = createFilenames();
+        final PakFilenameIndex index = createIndex(filenames);
+
+        for (final String pattern : GLOBS)
+        {
+            final PakGlob glob = PakGlob.compile(pattern);
+
+            final Set<String> expected = new TreeSet<>();
+            for (final String filename : filenames)
+            {
+                if (glob.test(filename))
+                    expected.add(filename);
+            }
+
+            final Set<String> actual = new TreeSet<>();
+            index.forEachMatching(glob, file -> actual.add(index.getFilename(file)));
+
+            assertEquals(actual, expected, "Glob " + pattern);
+        }
+    }
+
+    private static List<String> createFilenames()
+    {
+        final List<String> filenames = new ArrayList<>();
+
+        filenames.add("Readme.txt");
+        filenames.add("Engine/Config/BaseEngine.ini");
+        filenames.add("Engine/Config/BaseGame.ini");
+        filenames.add("Engine/Plugins/Online/Config/Online.ini");
+
+        for (int i = 0; i < 5; i++)
+            filenames.add("Game/Content/Maps/Level" + i + ".umap");
+
+        for (final String dir : new String[] {"Animals", "Buildings", "Characters", "Effects", "Weapons"})
+        {
+            for (int i = 0; i < 4; i++)
+            {
+                filenames.add("Game/Content/" + dir + "/Asset" + i + ".uasset");
+                filenames.add("Game/Content/" + dir + "/Asset" + i + ".uexp");
+            }
+
+            filenames.add("Game/Content/" + dir + "/Maps/Test.umap");
+        }
+
+        filenames.add("Game/Content/Hero.uasset");
+        filenames.add("Game/Content/Hero.uexp");
+        filenames.add("Game/Content/Hero.ubulk");
+
+        // Names beyond Latin-1 are kept separately
+        filenames.add("Game/Content/Мир/Карта.umap");
+        filenames.add("Game/Content/Мир/Level.umap");
+        filenames.add("Game/Content/Maps/Уровень.umap");
+
+        return filenames;
+    }
+
+    private static PakFilenameIndex createIndex(List<String> filenames)
+    {
+        final PakFilenameIndex index = new PakFilenameIndex(filenames.size());
+
+        for (int i = 0; i < filenames.size(); i++)
+            index.put(filenames.get(i), createEntry(i));
+
+        index.compact();
+        return index;
+    }
+
+    private static FPakEntry createEntry(int value)
+    {
+        final FPakEntry entry = new FPakEntry();
+        entry.UncompressedSize = value;
+        entry.Size = value;
+        return entry;
+    }
+}
@@ -0,0 +1,135 @@
+package com.vizor.unreal.pak;
+
+import com.vizor.unreal.packer.PakEntryParameters;
+import com.vizor.unreal.pak.PakFingerprint.Change;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PakFingerprintTest
+{
+    private Path root;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        root = Files.createTempDirectory("juepak_fingerprint_");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        TestPaks.deleteRecursively(root);
+    }
+
+    @Test
+    public void samePakTest() throws IOException
+    {
+        final List<Path> files = new ArrayList<>();
+        files.add(TestPaks.writeFile(root, "old/Top.bin", 100, 0));
+        files.add(TestPaks.writeFile(root, "old/Game/Hero.uasset", 5000, 1));
+        files.add(TestPaks.writeFile(root, "old/Game/Maps/Level.umap", 70000, 2));
+        files.add(TestPaks.writeFile(root, "old/Game/Maps/Empty.umap", 0, 3));
+
+        final Path first = TestPaks.pack(root.resolve("first.pak"), files, new PakEntryParameters().compress());
+
+        // The same content in another order, so all the offsets differ
+        final List<Path> reversed = new ArrayList<>(files);
+        Collections.reverse(reversed);
+        final Path second = TestPaks.pack(root.resolve("second.pak"), reversed, new PakEntryParameters().compress());
+
+        try (final FPakFile firstPak = new FPakFile(first);
+             final FPakFile firstPakAgain = new FPakFile(first);
+             final FPakFile secondPak = new FPakFile(second))
+        {
+            assertTrue(firstPak.isValid());
+            assertTrue(secondPak.isValid());
+
+            // Hash codes only hash the index, not the content
+            assertEquals(firstPak.hashCode(), firstPakAgain.hashCode());
+
+            final PakFingerprint firstFingerprint = firstPak.getFingerprint();
+            final PakFingerprint secondFingerprint = secondPak.getFingerprint();
+
+            assertEquals(firstFingerprint.getRootHash(), secondFingerprint.getRootHash());
+            assertEquals(firstFingerprint, secondFingerprint);
+            assertEquals(firstFingerprint.getHash("Game/Maps/"), secondFingerprint.getHash("Game/Maps/"));
+            assertEquals(firstPak.briefChecksumOfContent(), firstFingerprint.getRootHash());
+            assertTrue(firstFingerprint.diff(secondFingerprint).isEmpty());
+        }
+    }
+
+    @Test
+    public void diffTest() throws IOException
+    {
+        final List<Path> oldFiles = new ArrayList<>();
+        oldFiles.add(TestPaks.writeFile(root, "old/Top.bin", 100, 0));
+        oldFiles.add(TestPaks.writeFile(root, "old/Game/Same/A.uasset", 1000, 1));
+        oldFiles.add(TestPaks.writeFile(root, "old/Game/Changed/Kept.uasset", 1000, 2));
+        oldFiles.add(TestPaks.writeFile(root, "old/Game/Changed/Modified.uasset", 1000, 3));
+        oldFiles.add(TestPaks.writeFile(root, "old/Game/Changed/Removed.uasset", 1000, 4));
+        oldFiles.add(TestPaks.writeFile(root, "old/Game/Changed/Gone/B.uasset", 1000, 5));
+
+        final List<Path> newFiles = new ArrayList<>();
+        newFiles.add(TestPaks.writeFile(root, "new/Top.bin", 100, 0));
+        newFiles.add(TestPaks.writeFile(root, "new/Game/Same/A.uasset", 1000, 1));
+        newFiles.add(TestPaks.writeFile(root, "new/Game/Changed/Kept.uasset", 1000, 2));
+        newFiles.add(TestPaks.writeFile(root, "new/Game/Changed/Modified.uasset", 1000, 33));
+        newFiles.add(TestPaks.writeFile(root, "new/Game/Changed/Added.uasset", 1000, 6));
+        newFiles.add(TestPaks.writeFile(root, "new/Game/Changed/New/C.uasset", 1000, 7));
+
+        final Path oldPath = TestPaks.pack(root.resolve("old.pak"), oldFiles, new PakEntryParameters());
+        final Path newPath = TestPaks.pack(root.resolve("new.pak"), newFiles, new PakEntryParameters());
+
+        try (final FPakFile oldPak = new FPakFile(oldPath);
+             final FPakFile newPak = new FPakFile(newPath))
+        {
+            final PakFingerprint oldFingerprint = oldPak.getFingerprint();
+            final PakFingerprint newFingerprint = newPak.getFingerprint();
+
+            assertNotEquals(oldFingerprint.getRootHash(), newFingerprint.getRootHash());
+            assertEquals(oldFingerprint.getHash("Game/Same/"), newFingerprint.getHash("Game/Same/"));
+            assertNotEquals(oldFingerprint.getHash("Game/Changed/"), newFingerprint.getHash("Game/Changed/"));
+
+            assertEquals(toStrings(oldFingerprint.diff(newFingerprint)), Arrays.asList(
+                    "ADDED Game/Changed/Added.uasset",
+                    "REMOVED Game/Changed/Gone/",
+                    "MODIFIED Game/Changed/Modified.uasset",
+                    "ADDED Game/Changed/New/",
+                    "REMOVED Game/Changed/Removed.uasset"));
+
+            // Relative to the subtree
+            final List<Change> changes = oldFingerprint.diff(newFingerprint, "Game/Changed/");
+            assertEquals(toStrings(changes), Arrays.asList(
+                    "ADDED Added.uasset",
+                    "REMOVED Gone/",
+                    "MODIFIED Modified.uasset",
+                    "ADDED New/",
+                    "REMOVED Removed.uasset"));
+
+            assertTrue(changes.get(1).isDirectory());
+            assertFalse(changes.get(2).isDirectory());
+
+            assertTrue(oldFingerprint.diff(newFingerprint, "Game/Same/").isEmpty());
+        }
+    }
+
+    private static List<String> toStrings(List<Change> changes)
+    {
+        return changes.stream().map(Change::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,180 @@
+package com.vizor.unreal.pak;
+
+import com.vizor.unreal.packer.PakEntryParameters;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class PakIndexSidecarTest
+{
+    private Path root;
+    private Path pakPath;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        root = Files.createTempDirectory("juepak_sidecar_");
+
+        final List<Path> files = new ArrayList<>();
+        files.add(TestPaks.writeFile(root, "files/Top.bin", 100, 0));
+        files.add(TestPaks.writeFile(root, "files/Game/Hero.uasset", 5000, 1));
+        files.add(TestPaks.writeFile(root, "files/Game/Maps/Level.umap", 200000, 2));
+        files.add(TestPaks.writeFile(root, "files/Game/Maps/Empty.umap", 0, 3));
+        files.add(TestPaks.writeFile(root, "files/Game/Мир/Карта.umap", 3000, 4));
+
+        for (int i = 0; i < 20; i++)
+            files.add(TestPaks.writeFile(root, "files/Game/Content/D" + (i % 3) + "/File" + i + ".bin", 300 * i, i));
+
+        pakPath = TestPaks.pack(root.resolve("test.pak"), files, new PakEntryParameters().compress());
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        TestPaks.deleteRecursively(root);
+    }
+
+    @Test
+    public void roundTripTest() throws IOException
+    {
+        try (final FPakFile parsed = new FPakFile(pakPath))
+        {
+            assertTrue(parsed.isValid());
+            assertTrue(Files.notExists(PakIndexSidecar.getPath(pakPath)));
+
+            // Written on the first open
+            try (final FPakFile written = new FPakFile(pakPath, true))
+            {
+                assertTrue(written.isValid());
+            }
+
+            final PakIndexSidecar.Contents contents =
+                    PakIndexSidecar.read(pakPath, parsed.getInfo(), parsed.totalSize());
+            assertNotNull(contents);
+            assertEquals(contents.mountPoint, parsed.getMountPoint());
+            assertEquals(contents.stats.toString(), parsed.getStats().toString());
+            assertIndexEquals(contents.index, parsed.index);
+
+            // Mapped on the next one
+            try (final FPakFile mapped = new FPakFile(pakPath, true))
+            {
+                assertTrue(mapped.isValid());
+                assertEquals(mapped.getMountPoint(), parsed.getMountPoint());
+                assertIndexEquals(mapped.index, parsed.index);
+
+                final String filename = "Game/Мир/Карта.umap";
+                assertEquals(mapped.findEntry(filename).Entry, parsed.findEntry(filename).Entry);
+                assertEquals(mapped.listEntries("Game/Content/D1/").size(), 7);
+            }
+        }
+    }
+
+    @Test
+    public void staleTest() throws IOException
+    {
+        final Path sidecarPath = PakIndexSidecar.getPath(pakPath);
+
+        try (final FPakFile parsed = new FPakFile(pakPath, true))
+        {
+            assertTrue(Files.exists(sidecarPath));
+
+            // The pak file was touched after the sidecar was written
+            final FileTime pakTime = Files.getLastModifiedTime(pakPath);
+            Files.setLastModifiedTime(pakPath, FileTime.fromMillis(pakTime.toMillis() + 2000));
+            assertNull(PakIndexSidecar.read(pakPath, parsed.getInfo(), parsed.totalSize()));
+
+            // Loaded as usual and written once again
+            try (final FPakFile reloaded = new FPakFile(pakPath, true))
+            {
+                assertTrue(reloaded.isValid());
+                assertIndexEquals(reloaded.index, parsed.index);
+            }
+
+            assertNotNull(PakIndexSidecar.read(pakPath, parsed.getInfo(), parsed.totalSize()));
+        }
+    }
+
+    @Test
+    public void truncatedTest() throws IOException
+    {
+        final Path sidecarPath = PakIndexSidecar.getPath(pakPath);
+
+        try (final FPakFile parsed = new FPakFile(pakPath, true))
+        {
+            final byte[] sidecar = Files.readAllBytes(sidecarPath);
+
+            // Truncated within the index and within the header
+            for (final int size : new int[] {sidecar.length - 1, sidecar.length / 2, 10, 0})
+            {
+                Files.write(sidecarPath, Arrays.copyOf(sidecar, size));
+                assertNull(PakIndexSidecar.read(pakPath, parsed.getInfo(), parsed.totalSize()));
+
+                try (final FPakFile reloaded = new FPakFile(pakPath, true))
+                {
+                    assertTrue(reloaded.isValid());
+                    assertIndexEquals(reloaded.index, parsed.index);
+                }
+
+                // Replaced by the reload
+                assertEquals(Files.readAllBytes(sidecarPath), sidecar);
+            }
+        }
+    }
+
+    @Test
+    public void corruptTest() throws IOException
+    {
+        final Path sidecarPath = PakIndexSidecar.getPath(pakPath);
+
+        try (final FPakFile parsed = new FPakFile(pakPath, true))
+        {
+            final byte[] sidecar = Files.readAllBytes(sidecarPath);
+
+            // A bit flipped at the beginning, in the middle and at the end of the body
+            for (final int position : new int[] {100, sidecar.length / 2, sidecar.length - 30})
+            {
+                final byte[] corrupt = sidecar.clone();
+                corrupt[position] ^= 0x10;
+
+                Files.write(sidecarPath, corrupt);
+                assertNull(PakIndexSidecar.read(pakPath, parsed.getInfo(), parsed.totalSize()));
+
+                try (final FPakFile reloaded = new FPakFile(pakPath, true))
+                {
+                    assertTrue(reloaded.isValid());
+                    assertIndexEquals(reloaded.index, parsed.index);
+                }
+
+                assertEquals(Files.readAllBytes(sidecarPath), sidecar);
+            }
+        }
+    }
+
+    private static void assertIndexEquals(PakFilenameIndex actual, PakFilenameIndex expected)
+    {
+        assertEquals(actual.size(), expected.size());
+        assertEquals(actual.getNumDirectories(), expected.getNumDirectories());
+
+        for (int file = 0; file < expected.size(); file++)
+        {
+            final String filename = expected.getFilename(file);
+
+            assertEquals(actual.getFilename(file), filename);
+            assertEquals(actual.find(filename), file);
+            assertEquals(actual.getEntry(file), expected.getEntry(file), filename);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.vizor.unreal.pak;
+
+import com.vizor.unreal.packer.PakEntryParameters;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class PakInterruptTest
+{
+    private static final int NUM_READERS = 4;
+    private static final int READ_SIZE = 4096;
+
+    private Path root;
+    private Path pakPath;
+    private byte[] pakBytes;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        root = Files.createTempDirectory("juepak_interrupt_");
+
+        final List<Path> files = new ArrayList<>();
+        files.add(TestPaks.writeFile(root, "files/Game/Hero.uasset", 2 * 1024 * 1024, 0));
+        files.add(TestPaks.writeFile(root, "files/Top.bin", 1000, 1));
+
+        pakPath = TestPaks.pack(root.resolve("test.pak"), files, new PakEntryParameters());
+        pakBytes = Files.readAllBytes(pakPath);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        TestPaks.deleteRecursively(root);
+    }
+
+    @Test
+    public void interruptTest() throws Exception
+    {
+        try (final FPakFile pakFile = new FPakFile(pakPath))
+        {
+            final Readers readers = new Readers(pakFile);
+
+            // Every interrupted reader closes the shared channel, others must not notice it
+            for (int i = 0; i < 50; i++)
+            {
+                final long readsBefore = readers.numReads.get();
+
+                final AtomicReference<Throwable> victimFailure = new AtomicReference<>();
+                final Thread victim = new Thread(() -> victimFailure.set(readUntilInterrupted(pakFile)));
+                victim.start();
+
+                // Let everyone read a bit
+                while (readers.numReads.get() < readsBefore + 100 && readers.failure.get() == null)
+                    Thread.yield();
+
+                victim.interrupt();
+                victim.join();
+
+                assertTrue(victimFailure.get() instanceof ClosedByInterruptException, String.valueOf(victimFailure));
+            }
+
+            readers.stop();
+            assertNull(readers.failure.get());
+
+            // Still readable by anyone else
+            final ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+            assertEquals(pakFile.read(buffer, 0), READ_SIZE);
+            assertEquals(buffer.array(), Arrays.copyOf(pakBytes, READ_SIZE));
+        }
+    }
+
+    @Test
+    public void closeTest() throws Exception
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            final FPakFile pakFile = new FPakFile(pakPath);
+            final Readers readers = new Readers(pakFile);
+
+            // Interrupted readers keep reopening the channel while the pak file is being closed
+            final AtomicBoolean closing = new AtomicBoolean(false);
+            final Thread victims = new Thread(() -> {
+                while (!closing.get())
+                {
+                    final Thread victim = new Thread(() -> readUntilInterrupted(pakFile));
+                    victim.start();
+                    victim.interrupt();
+
+                    try {
+                        victim.join();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            victims.start();
+
+            while (readers.numReads.get() < 100 && readers.failure.get() == null)
+                Thread.yield();
+
+            pakFile.close();
+            closing.set(true);
+            victims.join();
+            readers.stop();
+
+            // Readers stop with the pak file closed, nothing reopens it afterwards
+            final Throwable failure = readers.failure.get();
+            assertTrue(failure == null || failure instanceof ClosedChannelException, String.valueOf(failure));
+            expectThrows(ClosedChannelException.class, () -> pakFile.read(ByteBuffer.allocate(READ_SIZE), 0));
+        }
+    }
+
+    /**
+     * Reads until the thread is interrupted.
+     *
+     * @return The exception the read failed with.
+     */
+    private static Throwable readUntilInterrupted(FPakFile pakFile)
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+
+        try {
+            while (true)
+            {
+                buffer.clear();
+                pakFile.read(buffer, 0);
+            }
+        }
+        catch (IOException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Threads reading the pak file at random positions and checking the data, until stopped or failed.
+     */
+    private final class Readers
+    {
+        private final AtomicLong numReads = new AtomicLong();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final AtomicBoolean stopped = new AtomicBoolean(false);
+        private final List<Thread> threads = new ArrayList<>();
+
+        private Readers(FPakFile pakFile)
+        {
+            for (int i = 0; i < NUM_READERS; i++)
+            {
+                final Random random = new Random(i);
+
+                final Thread thread = new Thread(() -> {
+                    final ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+
+                    while (!stopped.get() && failure.get() == null)
+                    {
+                        final int position = random.nextInt(pakBytes.length - READ_SIZE);
+
+                        try {
+                            buffer.clear();
+                            while (buffer.hasRemaining())
+                                pakFile.read(buffer, position + buffer.position());
+                        }
+                        catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                            return;
+                        }
+
+                        final byte[] expected = Arrays.copyOfRange(pakBytes, position, position + READ_SIZE);
+                        if (!Arrays.equals(buffer.array(), expected))
+                        {
+                            failure.compareAndSet(null, new AssertionError("Data mismatch at " + position));
+                            return;
+                        }
+
+                        numReads.incrementAndGet();
+                    }
+                });
+
+                thread.start();
+                threads.add(thread);
+            }
+        }
+
+        private void stop() throws InterruptedException
+        {
+            stopped.set(true);
+
+            for (final Thread thread : threads)
+                thread.join();
+        }
+    }
+}
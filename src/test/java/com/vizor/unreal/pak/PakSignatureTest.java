@@ -0,0 +1,172 @@
+package com.vizor.unreal.pak;
+
+import com.vizor.unreal.util.PakSource;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static com.vizor.unreal.pak.PakSignature.CHUNK_SIZE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.expectThrows;
+
+public class PakSignatureTest
+{
+    /**
+     * Three whole chunks and a partial one.
+     */
+    private static final int PAK_SIZE = 3 * CHUNK_SIZE + 1000;
+
+    @Test
+    public void numChunksTest()
+    {
+        assertEquals(PakSignature.getNumChunks(0), 0);
+        assertEquals(PakSignature.getNumChunks(1), 1);
+        assertEquals(PakSignature.getNumChunks(CHUNK_SIZE - 1), 1);
+        assertEquals(PakSignature.getNumChunks(CHUNK_SIZE), 1);
+        assertEquals(PakSignature.getNumChunks(CHUNK_SIZE + 1), 2);
+        assertEquals(PakSignature.getNumChunks(PAK_SIZE), 4);
+    }
+
+    @Test
+    public void computeTest() throws IOException
+    {
+        final byte[] pak = createPak();
+        final PakSignature signature = PakSignature.compute(sourceOf(pak), pak.length);
+
+        assertEquals(signature.getNumChunks(), 4);
+
+        // The last chunk is hashed as is, without padding
+        for (int chunk = 0; chunk < signature.getNumChunks(); chunk++)
+        {
+            final int start = chunk * CHUNK_SIZE;
+
+            final CRC32 crc = new CRC32();
+            crc.update(pak, start, Math.min(CHUNK_SIZE, pak.length - start));
+
+            assertEquals(signature.getChunkHash(chunk), (int) crc.getValue());
+        }
+    }
+
+    @Test
+    public void readWriteTest() throws IOException
+    {
+        final byte[] pak = createPak();
+        final PakSignature signature = PakSignature.compute(sourceOf(pak), pak.length);
+
+        final Path path = Files.createTempFile("juepak_signature_", PakSignature.EXTENSION);
+        try {
+            signature.write(path);
+
+            final PakSignature read = PakSignature.read(path);
+            assertEquals(read.getNumChunks(), signature.getNumChunks());
+            assertEquals(read.getEncryptedHash().length, 0);
+
+            for (int chunk = 0; chunk < signature.getNumChunks(); chunk++)
+                assertEquals(read.getChunkHash(chunk), signature.getChunkHash(chunk));
+
+            // A truncated signature is rejected
+            final byte[] bytes = Files.readAllBytes(path);
+            Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+            expectThrows(IOException.class, () -> PakSignature.read(path));
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void verifyReadTest() throws IOException
+    {
+        final byte[] pak = createPak();
+        final PakSignature signature = PakSignature.compute(sourceOf(pak), pak.length);
+
+        final PakChunkVerifier verifier = new PakChunkVerifier(signature, sourceOf(pak), pak.length, "test.pak");
+
+        // Reads of whole chunks, of parts of chunks and across chunks
+        readVerified(verifier, pak, 0, CHUNK_SIZE);
+        readVerified(verifier, pak, CHUNK_SIZE + 10, 100);
+        readVerified(verifier, pak, 2 * CHUNK_SIZE - 10, CHUNK_SIZE + 20);
+        readVerified(verifier, pak, pak.length - 500, 500);
+
+        assertEquals(verifier.verifyAll().length, 0);
+    }
+
+    @Test
+    public void flippedByteTest() throws IOException
+    {
+        final byte[] pak = createPak();
+        final PakSignature signature = PakSignature.compute(sourceOf(pak), pak.length);
+
+        // A byte of the second chunk and a byte of the last (partial) chunk
+        final byte[] corrupt = pak.clone();
+        corrupt[CHUNK_SIZE + 30000] ^= 1;
+        corrupt[3 * CHUNK_SIZE + 900] ^= 1;
+
+        // The first chunk is fine
+        final PakChunkVerifier verifier = new PakChunkVerifier(signature, sourceOf(corrupt), PAK_SIZE, "test.pak");
+        readVerified(verifier, corrupt, 0, CHUNK_SIZE);
+
+        // Fully covered by the read, the read data is checked
+        expectThrows(IOException.class, () -> readVerified(verifier, corrupt, CHUNK_SIZE, CHUNK_SIZE));
+        expectThrows(IOException.class, () -> readVerified(verifier, corrupt, 3 * CHUNK_SIZE, 1000));
+
+        // Partially covered by the read (the flipped byte is not even read), the whole chunk is read again
+        expectThrows(IOException.class, () -> readVerified(verifier, corrupt, CHUNK_SIZE + 10, 100));
+        expectThrows(IOException.class, () -> readVerified(verifier, corrupt, 3 * CHUNK_SIZE, 10));
+
+        assertEquals(verifier.verifyAll(), new int[] {1, 3});
+    }
+
+    @Test
+    public void sizeMismatchTest() throws IOException
+    {
+        final byte[] pak = createPak();
+        final PakSignature signature = PakSignature.compute(sourceOf(pak), pak.length);
+
+        expectThrows(IllegalArgumentException.class,
+                () -> new PakChunkVerifier(signature, sourceOf(pak), pak.length + CHUNK_SIZE, "test.pak"));
+    }
+
+    /**
+     * Reads data as {@link FPakFile#read(ByteBuffer, long)} does, at some offset of the destination buffer.
+     */
+    private static void readVerified(PakChunkVerifier verifier, byte[] pak, int position, int length) throws IOException
+    {
+        final ByteBuffer dst = ByteBuffer.allocate(length + 16);
+        dst.position(16);
+
+        final int dstStart = dst.position();
+        dst.put(pak, position, length);
+
+        verifier.verifyRead(dst, dstStart, position, length);
+        assertFalse(dst.hasRemaining());
+    }
+
+    private static PakSource sourceOf(byte[] pak)
+    {
+        return (dst, position) -> {
+            if (position >= pak.length)
+                return -1;
+
+            final int length = (int) Math.min(dst.remaining(), pak.length - position);
+            dst.put(pak, (int) position, length);
+
+            return length;
+        };
+    }
+
+    private static byte[] createPak()
+    {
+        final byte[] pak = new byte[PAK_SIZE];
+        new Random(42).nextBytes(pak);
+
+        return pak;
+    }
+}
@@ -0,0 +1,147 @@
+package com.vizor.unreal.pak;
+
+import com.vizor.unreal.packer.Packer;
+import com.vizor.unreal.packer.PakEntryParameters;
+import com.vizor.unreal.ue4.FCoreDelegates;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Files and pak files for tests, created in temporary directories.
+ */
+public final class TestPaks
+{
+    /**
+     * AES-256 key of encrypted test paks.
+     */
+    private static final byte[] KEY = new byte[32];
+
+    static {
+        new Random(256).nextBytes(KEY);
+    }
+
+    private TestPaks()
+    {
+        throw new AssertionError("No " + getClass() + " instances for you");
+    }
+
+    /**
+     * Binds the test key to the pak encryption key delegate.
+     */
+    public static void bindKey()
+    {
+        FCoreDelegates.GetPakEncryptionKeyDelegate().BindLambda(bytes -> System.arraycopy(KEY, 0, bytes, 0,
+                KEY.length));
+    }
+
+    /**
+     * Gets the test key.
+     *
+     * @return A copy of the key.
+     */
+    public static byte[] getKey()
+    {
+        return KEY.clone();
+    }
+
+    /**
+     * Writes a file of pseudo-random bytes, creating parent directories.
+     *
+     * @param root Root directory.
+     * @param filename Filename relative to the root, like "Game/Content/Hero.uasset".
+     * @param size Number of bytes.
+     * @param seed Seed of the bytes, files with the same seed and size are equal.
+     * @return Path to the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Path writeFile(Path root, String filename, int size, long seed) throws IOException
+    {
+        final byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+
+        // Make a half of the data compressible
+        for (int i = 0; i < size / 2; i++)
+            data[i] = (byte) (i % 7);
+
+        final Path path = root.resolve(filename);
+        Files.createDirectories(path.getParent());
+
+        return Files.write(path, data);
+    }
+
+    /**
+     * Packs files into a pak file, filenames are relative to the common path of the files.
+     *
+     * @param archive Path to the pak file.
+     * @param files Files to pack, in this order.
+     * @param params Packing parameters of every file.
+     * @return Path to the pak file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Path pack(Path archive, List<Path> files, PakEntryParameters params) throws IOException
+    {
+        return pack(archive, files, params, false);
+    }
+
+    /**
+     * Packs files into a pak file, filenames are relative to the common path of the files.
+     *
+     * @param archive Path to the pak file.
+     * @param files Files to pack, in this order.
+     * @param params Packing parameters of every file.
+     * @param encryptIndex Whether the index should be encrypted (with the key bound by {@link #bindKey()}).
+     * @return Path to the pak file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Path pack(Path archive, List<Path> files, PakEntryParameters params, boolean encryptIndex)
+            throws IOException
+    {
+        final Packer packer = Packer.builder()
+                .customMountPoint("../../../")
+                .encryptIndex(encryptIndex)
+                .archiveFile(archive)
+                .build();
+
+        for (final Path file : files)
+            packer.add(file, params);
+
+        packer.close();
+        return archive;
+    }
+
+    /**
+     * Deletes a directory with all its content, does nothing if it does not exist.
+     *
+     * @param directory A directory.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void deleteRecursively(Path directory) throws IOException
+    {
+        if (directory == null || !Files.exists(directory))
+            return;
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+            {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
+            {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,230 @@
+package com.vizor.unreal.ue4;
+
+import com.vizor.unreal.util.ConcurrentLRU;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ConcurrentLRUTest
+{
+    @Test
+    public void preemptionTest()
+    {
+        final ConcurrentLRU<Integer, String> lru = ConcurrentLRU.<Integer, String>builder()
+                .maximumSize(3)
+                .concurrencyLevel(1)
+                .build();
+
+        lru.put(0, "Zero");
+        lru.put(1, "One");
+        lru.put(2, "Two");
+
+        assertEquals(lru.get(0), "Zero");
+
+        // Should replace (1 -> One)
+        lru.put(3, "Three");
+
+        assertTrue(lru.containsKey(0));
+        assertTrue(lru.containsKey(2));
+        assertTrue(lru.containsKey(3));
+        assertFalse(lru.containsKey(1));
+    }
+
+    @Test
+    public void weigherAndListenerTest()
+    {
+        final List<String> evicted = new ArrayList<>();
+
+        final ConcurrentLRU<Integer, byte[]> lru = ConcurrentLRU.<Integer, byte[]>builder()
+                .maximumSize(100)
+                .weigher((k, v) -> v.length)
+                .evictionListener((k, v) -> evicted.add(k + ":" + v.length))
+                .concurrencyLevel(1)
+                .build();
+
+        lru.put(0, new byte[40]);
+        lru.put(1, new byte[40]);
+        assertEquals(lru.getWeightedSize(), 80);
+
+        // Does not fit, the eldest one goes away
+        lru.put(2, new byte[30]);
+        assertEquals(evicted.size(), 1);
+        assertEquals(evicted.get(0), "0:40");
+        assertEquals(lru.getWeightedSize(), 70);
+
+        // Heavier than the whole cache, evicts everything
+        lru.put(3, new byte[101]);
+        assertEquals(lru.size(), 0);
+        assertEquals(lru.getWeightedSize(), 0);
+
+        final ConcurrentLRU.Stats stats = lru.stats();
+        assertEquals(stats.getEvictionCount(), 4);
+        assertEquals(stats.getEvictionWeight(), 40 + 40 + 30 + 101);
+    }
+
+    @Test
+    public void statsTest()
+    {
+        final ConcurrentLRU<Integer, Integer> lru = ConcurrentLRU.<Integer, Integer>builder()
+                .maximumSize(16)
+                .build();
+
+        assertNull(lru.get(0));
+        assertEquals(lru.get(0, k -> k + 1).intValue(), 1);
+        assertEquals(lru.get(0, k -> k + 2).intValue(), 1);
+
+        final ConcurrentLRU.Stats stats = lru.stats();
+        assertEquals(stats.getMissCount(), 2);
+        assertEquals(stats.getHitCount(), 1);
+        assertEquals(stats.getEvictionCount(), 0);
+    }
+
+    @Test
+    public void concurrentAccessTest() throws Exception
+    {
+        concurrentAccess(false);
+        concurrentAccess(true);
+    }
+
+    private static void concurrentAccess(boolean frequencyAdmission) throws Exception
+    {
+        final int maximumSize = 1024;
+        final int numThreads = 8;
+        final int numRequests = 100_000;
+
+        final ConcurrentLRU<Integer, Integer> lru = ConcurrentLRU.<Integer, Integer>builder()
+                .maximumSize(maximumSize)
+                .frequencyAdmission(frequencyAdmission)
+                .build();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++)
+            {
+                futures.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < numRequests; i++)
+                    {
+                        final int key = random.nextInt(maximumSize * 4);
+                        assertEquals(lru.get(key, k -> -k).intValue(), -key);
+                    }
+                }));
+            }
+
+            for (final Future<?> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdown();
+            executor.awaitTermination(10, SECONDS);
+        }
+
+        final ConcurrentLRU.Stats stats = lru.stats();
+
+        assertEquals(stats.getRequestCount(), (long) numThreads * numRequests);
+        assertTrue(lru.size() <= maximumSize);
+        assertEquals(lru.getWeightedSize(), lru.size());
+
+        // Every insertion is a miss, but a miss inserts nothing if another thread has loaded the same key meanwhile
+        assertTrue(stats.getEvictionCount() + lru.size() <= stats.getMissCount());
+    }
+
+    @Test
+    public void admissionTest()
+    {
+        final ConcurrentLRU<Integer, String> lru = ConcurrentLRU.<Integer, String>builder()
+                .maximumSize(100)
+                .frequencyAdmission(true)
+                .concurrencyLevel(1)
+                .build();
+
+        for (int i = 0; i < 100; i++)
+            lru.put(i, Integer.toString(i));
+
+        // Make the first half hot
+        for (int round = 0; round < 4; round++)
+        {
+            for (int i = 0; i < 50; i++)
+                assertEquals(lru.get(i), Integer.toString(i));
+        }
+
+        // Requested once, these should not push hot entries out
+        for (int i = 1000; i < 2000; i++)
+            lru.put(i, Integer.toString(i));
+
+        for (int i = 0; i < 50; i++)
+            assertTrue(lru.containsKey(i));
+
+        assertEquals(lru.size(), 100);
+        assertEquals(lru.getWeightedSize(), 100);
+        assertEquals(lru.stats().getEvictionCount(), 1000);
+    }
+
+    /**
+     * Replays a day of hot lookups, a nightly full scan, and the next day of hot lookups. Reports hit rates of the
+     * day after the scan with and without frequency admission.
+     */
+    @Test
+    public void scanResistanceTest()
+    {
+        final int cacheSize = 2_000;
+        final int hotSetSize = 1_000;
+        final int scanSize = 100_000;
+        final int lookupsPerDay = 200_000;
+
+        final double lruHitRate = replayScanWorkload(cacheSize, false, hotSetSize, scanSize, lookupsPerDay);
+        final double admissionHitRate = replayScanWorkload(cacheSize, true, hotSetSize, scanSize, lookupsPerDay);
+
+        // A scan of unique keys is larger than the cache, so it cools the whole LRU down
+        assertTrue(admissionHitRate > lruHitRate);
+        assertTrue(admissionHitRate > 0.95);
+    }
+
+    private static double replayScanWorkload(int cacheSize, boolean frequencyAdmission, int hotSetSize,
+                                             int scanSize, int lookupsPerDay)
+    {
+        final ConcurrentLRU<Integer, Integer> lru = ConcurrentLRU.<Integer, Integer>builder()
+                .maximumSize(cacheSize)
+                .frequencyAdmission(frequencyAdmission)
+                .build();
+
+        final Random random = new Random(42);
+
+        // Day: skewed lookups over the hot set (the square makes lower keys hotter)
+        for (int i = 0; i < lookupsPerDay; i++)
+            lru.get(hotKey(random, hotSetSize), k -> k);
+
+        // Night: every key is requested exactly once
+        for (int i = 0; i < scanSize; i++)
+            lru.get(hotSetSize + i, k -> k);
+
+        // The next morning, only the first hour is measured
+        final ConcurrentLRU.Stats before = lru.stats();
+        for (int i = 0; i < lookupsPerDay / 24; i++)
+            lru.get(hotKey(random, hotSetSize), k -> k);
+
+        final ConcurrentLRU.Stats after = lru.stats();
+
+        return (double) (after.getHitCount() - before.getHitCount()) /
+                (after.getRequestCount() - before.getRequestCount());
+    }
+
+    private static int hotKey(Random random, int hotSetSize)
+    {
+        final double r = random.nextDouble();
+        return (int) (r * r * hotSetSize);
+    }
+}
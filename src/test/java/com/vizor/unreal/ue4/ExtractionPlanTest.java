@@ -0,0 +1,193 @@
+package com.vizor.unreal.ue4;
+
+import com.vizor.unreal.packer.Packer;
+import com.vizor.unreal.packer.PakEntryParameters;
+import com.vizor.unreal.pak.FPakFile;
+import com.vizor.unreal.pak.PakIteratorEntry;
+import com.vizor.unreal.pak.TestPaks;
+import com.vizor.unreal.util.BatchExtractor;
+import com.vizor.unreal.util.ExtractionPlan;
+import com.vizor.unreal.util.PakExtractor;
+import com.vizor.unreal.util.ProgressTracker;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class ExtractionPlanTest
+{
+    private static final List<String> FILENAMES = Arrays.asList("Game/A.bin", "Game/B.bin", "Game/C.bin",
+            "Game/Maps/D.umap", "Game/Maps/E.umap", "Game/Maps/F.umap", "Game/G.bin", "H.bin");
+
+    /**
+     * Sizes of the files: runs are split by the gap of C (if it is left out), by D and E together being larger
+     * than a run, and F is larger than a run by itself.
+     */
+    private static final int[] SIZES = {1000, 50000, 200000, 3 * 1024 * 1024, 2 * 1024 * 1024, 5 * 1024 * 1024, 0, 10};
+
+    private Path root;
+    private final List<Path> files = new ArrayList<>();
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        root = Files.createTempDirectory("juepak_plan_");
+
+        files.clear();
+        for (int i = 0; i < FILENAMES.size(); i++)
+            files.add(TestPaks.writeFile(root.resolve("files"), FILENAMES.get(i), SIZES[i], i));
+
+        TestPaks.bindKey();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        TestPaks.deleteRecursively(root);
+    }
+
+    @Test
+    public void runsTest() throws IOException
+    {
+        try (final FPakFile pakFile = new FPakFile(pack("plain.pak", 0)))
+        {
+            assertEquals(ExtractionPlan.of(pakFile, pakFile, root.resolve("all")).getNumRuns(), 4);
+
+            final List<PakIteratorEntry> entries = new ArrayList<>();
+            for (final PakIteratorEntry entry : pakFile)
+            {
+                if (!entry.Filename.equals("Game/C.bin"))
+                    entries.add(entry);
+            }
+
+            final ExtractionPlan plan = ExtractionPlan.of(pakFile, entries, root.resolve("some"));
+            assertEquals(plan.getNumRuns(), 5);
+            assertEquals(plan.getNumEntries(), FILENAMES.size() - 1);
+            assertEquals(plan.getTotalBytes(), Arrays.stream(SIZES).sum() - SIZES[2]);
+
+            plan.execute(3);
+            assertExtracted(pakFile, root.resolve("some"), entries);
+            assertFalse(Files.exists(root.resolve("some/Game/C.bin")));
+        }
+    }
+
+    @Test
+    public void roundTripTest() throws IOException
+    {
+        // Plain, compressed, encrypted, compressed and encrypted, all of them mixed
+        for (int mode = 0; mode < 5; mode++)
+        {
+            final Path extracted = root.resolve("extracted" + mode);
+
+            try (final FPakFile pakFile = new FPakFile(pack("test" + mode + ".pak", mode)))
+            {
+                final List<PakIteratorEntry> entries = new ArrayList<>();
+                pakFile.forEach(entries::add);
+
+                ExtractionPlan.of(pakFile, entries, extracted.resolve("plan")).execute(2);
+                assertExtracted(pakFile, extracted.resolve("plan"), entries);
+
+                BatchExtractor.extract(pakFile, extracted.resolve("batch"), 3);
+                assertExtracted(pakFile, extracted.resolve("batch"), entries);
+            }
+        }
+    }
+
+    @Test
+    public void failureTest() throws IOException
+    {
+        try (final FPakFile pakFile = new FPakFile(pack("test.pak", 4)))
+        {
+            // A directory in place of an entry, the entry fails to open
+            final Path extracted = root.resolve("extracted");
+            Files.createDirectories(extracted.resolve("Game/Maps/E.umap"));
+
+            expectThrows(IOException.class, () -> BatchExtractor.extract(pakFile, extracted, 2));
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+
+    @Test
+    public void cancellationTest() throws IOException
+    {
+        try (final FPakFile pakFile = new FPakFile(pack("test.pak", 1)))
+        {
+            final ProgressTracker tracker = ProgressTracker.builder()
+                    .byteInterval(1)
+                    .build();
+
+            // Cancelled on the first bytes reported
+            tracker.addListener(event -> tracker.cancel());
+
+            final Path extracted = root.resolve("extracted");
+            expectThrows(CancellationException.class, () -> BatchExtractor.extract(pakFile, extracted, 2, tracker));
+            assertTrue(tracker.isCancelled());
+
+            // Large entries report their progress more than once, so they are never finished
+            final Path largest = extracted.resolve("Game/Maps/F.umap");
+            assertTrue(Files.notExists(largest) || Files.size(largest) < SIZES[5]);
+        }
+    }
+
+    /**
+     * Packs the files.
+     *
+     * @param filename Filename of the pak file.
+     * @param mode Packing parameters: 0 - plain, 1 - compressed, 2 - encrypted, 3 - compressed and encrypted,
+     *             4 - each file has its own parameters.
+     */
+    private Path pack(String filename, int mode) throws IOException
+    {
+        final Path archive = root.resolve(filename);
+        final Packer packer = Packer.builder()
+                .customMountPoint("../../../")
+                .archiveFile(archive)
+                .build();
+
+        for (int i = 0; i < files.size(); i++)
+        {
+            final int fileMode = (mode == 4) ? (i % 4) : mode;
+            final PakEntryParameters params = new PakEntryParameters();
+
+            if (fileMode == 1 || fileMode == 3)
+                params.compress();
+            if (fileMode == 2 || fileMode == 3)
+                params.encrypt();
+
+            packer.add(files.get(i), params);
+        }
+
+        packer.close();
+        return archive;
+    }
+
+    /**
+     * Compares extracted files with the source files and with entries extracted one by one.
+     */
+    private void assertExtracted(FPakFile pakFile, Path extracted, List<PakIteratorEntry> entries) throws IOException
+    {
+        for (final PakIteratorEntry entry : entries)
+        {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            PakExtractor.Extract(pakFile, entry.Entry, Channels.newChannel(output), null);
+
+            final byte[] actual = Files.readAllBytes(extracted.resolve(entry.Filename));
+            assertEquals(actual, output.toByteArray(), entry.Filename);
+            assertEquals(actual, Files.readAllBytes(root.resolve("files").resolve(entry.Filename)), entry.Filename);
+        }
+    }
+}
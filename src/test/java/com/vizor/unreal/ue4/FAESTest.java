@@ -0,0 +1,92 @@
+package com.vizor.unreal.ue4;
+
+import org.testng.annotations.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+public class FAESTest
+{
+    @Test
+    public void parallelTest() throws Exception
+    {
+        final Random random = new Random(42);
+
+        final byte[] key = new byte[32];
+        random.nextBytes(key);
+
+        final Cipher reference = Cipher.getInstance("AES/ECB/NoPadding");
+        reference.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+
+        // Small ones stay sequential, large ones are split into chunks (the last one is partial)
+        for (final int size : new int[] {16, 64 * 1024, 3 * 1024 * 1024 + 48})
+        {
+            final byte[] plain = new byte[size];
+            random.nextBytes(plain);
+
+            final byte[] data = plain.clone();
+            FAES.EncryptData(data, size, key);
+            assertEquals(data, reference.doFinal(plain));
+
+            final ByteBuffer direct = ByteBuffer.allocateDirect(size + 16);
+            direct.position(16);
+            direct.put(data);
+            direct.position(16);
+
+            FAES.DecryptData(direct, size, key);
+            assertEquals(direct.position(), 16);
+
+            final byte[] decrypted = new byte[size];
+            direct.get(decrypted);
+            assertEquals(decrypted, plain);
+
+            FAES.DecryptData(data, size, key);
+            assertEquals(data, plain);
+        }
+    }
+
+    @Test
+    public void concurrentTest() throws Exception
+    {
+        final byte[] key = new byte[32];
+        Arrays.fill(key, (byte) 7);
+
+        final byte[] plain = new byte[2 * 1024 * 1024];
+        new Random(7).nextBytes(plain);
+
+        final Thread[] threads = new Thread[4];
+        final Throwable[] failures = new Throwable[threads.length];
+
+        for (int i = 0; i < threads.length; i++)
+        {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int round = 0; round < 4; round++)
+                    {
+                        final byte[] data = plain.clone();
+                        FAES.EncryptData(data, data.length, key);
+                        FAES.DecryptData(data, data.length, key);
+
+                        assertEquals(data, plain);
+                    }
+                }
+                catch (Throwable t) {
+                    failures[index] = t;
+                }
+            });
+            threads[i].start();
+        }
+
+        for (final Thread thread : threads)
+            thread.join();
+
+        for (final Throwable failure : failures)
+            assertEquals(failure, null);
+    }
+}
@@ -0,0 +1,79 @@
+package com.vizor.unreal.ue4;
+
+import com.vizor.unreal.pak.FPakCompressedBlock;
+import com.vizor.unreal.pak.FPakCompressedBlockSerializer;
+import com.vizor.unreal.util.Sizeof;
+import com.vizor.unreal.util.UE4Deserializer;
+import com.vizor.unreal.util.UE4Serializer;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Serializers generated by the FStruct processor must match the reflective serialization.
+ */
+public class FStructSerializerTest
+{
+    @Test
+    public void sizeTest()
+    {
+        assertEquals(FPakCompressedBlockSerializer.SIZE, Sizeof.sizeof(FPakCompressedBlock.class));
+        assertEquals(FGuidSerializer.SIZE, Sizeof.sizeof(FGuid.class));
+    }
+
+    @Test
+    public void compressedBlocksTest()
+    {
+        final Random random = new Random(0);
+
+        for (final int numBlocks : new int[] {0, 1, 2, 1000})
+        {
+            final FPakCompressedBlock[] blocks = new FPakCompressedBlock[numBlocks];
+            for (int i = 0; i < numBlocks; i++)
+                blocks[i] = new FPakCompressedBlock(random.nextLong(), random.nextLong());
+
+            final int size = Integer.BYTES + numBlocks * FPakCompressedBlockSerializer.SIZE;
+
+            // Generated and reflective writes
+            final ByteBuffer generated = ByteBuffer.allocate(size);
+            FPakCompressedBlockSerializer.WriteArray(generated, blocks);
+            assertEquals(generated.position(), size);
+
+            final ByteBuffer reflective = ByteBuffer.allocate(size);
+            UE4Serializer.Write(reflective, blocks);
+            assertEquals(reflective.array(), generated.array());
+
+            // Generated and reflective reads of the same bytes
+            generated.flip();
+            assertEquals(FPakCompressedBlockSerializer.ReadArray(generated.duplicate()), blocks);
+            assertEquals(UE4Deserializer.Read(generated.duplicate(), FPakCompressedBlock[].class), blocks);
+        }
+    }
+
+    @Test
+    public void guidsTest()
+    {
+        final Random random = new Random(1);
+
+        final FGuid[] guids = new FGuid[10];
+        for (int i = 0; i < guids.length; i++)
+            guids[i] = new FGuid(random.nextInt(), random.nextInt(), random.nextInt(), random.nextInt());
+
+        final int size = Integer.BYTES + guids.length * FGuidSerializer.SIZE;
+
+        final ByteBuffer generated = ByteBuffer.allocate(size);
+        FGuidSerializer.WriteArray(generated, guids);
+
+        final ByteBuffer reflective = ByteBuffer.allocate(size);
+        UE4Serializer.Write(reflective, Arrays.asList(guids));
+        assertEquals(reflective.array(), generated.array());
+
+        generated.flip();
+        assertEquals(FGuidSerializer.ReadArray(generated.duplicate()), guids);
+        assertEquals(UE4Deserializer.Read(generated.duplicate(), FGuid[].class), guids);
+    }
+}
@@ -0,0 +1,159 @@
+package com.vizor.unreal.ue4;
+
+import com.vizor.unreal.packer.PakEntryParameters;
+import com.vizor.unreal.pak.EntryVerification;
+import com.vizor.unreal.pak.FPakEntry;
+import com.vizor.unreal.pak.FPakFile;
+import com.vizor.unreal.pak.PakIteratorEntry;
+import com.vizor.unreal.pak.TestPaks;
+import com.vizor.unreal.util.PakExtractor;
+import com.vizor.unreal.util.PakSource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class PakExtractorTest
+{
+    /**
+     * Maximum size of a single read of the extractor.
+     */
+    private static final int MAX_READ_SIZE = 1024 * 1024;
+
+    /**
+     * Sizes around the read size, the compressed data of the largest ones takes several reads.
+     */
+    private static final int[] SIZES = {MAX_READ_SIZE - 1, MAX_READ_SIZE, MAX_READ_SIZE + 1, 2 * MAX_READ_SIZE + 7,
+            7 * MAX_READ_SIZE / 2};
+
+    private Path root;
+    private final List<Path> files = new ArrayList<>();
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        root = Files.createTempDirectory("juepak_extractor_");
+
+        files.clear();
+        for (int i = 0; i < SIZES.length; i++)
+            files.add(TestPaks.writeFile(root.resolve("files"), "Game/File" + i + ".bin", SIZES[i], i));
+
+        TestPaks.bindKey();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        TestPaks.deleteRecursively(root);
+    }
+
+    @Test
+    public void multipleReadsTest() throws IOException
+    {
+        for (final boolean encrypt : new boolean[] {false, true})
+        {
+            final PakEntryParameters params = new PakEntryParameters().compress();
+            if (encrypt)
+                params.encrypt();
+
+            try (final FPakFile pakFile = new FPakFile(TestPaks.pack(root.resolve("test.pak"), files, params)))
+            {
+                boolean multipleReads = false;
+
+                for (final PakIteratorEntry entry : pakFile)
+                {
+                    final String message = entry.Filename + ", encrypted: " + encrypt;
+                    final byte[] expected = Files.readAllBytes(root.resolve("files/Game").resolve(entry.Filename));
+
+                    assertEquals(entry.Entry.IsEncrypted(), encrypt, message);
+                    assertTrue(entry.Entry.CompressionBlocks.length > 1, message);
+                    multipleReads |= entry.Entry.Size > MAX_READ_SIZE;
+
+                    // To a channel, reporting the progress
+                    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    final List<Double> progress = new ArrayList<>();
+                    PakExtractor.Extract(pakFile, entry.Entry, Channels.newChannel(output), progress::add);
+
+                    assertEquals(output.toByteArray(), expected, message);
+                    for (int i = 1; i < progress.size(); i++)
+                        assertTrue(progress.get(i) >= progress.get(i - 1), message);
+
+                    // To a buffer
+                    final ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+                    PakExtractor.Extract(pakFile, entry.Entry, buffer, null);
+                    assertEquals(buffer.array(), expected, message);
+
+                    // From a source returning short reads
+                    final PakSource shortReads = (dst, position) -> {
+                        final ByteBuffer view = dst.duplicate();
+                        view.limit(view.position() + Math.min(dst.remaining(), 1000));
+
+                        final int bytesRead = pakFile.read(view, position);
+                        if (bytesRead > 0)
+                            dst.position(dst.position() + bytesRead);
+
+                        return bytesRead;
+                    };
+
+                    output.reset();
+                    PakExtractor.Extract(pakFile, entry.Entry, shortReads, Channels.newChannel(output), null);
+                    assertEquals(output.toByteArray(), expected, message);
+                }
+
+                assertTrue(multipleReads);
+            }
+        }
+    }
+
+    @Test
+    public void illegalBlockSizeTest() throws IOException
+    {
+        final Path pakPath = TestPaks.pack(root.resolve("test.pak"), files, new PakEntryParameters().compress());
+
+        try (final FPakFile pakFile = new FPakFile(pakPath))
+        {
+            // The index is corrupt rather than the data, the header is not checked against it
+            pakFile.setEntryVerification(EntryVerification.NONE);
+
+            final FPakEntry entry = pakFile.findEntry("File4.bin").Entry;
+
+            // Larger than a read, then negative
+            for (final long delta : new long[] {MAX_READ_SIZE + 1, -entry.CompressionBlocks[1].CompressedEnd})
+            {
+                final FPakEntry corrupt = copy(entry, pakFile.getInfo().Version);
+                corrupt.CompressionBlocks[1].CompressedEnd += delta;
+
+                final IOException toChannel = expectThrows(IOException.class, () -> PakExtractor.Extract(pakFile,
+                        corrupt, Channels.newChannel(new ByteArrayOutputStream()), null));
+                assertTrue(toChannel.getMessage().startsWith("Illegal block size"), toChannel.getMessage());
+
+                final IOException toBuffer = expectThrows(IOException.class, () -> PakExtractor.Extract(pakFile,
+                        corrupt, ByteBuffer.allocate(SIZES[4]), null));
+                assertTrue(toBuffer.getMessage().startsWith("Illegal block size"), toBuffer.getMessage());
+            }
+        }
+    }
+
+    private static FPakEntry copy(FPakEntry entry, int version)
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) entry.GetSerializedSize(version));
+        entry.Serialize(buffer, version);
+        buffer.flip();
+
+        final FPakEntry copy = new FPakEntry();
+        copy.Deserialize(buffer, version);
+        return copy;
+    }
+}
@@ -0,0 +1,63 @@
+package com.vizor.unreal.ue4;
+
+import com.vizor.unreal.pak.PakGlob;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class PakGlobTest
+{
+    @Test
+    public void segmentTest()
+    {
+        final PakGlob glob = PakGlob.compile("Game/Content/*.u{asset,exp}");
+
+        assertTrue(glob.test("Game/Content/Hero.uasset"));
+        assertTrue(glob.test("Game/Content/Hero.uexp"));
+        assertFalse(glob.test("Game/Content/Hero.ubulk"));
+        assertFalse(glob.test("Game/Content/Maps/Hero.uasset"));
+        assertFalse(glob.test("Game/Hero.uasset"));
+
+        final PakGlob chars = PakGlob.compile("Game/[A-C]?[!x].bin");
+        assertTrue(chars.test("Game/B1y.bin"));
+        assertFalse(chars.test("Game/B1x.bin"));
+        assertFalse(chars.test("Game/D1y.bin"));
+    }
+
+    @Test
+    public void anyDirectoriesTest()
+    {
+        final PakGlob leading = PakGlob.compile("**/*.uasset");
+        assertTrue(leading.test("Hero.uasset"));
+        assertTrue(leading.test("Game/Content/Hero.uasset"));
+        assertFalse(leading.test("Game/Content/Hero.uexp"));
+
+        final PakGlob middle = PakGlob.compile("Game/**/Maps/*");
+        assertTrue(middle.test("Game/Maps/Level.umap"));
+        assertTrue(middle.test("Game/Content/Episode1/Maps/Level.umap"));
+        assertFalse(middle.test("Engine/Maps/Level.umap"));
+        assertFalse(middle.test("Game/Maps"));
+
+        final PakGlob trailing = PakGlob.compile("Game/Content/**");
+        assertTrue(trailing.test("Game/Content/Hero.uasset"));
+        assertTrue(trailing.test("Game/Content/A/B/C.bin"));
+        assertFalse(trailing.test("Game/Config/Default.ini"));
+    }
+
+    @Test
+    public void invalidTest()
+    {
+        for (final String pattern : new String[] {"Game//*.bin", "Game/{a,b", "Game/[ab", "Game/\\"})
+        {
+            try {
+                PakGlob.compile(pattern);
+                fail("Must not compile: " + pattern);
+            }
+            catch (IllegalArgumentException ignore) {
+                // Expected
+            }
+        }
+    }
+}
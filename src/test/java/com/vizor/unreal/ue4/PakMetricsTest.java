@@ -0,0 +1,81 @@
+package com.vizor.unreal.ue4;
+
+import com.vizor.unreal.metrics.PakMetrics;
+import com.vizor.unreal.metrics.PakMetrics.Counter;
+import com.vizor.unreal.metrics.PakMetrics.Stage;
+import com.vizor.unreal.metrics.PakMetricsSnapshot;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PakMetricsTest
+{
+    @AfterMethod
+    public void tearDown()
+    {
+        PakMetrics.setEnabled(false);
+        PakMetrics.reset();
+        PakMetrics.unregisterMBean();
+    }
+
+    @Test
+    public void disabledTest()
+    {
+        PakMetrics.setEnabled(false);
+
+        PakMetrics.add(Counter.BYTES_READ, 100);
+        PakMetrics.stopTimer(Stage.EXTRACT_READ, PakMetrics.startTimer());
+
+        final PakMetricsSnapshot snapshot = PakMetrics.snapshot();
+        assertEquals(snapshot.get(Counter.BYTES_READ), 0);
+        assertEquals(snapshot.get(Stage.EXTRACT_READ).getCount(), 0);
+    }
+
+    @Test
+    public void snapshotTest()
+    {
+        PakMetrics.setEnabled(true);
+
+        PakMetrics.add(Counter.BYTES_READ, 100);
+        PakMetrics.add(Counter.BYTES_READ, 28);
+        PakMetrics.increment(Counter.ENTRIES_EXTRACTED);
+
+        for (int i = 0; i < 10; i++)
+            PakMetrics.stopTimer(Stage.EXTRACT_INFLATE, PakMetrics.startTimer());
+
+        final PakMetricsSnapshot snapshot = PakMetrics.snapshot();
+        assertEquals(snapshot.get(Counter.BYTES_READ), 128);
+        assertEquals(snapshot.get(Counter.ENTRIES_EXTRACTED), 1);
+
+        final PakMetricsSnapshot.Latency latency = snapshot.get(Stage.EXTRACT_INFLATE);
+        assertEquals(latency.getCount(), 10);
+        assertTrue(latency.getPercentileNanos(50) <= latency.getMaxNanos());
+        assertTrue(latency.getPercentileNanos(99) <= latency.getMaxNanos());
+        assertTrue(latency.getMeanNanos() <= latency.getMaxNanos());
+
+        PakMetrics.reset();
+        assertEquals(PakMetrics.snapshot().get(Counter.BYTES_READ), 0);
+    }
+
+    @Test
+    public void mbeanTest() throws Exception
+    {
+        PakMetrics.setEnabled(true);
+        PakMetrics.add(Counter.BYTES_INFLATED, 42);
+
+        PakMetrics.registerMBean();
+        PakMetrics.registerMBean();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(PakMetrics.OBJECT_NAME);
+
+        assertEquals(server.getAttribute(name, "BytesInflated"), 42L);
+        assertEquals(server.getAttribute(name, "Enabled"), true);
+    }
+}
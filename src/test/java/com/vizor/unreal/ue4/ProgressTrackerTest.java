@@ -0,0 +1,88 @@
+package com.vizor.unreal.ue4;
+
+import com.vizor.unreal.util.ProgressEvent;
+import com.vizor.unreal.util.ProgressTracker;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ProgressTrackerTest
+{
+    @Test
+    public void throttlingTest()
+    {
+        final List<ProgressEvent> events = new ArrayList<>();
+
+        final ProgressTracker tracker = ProgressTracker.builder()
+                .listener(events::add)
+                .interval(1, TimeUnit.HOURS)
+                .byteInterval(1024 * 1024)
+                .build();
+
+        tracker.start(8 * 1024 * 1024, 2);
+
+        // 64 KiB chunks, like the packer reports them
+        for (int entry = 0; entry < 2; entry++)
+        {
+            tracker.beginEntry("Entry" + entry);
+            for (int i = 0; i < 64; i++)
+                tracker.addBytes(64 * 1024);
+
+            tracker.endEntry();
+        }
+
+        tracker.finish();
+
+        // One event per megabyte, then the last one
+        assertEquals(events.size(), 8 + 1);
+
+        final ProgressEvent last = events.get(events.size() - 1);
+        assertTrue(last.isFinished());
+        assertEquals(last.getBytesDone(), 8 * 1024 * 1024);
+        assertEquals(last.getEntriesDone(), 2);
+        assertEquals(last.getFraction(), 1.0);
+        assertEquals(last.getCurrentEntry(), "Entry1");
+        assertEquals(last.getEtaNanos(), 0);
+
+        for (int i = 0; i < events.size() - 1; i++)
+            assertFalse(events.get(i).isFinished());
+    }
+
+    @Test
+    public void cancellationTest()
+    {
+        final List<ProgressEvent> events = new ArrayList<>();
+
+        final ProgressTracker tracker = ProgressTracker.builder()
+                .listener(events::add)
+                .build();
+
+        tracker.start(100, 1);
+        tracker.addBytes(10);
+
+        tracker.cancel();
+        assertTrue(tracker.isCancelled());
+
+        try {
+            tracker.addBytes(10);
+            fail("Cancelled tracker must not accept progress");
+        }
+        catch (CancellationException ignore) {
+            // Expected
+        }
+
+        // No final event for a cancelled job
+        tracker.finish();
+        assertTrue(events.isEmpty());
+
+        assertEquals(tracker.snapshot().getBytesDone(), 10);
+    }
+}